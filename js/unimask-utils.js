@@ -19,6 +19,11 @@ class UniMaskUtils {
         KOREAN_END: 0xD7A3
     };
 
+    /**
+     * 匹配任一加密字符（由正则引擎整段扫描，比逐字符调用 isEncryptedChar 快得多）
+     */
+    static ENCRYPTED_PATTERN = /[\uCF70-\uD7A3\uE000-\uF8FF]/;
+
     /**
      * 检测字符是否为加密字符
      * @param {string} char - 单个字符
@@ -54,13 +59,7 @@ class UniMaskUtils {
             return false;
         }
         
-        for (let i = 0; i < text.length; i++) {
-            if (this.isEncryptedChar(text[i])) {
-                return true;
-            }
-        }
-        
-        return false;
+        return this.ENCRYPTED_PATTERN.test(text);
     }
 
     /**
@@ -73,9 +72,13 @@ class UniMaskUtils {
             return 0;
         }
         
+        // 直接比较码点，不为每个字符创建子串；两段区间的下界都不小于 KOREAN_START
+        const { PUA_START, PUA_END, KOREAN_START, KOREAN_END } = this.REGIONS;
         let count = 0;
         for (let i = 0; i < text.length; i++) {
-            if (this.isEncryptedChar(text[i])) {
+            const code = text.charCodeAt(i);
+            if (code >= KOREAN_START
+                && (code <= KOREAN_END || (code >= PUA_START && code <= PUA_END))) {
                 count++;
             }
         }
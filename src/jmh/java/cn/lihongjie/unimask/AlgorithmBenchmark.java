@@ -0,0 +1,60 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较 FF1 与 FF3-1（FF3-1 在默认字典下最多 14 个字符）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlgorithmBenchmark {
+
+    @Param({"FF1", "FF3_1"})
+    FpeAlgorithm algorithm;
+
+    @Param({"2", "4", "11", "14"})
+    int length;
+
+    private ChineseFPEService service;
+
+    private Tweak tweak;
+
+    private String plaintext;
+
+    private String ciphertext;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY, CharacterMapping.getDefault(), AesBackend.getDefault(),
+            algorithm);
+        tweak = service.createTweak("name");
+        plaintext = BenchmarkData.chinese(length);
+        ciphertext = service.encrypt(tweak, 0, 0, plaintext);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return service.encrypt(tweak, 0, 0, plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return service.decrypt(tweak, ciphertext, 0, 0);
+    }
+}
@@ -0,0 +1,71 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量加密（多条记录交错推进 FF1 轮次）与逐条加密的对比，结果按单条记录计
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int RECORDS = 256;
+
+    @Param({"BOUNCY_CASTLE", "JCE"})
+    AesBackend backend;
+
+    @Param({"3", "11"})
+    int length;
+
+    private ChineseFPEService service;
+
+    private Tweak tweak;
+
+    private List<String> plaintexts;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY, CharacterMapping.getDefault(), backend);
+        tweak = service.createTweak("name");
+        plaintexts = new ArrayList<>(RECORDS);
+        String text = BenchmarkData.chinese(length + RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            plaintexts.add(text.substring(i, i + length));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<String> encryptEach() {
+        List<String> result = new ArrayList<>(RECORDS);
+        for (String plaintext : plaintexts) {
+            result.add(service.encrypt(tweak, 0, 0, plaintext));
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public List<String> encryptBatch() {
+        return service.encryptBatch(tweak, 0, 0, plaintexts);
+    }
+}
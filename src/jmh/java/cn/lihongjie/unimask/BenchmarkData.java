@@ -0,0 +1,43 @@
+package cn.lihongjie.unimask;
+
+/**
+ * 基准测试共用的固定数据
+ */
+final class BenchmarkData {
+
+    /** 固定密钥，避免每次 setup 都执行 PBKDF2 */
+    static final byte[] KEY = new byte[]{
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15
+    };
+
+    /** 字典内的常用字 */
+    private static final String CHINESE = "张王李赵刘陈杨黄周吴伟芳娜敏静秀英丽强磊军洋勇艳杰涛明超北京市朝阳区建国路";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 生成指定长度的纯中文文本
+     */
+    static String chinese(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(CHINESE.charAt((i * 7) % CHINESE.length()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成指定长度的中英文、数字、符号混合文本（约一半字符不在字典中）
+     */
+    static String mixed(int length) {
+        String other = "A1b2-C3 d4@E5#f6";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(i % 2 == 0
+                ? CHINESE.charAt((i * 7) % CHINESE.length())
+                : other.charAt(i % other.length()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 构造成本：字典加载和 PBKDF2 密钥派生
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructionBenchmark {
+
+    @Benchmark
+    public CharacterMapping characterMapping() {
+        return new CharacterMapping();
+    }
+
+    @Benchmark
+    public ChineseFPEService serviceFromKey() {
+        return new ChineseFPEService(BenchmarkData.KEY);
+    }
+
+    @Benchmark
+    public ChineseFPEService serviceFromPassword() {
+        return new ChineseFPEService("benchmark-password");
+    }
+}
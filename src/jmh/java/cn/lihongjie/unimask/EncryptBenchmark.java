@@ -0,0 +1,76 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按中间部分长度测量 encrypt / decrypt 的单次耗时
+ *
+ * 长度 1 走单字符模加法路径，2 及以上走 FF1；
+ * 4 以内落在 FF1 的 long 快速路径，11/18 覆盖常见的姓名、地址、证件号长度，64/512 覆盖长文本。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncryptBenchmark {
+
+    @Param({"1", "2", "4", "11", "18", "64", "512"})
+    int length;
+
+    private ChineseFPEService service;
+
+    private Tweak tweak;
+
+    private String plaintext;
+
+    private String ciphertext;
+
+    private char[] output;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY);
+        tweak = service.createTweak("name");
+        plaintext = BenchmarkData.chinese(length);
+        ciphertext = service.encrypt(0, 0, "name", plaintext);
+        output = new char[length];
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return service.encrypt(0, 0, "name", plaintext);
+    }
+
+    @Benchmark
+    public String encryptWithTweak() {
+        return service.encrypt(tweak, 0, 0, plaintext);
+    }
+
+    /**
+     * 写入调用方缓冲区，稳态下不分配
+     */
+    @Benchmark
+    public char[] encryptIntoBuffer() {
+        service.encrypt(tweak, 0, 0, plaintext, 0, length, output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return service.decrypt(ciphertext, 0, 0, "name");
+    }
+}
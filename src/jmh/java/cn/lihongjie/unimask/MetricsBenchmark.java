@@ -0,0 +1,54 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标记录的开销：不记录（NOOP）与 MetricsRecorder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    boolean enabled;
+
+    @Param({"1", "3"})
+    int length;
+
+    private ChineseFPEService service;
+
+    private Tweak tweak;
+
+    private String plaintext;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY);
+        if (enabled) {
+            service.setMetrics(new MetricsRecorder());
+        }
+        tweak = service.createTweak("name");
+        plaintext = BenchmarkData.chinese(length);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return service.encrypt(tweak, 0, 0, plaintext);
+    }
+}
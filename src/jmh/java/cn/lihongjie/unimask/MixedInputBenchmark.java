@@ -0,0 +1,60 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 含字典外字符（英文、数字、符号）的混合输入
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MixedInputBenchmark {
+
+    @Param({"18", "64"})
+    int length;
+
+    /** 是否统计字典外字符（UnmappedCharCollector） */
+    @Param({"false", "true"})
+    boolean collectUnmapped;
+
+    private ChineseFPEService service;
+
+    private String plaintext;
+
+    private String ciphertext;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY);
+        if (collectUnmapped) {
+            service.setUnmappedCharCollector(new UnmappedCharCollector());
+        }
+        plaintext = BenchmarkData.mixed(length);
+        ciphertext = service.encrypt(0, 0, "mixed", plaintext);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return service.encrypt(0, 0, "mixed", plaintext);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return service.decrypt(ciphertext, 0, 0, "mixed");
+    }
+}
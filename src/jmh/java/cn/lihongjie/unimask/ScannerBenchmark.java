@@ -0,0 +1,82 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 1M 字符的中英文混合文档（每约 200 个字符含一个 3 字加密姓名）中统计加密片段，
+ * 与逐字符调用 CharacterMapping.isEncryptedChar 对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+
+    private static final int LENGTH = 1 << 20;
+
+    private final CharacterMapping mapping = CharacterMapping.getDefault();
+
+    private String document;
+
+    private char[] chars;
+
+    private char[] clean;
+
+    @Setup
+    public void setup() {
+        ChineseFPEService service = new ChineseFPEService(BenchmarkData.KEY);
+        String name = service.encrypt(0, 0, "name", "张伟明");
+        StringBuilder sb = new StringBuilder(LENGTH + 256);
+        String filler = BenchmarkData.mixed(197);
+        while (sb.length() < LENGTH) {
+            sb.append(filler).append(name);
+        }
+        sb.setLength(LENGTH);
+        document = sb.toString();
+        chars = document.toCharArray();
+        clean = BenchmarkData.mixed(LENGTH).toCharArray();
+    }
+
+    @Benchmark
+    public int naiveCount() {
+        int runs = 0;
+        boolean inRun = false;
+        for (int i = 0; i < document.length(); i++) {
+            boolean encrypted = mapping.isEncryptedChar(document.charAt(i));
+            if (encrypted && !inRun) {
+                runs++;
+            }
+            inRun = encrypted;
+        }
+        return runs;
+    }
+
+    @Benchmark
+    public int countRunsString() {
+        return EncryptedTextScanner.countRuns(document);
+    }
+
+    @Benchmark
+    public int countRunsArray() {
+        return EncryptedTextScanner.countRuns(chars, 0, chars.length);
+    }
+
+    @Benchmark
+    public int indexOfClean() {
+        // 不含加密字符的文档：测量整块跳过的速度
+        return EncryptedTextScanner.indexOf(clean, 0, clean.length);
+    }
+}
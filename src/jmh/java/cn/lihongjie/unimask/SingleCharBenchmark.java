@@ -0,0 +1,57 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单字符路径
+ *
+ * 单字符加密的偏移量 SHA-256(key || tweak) 由 Tweak 缓存；
+ * createTweak 测量偏移量的计算成本（即 tweak 缓存未命中时的代价），
+ * encryptSingleChar 测量命中缓存后的常规调用。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SingleCharBenchmark {
+
+    private ChineseFPEService service;
+
+    private String ciphertext;
+
+    private int counter;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY);
+        ciphertext = service.encrypt(1, 0, "name", "张伟");
+    }
+
+    @Benchmark
+    public String encryptSingleChar() {
+        return service.encrypt(1, 0, "name", "张伟");
+    }
+
+    @Benchmark
+    public String decryptSingleChar() {
+        return service.decrypt("张", 1, 0, "name");
+    }
+
+    @Benchmark
+    public Tweak createTweak() {
+        return service.createTweak(counter++ % 2 == 0 ? "name" : "address");
+    }
+}
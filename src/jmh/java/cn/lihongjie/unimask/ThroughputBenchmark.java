@@ -0,0 +1,67 @@
+package cn.lihongjie.unimask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程共享同一服务实例时的吞吐量（验证引擎池的扩展性）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThroughputBenchmark {
+
+    private ChineseFPEService service;
+
+    private String plaintext;
+
+    @Setup
+    public void setup() {
+        service = new ChineseFPEService(BenchmarkData.KEY);
+        plaintext = BenchmarkData.chinese(11);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads1() {
+        return service.encrypt(1, 0, "name", plaintext);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public String threads2() {
+        return service.encrypt(1, 0, "name", plaintext);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads4() {
+        return service.encrypt(1, 0, "name", plaintext);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String threads8() {
+        return service.encrypt(1, 0, "name", plaintext);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String threads16() {
+        return service.encrypt(1, 0, "name", plaintext);
+    }
+}
@@ -0,0 +1,193 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+
+/**
+ * FF1 使用的 AES 实现
+ *
+ * FF1 的主要开销是逐块的 AES 运算。HotSpot 只对 JCE 的 AES 实现（{@code javax.crypto.Cipher}）
+ * 应用 AES-NI 等硬件指令的内建优化，Bouncy Castle 的纯 Java {@link AESEngine} 无法受益。
+ * 两种实现的输出完全一致，只影响性能。
+ *
+ * 默认实现（{@link #getDefault()}）：
+ * - 系统属性 {@code unimask.aes} 为 {@code jce} 或 {@code bc} 时使用指定实现
+ * - 否则在 JVM 启用了 AES 内建优化（HotSpot 的 UseAESIntrinsics / UseAES）时使用 {@link #JCE}
+ * - 无法判断或未启用时使用 {@link #BOUNCY_CASTLE}（纯 Java 实现下 BC 的单块调用开销更低）
+ *
+ * @author lihongjie
+ */
+public enum AesBackend {
+
+    /** Bouncy Castle 纯 Java AES */
+    BOUNCY_CASTLE {
+        @Override
+        BlockCipher newCipher(byte[] key) {
+            BlockCipher engine = new AESEngine();
+            engine.init(true, new KeyParameter(key));
+            return engine;
+        }
+    },
+
+    /** JCE {@code AES/ECB/NoPadding}，可使用 JVM 的硬件 AES 内建优化 */
+    JCE {
+        @Override
+        BlockCipher newCipher(byte[] key) {
+            return new JceBlockCipher(key);
+        }
+    };
+
+    /** 选择默认实现的系统属性 */
+    public static final String PROPERTY = "unimask.aes";
+
+    /**
+     * 获取默认实现
+     */
+    public static AesBackend getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * 创建以 key 初始化为加密方向的分组密码（非线程安全，每个 FF1 引擎独占一个）
+     */
+    abstract BlockCipher newCipher(byte[] key);
+
+    static AesBackend select(String property, boolean intrinsicsEnabled) {
+        if ("jce".equalsIgnoreCase(property)) {
+            return JCE;
+        }
+        if ("bc".equalsIgnoreCase(property)) {
+            return BOUNCY_CASTLE;
+        }
+        return intrinsicsEnabled ? JCE : BOUNCY_CASTLE;
+    }
+
+    /** HotSpot 诊断 MXBean 的类名 */
+    private static final String HOTSPOT_BEAN = "com.sun.management.HotSpotDiagnosticMXBean";
+
+    /**
+     * 检查 HotSpot 是否启用了 AES 内建优化
+     *
+     * 较新的 JDK 中 UseAESIntrinsics 是诊断选项，未解锁时无法读取，此时以 UseAES
+     * （CPU 支持且未被禁用时为 true，内建优化随之启用）为准。
+     */
+    static boolean aesIntrinsicsEnabled() {
+        return aesIntrinsicsEnabled(HOTSPOT_BEAN);
+    }
+
+    /**
+     * 通过反射读取 MXBean：com.sun.management 和 java.management 在非 HotSpot 或裁剪过的运行时上
+     * 可能不存在，直接引用会让本类加载失败。任何失败都按未启用处理，回退到 {@link #BOUNCY_CASTLE}。
+     */
+    static boolean aesIntrinsicsEnabled(String beanClassName) {
+        try {
+            Class<?> beanClass = Class.forName(beanClassName);
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                .getMethod("getPlatformMXBean", Class.class).invoke(null, beanClass);
+            if (bean == null) {
+                return false;
+            }
+            Method getVMOption = beanClass.getMethod("getVMOption", String.class);
+            Object option;
+            try {
+                option = getVMOption.invoke(bean, "UseAESIntrinsics");
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof IllegalArgumentException)) {
+                    return false;
+                }
+                option = getVMOption.invoke(bean, "UseAES");
+            }
+            Object value = option.getClass().getMethod("getValue").invoke(option);
+            return Boolean.parseBoolean(String.valueOf(value));
+        } catch (Throwable e) {
+            // 非 HotSpot JVM、裁剪过的运行时或不支持该选项
+            return false;
+        }
+    }
+
+    private static final class DefaultHolder {
+
+        static final AesBackend DEFAULT = select(System.getProperty(PROPERTY), aesIntrinsicsEnabled());
+    }
+
+    /**
+     * 基于 JCE Cipher 的 AES 适配器，多块请求合并为一次 update
+     *
+     * 构造时以给定密钥初始化为加密方向；与 {@link AESEngine} 一样可以通过 {@link #init} 以新的
+     * {@link KeyParameter} 重新初始化为加密或解密方向。
+     */
+    private static final class JceBlockCipher implements BlockCipher, FF1Engine.BulkCipher {
+
+        private static final int BLOCK_SIZE = 16;
+
+        private final Cipher cipher;
+
+        JceBlockCipher(byte[] key) {
+            try {
+                cipher = Cipher.getInstance("AES/ECB/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("AES/ECB/NoPadding not available", e);
+            }
+            init(true, key);
+        }
+
+        @Override
+        public void init(boolean forEncryption, CipherParameters params) {
+            if (!(params instanceof KeyParameter)) {
+                throw new IllegalArgumentException("invalid parameter passed to AES init - "
+                    + (params == null ? "null" : params.getClass().getName()));
+            }
+            init(forEncryption, ((KeyParameter) params).getKey());
+        }
+
+        private void init(boolean forEncryption, byte[] key) {
+            try {
+                cipher.init(forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException("Invalid AES key: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public String getAlgorithmName() {
+            return "AES";
+        }
+
+        @Override
+        public int getBlockSize() {
+            return BLOCK_SIZE;
+        }
+
+        @Override
+        public int processBlock(byte[] in, int inOff, byte[] out, int outOff) {
+            try {
+                // ECB 无填充：每次 update 恰好输出一个块，Cipher 不保留跨调用的状态
+                return cipher.update(in, inOff, BLOCK_SIZE, out, outOff);
+            } catch (GeneralSecurityException e) {
+                throw new DataLengthException("AES block processing failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void processBlocks(byte[] in, int inOff, int blocks, byte[] out, int outOff) {
+            try {
+                cipher.update(in, inOff, blocks * BLOCK_SIZE, out, outOff);
+            } catch (GeneralSecurityException e) {
+                throw new DataLengthException("AES block processing failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package cn.lihongjie.unimask;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * 有界并发缓存（FIFO 淘汰）
+ *
+ * 读路径只有一次 ConcurrentHashMap.get，无锁；
+ * 写入新条目后若超过容量，按插入顺序淘汰最早的条目。
+ * 适用于条目很少变化、但读取极其频繁的场景（如字符串 tweak 到 {@link Tweak} 的映射）。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+final class BoundedCache<K, V> {
+
+    private final int maxSize;
+
+    private final ConcurrentHashMap<K, V> map;
+
+    /** 插入顺序，用于淘汰 */
+    private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param maxSize 最大条目数
+     */
+    BoundedCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+    }
+
+    /**
+     * 获取缓存值，不存在时通过 loader 创建
+     * 并发首次访问同一个键时 loader 可能被调用多次，但只有一个结果会被缓存并返回
+     */
+    V get(K key, Function<? super K, ? extends V> loader) {
+        V value = map.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        V created = loader.apply(key);
+        V existing = map.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        insertionOrder.add(key);
+        while (map.size() > maxSize) {
+            K eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            map.remove(eldest);
+        }
+        return created;
+    }
+
+    /**
+     * 当前条目数
+     */
+    int size() {
+        return map.size();
+    }
+}
@@ -0,0 +1,287 @@
+package cn.lihongjie.unimask;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并行批量脱敏
+ *
+ * 将大批量数据（百万级）切分为固定大小的块，在 ForkJoinPool 或调用方提供的线程池上并行加/解密，
+ * 结果按输入顺序返回。
+ *
+ * 执行方式：
+ * - 向线程池提交至多 parallelism - 1 个任务，调用线程自身也参与处理，
+ *   各任务通过原子计数器领取下一个块，块之间负载自动均衡
+ * - 每个块整体借出一个 FF1 工作单元，块内各元素复用同一引擎和缓冲区
+ * - 结果直接写入输出数组的对应位置，无需合并排序
+ * - 调用线程只等待已经开始执行、可能领取了块的任务；仍在排队的任务不会被等待，
+ *   它们开始执行时发现没有剩余块即返回。线程池饱和、拒绝任务或调用线程本身就是池内线程
+ *   （例如在 parallelStream 中调用）时，由调用线程处理剩余的块，不会因等待排队任务而死锁
+ * - 等待通过 {@link ForkJoinPool.ManagedBlocker} 进行，在 ForkJoinPool 线程中等待时线程池可以补偿工作线程
+ *
+ * 线程安全：实例不可变，可被多个线程同时使用。
+ *
+ * <pre>
+ * BulkMasker masker = new BulkMasker(service, 4096, 8);
+ * List&lt;String&gt; masked = masker.encrypt(1, 0, "name", names);
+ * </pre>
+ *
+ * @author lihongjie
+ */
+public final class BulkMasker {
+
+    /** 默认块大小 */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final ChineseFPEService service;
+
+    private final Executor executor;
+
+    private final int chunkSize;
+
+    private final int parallelism;
+
+    /**
+     * 使用公共 ForkJoinPool 及默认参数创建
+     *
+     * @param service 加密服务
+     */
+    public BulkMasker(ChineseFPEService service) {
+        this(service, DEFAULT_CHUNK_SIZE, ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    /**
+     * 使用公共 ForkJoinPool 创建
+     *
+     * @param service 加密服务
+     * @param chunkSize 每个块的元素数
+     * @param parallelism 最大并行度（含调用线程）
+     */
+    public BulkMasker(ChineseFPEService service, int chunkSize, int parallelism) {
+        this(service, chunkSize, parallelism, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 使用调用方提供的线程池创建
+     *
+     * @param service 加密服务
+     * @param chunkSize 每个块的元素数
+     * @param parallelism 最大并行度（含调用线程）
+     * @param executor 执行块任务的线程池
+     */
+    public BulkMasker(ChineseFPEService service, int chunkSize, int parallelism, Executor executor) {
+        if (service == null) {
+            throw new IllegalArgumentException("service cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.service = service;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 并行加密
+     *
+     * @param headPreserve 开头保留不加密的字符数
+     * @param tailPreserve 末尾保留不加密的字符数
+     * @param tweak 扰码
+     * @param plaintexts 待加密的明文列表（元素可以为 null）
+     * @return 与输入顺序一致的密文列表
+     */
+    public List<String> encrypt(int headPreserve, int tailPreserve, String tweak, List<String> plaintexts) {
+        return encrypt(service.resolveTweak(tweak), headPreserve, tailPreserve, plaintexts);
+    }
+
+    /**
+     * 并行加密（使用预计算的 tweak）
+     *
+     * @param tweak 由同一服务实例创建的扰码
+     * @param headPreserve 开头保留不加密的字符数
+     * @param tailPreserve 末尾保留不加密的字符数
+     * @param plaintexts 待加密的明文列表（元素可以为 null）
+     * @return 与输入顺序一致的密文列表
+     */
+    public List<String> encrypt(Tweak tweak, int headPreserve, int tailPreserve, List<String> plaintexts) {
+        return Arrays.asList(run(true, tweak, headPreserve, tailPreserve, toArray(plaintexts)));
+    }
+
+    /**
+     * 并行解密
+     *
+     * @param ciphertexts 包含保留部分的密文列表（元素可以为 null）
+     * @param headPreserve 开头保留的字符数
+     * @param tailPreserve 末尾保留的字符数
+     * @param tweak 必须与加密时一致的扰码
+     * @return 与输入顺序一致的明文列表
+     */
+    public List<String> decrypt(List<String> ciphertexts, int headPreserve, int tailPreserve, String tweak) {
+        return decrypt(service.resolveTweak(tweak), ciphertexts, headPreserve, tailPreserve);
+    }
+
+    /**
+     * 并行解密（使用预计算的 tweak）
+     *
+     * @param tweak 由同一服务实例创建的扰码，必须与加密时一致
+     * @param ciphertexts 包含保留部分的密文列表（元素可以为 null）
+     * @param headPreserve 开头保留的字符数
+     * @param tailPreserve 末尾保留的字符数
+     * @return 与输入顺序一致的明文列表
+     */
+    public List<String> decrypt(Tweak tweak, List<String> ciphertexts, int headPreserve, int tailPreserve) {
+        return Arrays.asList(run(false, tweak, headPreserve, tailPreserve, toArray(ciphertexts)));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    private static String[] toArray(List<String> texts) {
+        if (texts == null) {
+            throw new IllegalArgumentException("texts cannot be null");
+        }
+        return texts.toArray(new String[0]);
+    }
+
+    private String[] run(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve, String[] input) {
+        String[] output = new String[input.length];
+        int chunks = (input.length + chunkSize - 1) / chunkSize;
+        int tasks = Math.min(parallelism, chunks);
+
+        // 数据量不足两个块或只允许单线程时，直接在调用线程处理
+        if (tasks <= 1) {
+            service.transformRange(forEncryption, tweak, headPreserve, tailPreserve,
+                input, 0, input.length, output, 0);
+            return output;
+        }
+
+        Job job = new Job(forEncryption, tweak, headPreserve, tailPreserve, input, output, chunks);
+        for (int i = 1; i < tasks; i++) {
+            try {
+                executor.execute(job::work);
+            } catch (RejectedExecutionException e) {
+                // 被拒绝的任务由调用线程承担，剩余块仍会被领取
+                break;
+            }
+        }
+
+        // 调用线程领取到没有剩余块（或出现失败）为止，此后开始的任务不会再领取块
+        job.claimChunks();
+        try {
+            ForkJoinPool.managedBlock(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.failure.compareAndSet(null, e);
+        }
+
+        Throwable t = job.failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new RuntimeException("Bulk masking failed", t);
+        }
+        return output;
+    }
+
+    /**
+     * 一次并行调用的共享状态：块计数器、正在执行的任务数和首个失败
+     */
+    private final class Job implements ForkJoinPool.ManagedBlocker {
+
+        private final boolean forEncryption;
+
+        private final Tweak tweak;
+
+        private final int headPreserve;
+
+        private final int tailPreserve;
+
+        private final String[] input;
+
+        private final String[] output;
+
+        private final int chunks;
+
+        private final AtomicInteger nextChunk = new AtomicInteger();
+
+        /** 已进入 {@link #work()} 且尚未退出的池内任务数 */
+        private final AtomicInteger active = new AtomicInteger();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Job(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+            String[] input, String[] output, int chunks) {
+            this.forEncryption = forEncryption;
+            this.tweak = tweak;
+            this.headPreserve = headPreserve;
+            this.tailPreserve = tailPreserve;
+            this.input = input;
+            this.output = output;
+            this.chunks = chunks;
+        }
+
+        /**
+         * 池内任务入口：先登记再领取块，保证调用线程看到 active 为 0 时不会再有块被处理
+         */
+        void work() {
+            active.incrementAndGet();
+            try {
+                claimChunks();
+            } finally {
+                if (active.decrementAndGet() == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        void claimChunks() {
+            try {
+                int chunk;
+                while (failure.get() == null && (chunk = nextChunk.getAndIncrement()) < chunks) {
+                    int from = chunk * chunkSize;
+                    int to = Math.min(from + chunkSize, input.length);
+                    service.transformRange(forEncryption, tweak, headPreserve, tailPreserve,
+                        input, from, to, output, from);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return active.get() == 0;
+        }
+
+        @Override
+        public synchronized boolean block() throws InterruptedException {
+            while (active.get() != 0) {
+                wait();
+            }
+            return true;
+        }
+    }
+}
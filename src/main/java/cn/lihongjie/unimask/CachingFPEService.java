@@ -0,0 +1,477 @@
+package cn.lihongjie.unimask;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带结果缓存的加解密服务
+ *
+ * FF1 对同一 (密钥, tweak, 头尾保留, 输入) 的结果是确定的，而业务数据高度重复
+ * （姓氏、名字、城市、商户名等），缓存结果可以省去大部分 FF1 运算：
+ * - 分段（striped）LRU：按键哈希分到多个段，每段一把锁，并发访问只在同一段内竞争
+ * - 按权重淘汰：权重为输入与结果的字符数之和，总权重超过上限时淘汰各段最久未用的条目
+ * - 双向：加密结果同时作为反向解密的缓存（反之亦然），先加密后解密的场景第二次直接命中
+ * - 超过 maxTextLength 的文本不缓存，避免长文本挤占缓存
+ * - 可选的第二级 {@link MappedResultCache}：堆内未命中时查询映射文件，多个 JVM 共享且重启后保留
+ *
+ * 结果与直接调用 {@link ChineseFPEService} 完全一致。命中时不执行加解密，但服务上安装的
+ * {@link UnmappedCharCollector} 和跳过字符的指标仍按命中的文本记录，统计结果与命中率无关。只有在反向运算确实能还原时才写入反向条目：
+ * 待加密的中间部分含有加密区字符，或待解密的中间部分含有字典字符时，这些字符会原样保留，
+ * 反向运算的结果与原输入不同，此时只缓存正向结果。
+ *
+ * <pre>
+ * CachingFPEService cached = new CachingFPEService(service);
+ * String encrypted = cached.encrypt(1, 0, "name", "张伟");
+ * System.out.println(cached.getStats()); // Stats[hits=..., misses=..., hitRate=...]
+ * </pre>
+ *
+ * 线程安全。
+ *
+ * @author lihongjie
+ */
+public final class CachingFPEService {
+
+    /** 默认总权重上限（字符数，约 4M 字符） */
+    public static final long DEFAULT_MAX_WEIGHT = 4L << 20;
+
+    /** 默认可缓存的最大文本长度 */
+    public static final int DEFAULT_MAX_TEXT_LENGTH = 256;
+
+    /** 最大分段数 */
+    private static final int MAX_STRIPES = 64;
+
+    private final ChineseFPEService service;
+
+    private final CharacterMapping charMapping;
+
+    private final int maxTextLength;
+
+    private final Stripe[] stripes;
+
+    /** 第二级共享缓存，可以为 null */
+    private final MappedResultCache sharedCache;
+
+    /** 服务密钥在共享缓存中的指纹 */
+    private final long keyFingerprint;
+
+    private final int stripeMask;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder sharedHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 使用默认权重上限和文本长度上限创建
+     */
+    public CachingFPEService(ChineseFPEService service) {
+        this(service, DEFAULT_MAX_WEIGHT, DEFAULT_MAX_TEXT_LENGTH);
+    }
+
+    /**
+     * @param service 底层服务
+     * @param maxWeight 总权重上限（缓存中所有输入与结果的字符数之和）
+     * @param maxTextLength 可缓存的最大文本长度，更长的文本直接交给底层服务
+     */
+    public CachingFPEService(ChineseFPEService service, long maxWeight, int maxTextLength) {
+        this(service, maxWeight, maxTextLength, null);
+    }
+
+    /**
+     * @param service 底层服务
+     * @param maxWeight 堆内缓存的总权重上限（缓存中所有输入与结果的字符数之和）
+     * @param maxTextLength 可缓存的最大文本长度，更长的文本直接交给底层服务
+     * @param sharedCache 第二级共享缓存，null 表示只使用堆内缓存
+     */
+    public CachingFPEService(ChineseFPEService service, long maxWeight, int maxTextLength,
+                             MappedResultCache sharedCache) {
+        if (service == null) {
+            throw new IllegalArgumentException("service cannot be null");
+        }
+        if (maxTextLength < 1) {
+            throw new IllegalArgumentException("maxTextLength must be positive");
+        }
+        if (maxWeight < 2L * maxTextLength) {
+            throw new IllegalArgumentException("maxWeight must be at least 2 * maxTextLength");
+        }
+        this.service = service;
+        this.charMapping = service.getCharacterMapping();
+        this.sharedCache = sharedCache;
+        this.keyFingerprint = sharedCache == null ? 0 : MappedResultCache.keyFingerprint(service.getKey(),
+            charMapping, service.getAlgorithm());
+        this.maxTextLength = maxTextLength;
+
+        // 段数为 2 的幂，且每段至少能容纳一个最大条目
+        int stripeCount = Integer.highestOneBit(Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors() * 4));
+        while (stripeCount > 1 && maxWeight / stripeCount < 2L * maxTextLength) {
+            stripeCount >>= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxWeight / stripeCount);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * 加密，参见 {@link ChineseFPEService#encrypt(int, int, String, String)}
+     */
+    public String encrypt(int headPreserve, int tailPreserve, String tweak, String plaintext) {
+        return transform(true, null, tweak == null ? "" : tweak, headPreserve, tailPreserve, plaintext);
+    }
+
+    /**
+     * 加密（使用预计算的 tweak），参见 {@link ChineseFPEService#encrypt(Tweak, int, int, String)}
+     */
+    public String encrypt(Tweak tweak, int headPreserve, int tailPreserve, String plaintext) {
+        checkTweak(tweak);
+        return transform(true, tweak, tweakValue(tweak), headPreserve, tailPreserve, plaintext);
+    }
+
+    /**
+     * 解密（整个字符串作为加密内容），参见 {@link ChineseFPEService#decrypt(String, String)}
+     */
+    public String decrypt(String encryptedText, String tweak) {
+        return decrypt(encryptedText, 0, 0, tweak);
+    }
+
+    /**
+     * 解密（整个字符串作为加密内容，使用预计算的 tweak），参见 {@link ChineseFPEService#decrypt(Tweak, String)}
+     */
+    public String decrypt(Tweak tweak, String encryptedText) {
+        return decrypt(tweak, encryptedText, 0, 0);
+    }
+
+    /**
+     * 解密，参见 {@link ChineseFPEService#decrypt(String, int, int, String)}
+     */
+    public String decrypt(String encryptedText, int headPreserve, int tailPreserve, String tweak) {
+        return transform(false, null, tweak == null ? "" : tweak, headPreserve, tailPreserve, encryptedText);
+    }
+
+    /**
+     * 解密（使用预计算的 tweak），参见 {@link ChineseFPEService#decrypt(Tweak, String, int, int)}
+     */
+    public String decrypt(Tweak tweak, String encryptedText, int headPreserve, int tailPreserve) {
+        checkTweak(tweak);
+        return transform(false, tweak, tweakValue(tweak), headPreserve, tailPreserve, encryptedText);
+    }
+
+    public ChineseFPEService getService() {
+        return service;
+    }
+
+    /**
+     * 当前缓存条目数
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 清空堆内缓存（统计信息保留，共享缓存不受影响）
+     */
+    public void invalidateAll() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.map.clear();
+                stripe.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息快照
+     */
+    public Stats getStats() {
+        int size = 0;
+        long weight = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.map.size();
+                weight += stripe.weight;
+            }
+        }
+        return new Stats(hits.sum(), sharedHits.sum(), misses.sum(), evictions.sum(), size, weight);
+    }
+
+    private String transform(boolean forEncryption, Tweak tweak, String tweakValue,
+                             int headPreserve, int tailPreserve, String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        if (headPreserve < 0 || tailPreserve < 0) {
+            throw new IllegalArgumentException("headPreserve and tailPreserve must be non-negative");
+        }
+        if (text.length() > maxTextLength) {
+            return compute(forEncryption, tweak, tweakValue, headPreserve, tailPreserve, text);
+        }
+
+        Key key = new Key(forEncryption, tweakValue, headPreserve, tailPreserve, text);
+        String cached = stripeFor(key).get(key);
+        FPEMetrics m = service.getMetrics();
+        if (cached != null) {
+            hits.increment();
+            if (m != FPEMetrics.NOOP) {
+                m.recordCacheHit(false);
+            }
+            service.recordCachedTransform(forEncryption, tweakValue, headPreserve, tailPreserve, text);
+            return cached;
+        }
+        if (sharedCache != null) {
+            cached = sharedCache.get(keyFingerprint, forEncryption, tweakValue, headPreserve, tailPreserve, text);
+            if (cached != null) {
+                sharedHits.increment();
+                if (m != FPEMetrics.NOOP) {
+                    m.recordCacheHit(true);
+                }
+                service.recordCachedTransform(forEncryption, tweakValue, headPreserve, tailPreserve, text);
+                put(key, cached);
+                return cached;
+            }
+        }
+        misses.increment();
+        if (m != FPEMetrics.NOOP) {
+            m.recordCacheMiss();
+        }
+
+        String result = compute(forEncryption, tweak, tweakValue, headPreserve, tailPreserve, text);
+        put(key, result);
+        boolean reversible = isReversible(forEncryption, headPreserve, tailPreserve, text);
+        if (reversible) {
+            put(new Key(!forEncryption, tweakValue, headPreserve, tailPreserve, result), text);
+        }
+        if (sharedCache != null) {
+            sharedCache.put(keyFingerprint, forEncryption, tweakValue, headPreserve, tailPreserve, text, result);
+            if (reversible) {
+                sharedCache.put(keyFingerprint, !forEncryption, tweakValue, headPreserve, tailPreserve, result, text);
+            }
+        }
+        return result;
+    }
+
+    private String compute(boolean forEncryption, Tweak tweak, String tweakValue,
+                           int headPreserve, int tailPreserve, String text) {
+        if (tweak == null) {
+            return forEncryption
+                ? service.encrypt(headPreserve, tailPreserve, tweakValue, text)
+                : service.decrypt(text, headPreserve, tailPreserve, tweakValue);
+        }
+        return forEncryption
+            ? service.encrypt(tweak, headPreserve, tailPreserve, text)
+            : service.decrypt(tweak, text, headPreserve, tailPreserve);
+    }
+
+    private void put(Key key, String value) {
+        evictions.add(stripeFor(key).put(key, value));
+    }
+
+    /**
+     * 判断反向运算能否还原输入：中间部分（与 {@link ChineseFPEService} 的划分一致）
+     * 只含有会被转换的字符或两个方向都原样保留的字符
+     */
+    private boolean isReversible(boolean forEncryption, int headPreserve, int tailPreserve, String text) {
+        int length = text.length();
+        if (headPreserve >= length) {
+            return true;
+        }
+        int middleEnd = length - Math.min(tailPreserve, length - headPreserve - 1);
+        for (int i = headPreserve; i < middleEnd; i++) {
+            char c = text.charAt(i);
+            if (forEncryption ? charMapping.isEncryptedChar(c) : charMapping.containsChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkTweak(Tweak tweak) {
+        if (tweak != null && tweak.getOwner() != service) {
+            throw new IllegalArgumentException("Tweak was created by a different ChineseFPEService instance");
+        }
+    }
+
+    private static String tweakValue(Tweak tweak) {
+        return tweak == null ? "" : tweak.getValue();
+    }
+
+    private Stripe stripeFor(Key key) {
+        int h = key.hash;
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    /**
+     * 缓存分段：访问顺序的 LinkedHashMap，按权重淘汰
+     */
+    private static final class Stripe {
+
+        private final long maxWeight;
+
+        private final LinkedHashMap<Key, String> map = new LinkedHashMap<>(64, 0.75f, true);
+
+        private long weight;
+
+        Stripe(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized String get(Key key) {
+            return map.get(key);
+        }
+
+        /**
+         * 写入条目并淘汰超出权重的最久未用条目
+         *
+         * @return 淘汰的条目数
+         */
+        synchronized int put(Key key, String value) {
+            String previous = map.put(key, value);
+            if (previous != null) {
+                weight -= key.text.length() + previous.length();
+            }
+            weight += key.text.length() + value.length();
+
+            int evicted = 0;
+            Iterator<Map.Entry<Key, String>> it = map.entrySet().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                Map.Entry<Key, String> eldest = it.next();
+                weight -= eldest.getKey().text.length() + eldest.getValue().length();
+                it.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+
+    /**
+     * 缓存键：方向、tweak、头尾保留和输入文本
+     */
+    private static final class Key {
+
+        final boolean forEncryption;
+
+        final String tweak;
+
+        final int headPreserve;
+
+        final int tailPreserve;
+
+        final String text;
+
+        final int hash;
+
+        Key(boolean forEncryption, String tweak, int headPreserve, int tailPreserve, String text) {
+            this.forEncryption = forEncryption;
+            this.tweak = tweak;
+            this.headPreserve = headPreserve;
+            this.tailPreserve = tailPreserve;
+            this.text = text;
+            int h = text.hashCode();
+            h = h * 31 + tweak.hashCode();
+            h = h * 31 + headPreserve;
+            h = h * 31 + tailPreserve;
+            this.hash = forEncryption ? h : ~h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && forEncryption == other.forEncryption
+                && headPreserve == other.headPreserve && tailPreserve == other.tailPreserve
+                && text.equals(other.text) && tweak.equals(other.tweak);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 统计信息快照
+     */
+    public static final class Stats {
+
+        private final long hitCount;
+
+        private final long sharedHitCount;
+
+        private final long missCount;
+
+        private final long evictionCount;
+
+        private final int size;
+
+        private final long weight;
+
+        Stats(long hitCount, long sharedHitCount, long missCount, long evictionCount, int size, long weight) {
+            this.hitCount = hitCount;
+            this.sharedHitCount = sharedHitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * 堆内未命中、第二级共享缓存命中的次数
+         */
+        public long getSharedHitCount() {
+            return sharedHitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * 当前总权重（字符数）
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * 命中率（含共享缓存命中，无请求时为 1.0）
+         */
+        public double getHitRate() {
+            long total = hitCount + sharedHitCount + missCount;
+            return total == 0 ? 1.0 : (double) (hitCount + sharedHitCount) / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats[hits=" + hitCount + ", sharedHits=" + sharedHitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                + ", size=" + size + ", weight=" + weight + ", hitRate=" + String.format("%.3f", getHitRate()) + "]";
+        }
+    }
+}
@@ -4,14 +4,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * 字符映射工具类
@@ -21,7 +21,7 @@ import java.util.Map;
  * - 常用区（ASCII + 标点 + 一二级字表）：映射到 BMP PUA (U+E000 - U+F8FF, 6400个位置)
  * - 罕见区（三级字表）：映射到罕用韩文音节区 (U+CF70开始, 2100个位置)
  * 
- * 字符集从资源文件中读取：
+ * 字符集来源（构建时由 {@link DictionaryCompiler} 预编译为二进制资源 dictionary.bin，运行时一次读入）：
  * - level-1.txt: 通用规范汉字表一级字表（3500字，常用字）
  * - level-2.txt: 通用规范汉字表二级字表（3000字，次常用字）
  * - level-3.txt: 通用规范汉字表三级字表（1605字，较少使用）
@@ -34,125 +34,237 @@ import java.util.Map;
  * 
  * 总字符集大小：约 8500 个字符
  * 不在字符集中的字符将原样输出（不加密）
+ * 
+ * 实例不可变、线程安全；默认字典通过 {@link #getDefault()} 在进程内共享。
  */
 public class CharacterMapping {
     
     private static final Logger logger = LoggerFactory.getLogger(CharacterMapping.class);
     
     /** BMP PUA 起始位置 */
-    private static final int PUA_START = 0xE000;
+    static final int PUA_START = 0xE000;
     
     /** PUA 区容量 */
-    private static final int PUA_CAPACITY = 6400;
+    static final int PUA_CAPACITY = 6400;
     
     /** 罕用韩文音节区起始位置 */
-    private static final int RARE_KOREAN_START = 0xCF70;
+    static final int RARE_KOREAN_START = 0xCF70;
     
     /** 韩文音节区容量 */
-    private static final int RARE_KOREAN_CAPACITY = 2100;
+    static final int RARE_KOREAN_CAPACITY = 2100;
     
     /** 最大字符集大小 */
     private static final int MAX_RADIX = PUA_CAPACITY + RARE_KOREAN_CAPACITY; // 8500
     
-    /** 字符到索引的映射 */
-    private final Map<Character, Integer> charToIndex;
+    /** 自定义字典的最小字符数（1000^2 ≥ 10^6，满足 FF1 最小定义域） */
+    static final int MIN_RADIX = 1000;
+    
+    /** BMP 字符总数（查找表大小） */
+    private static final int BMP_SIZE = 0x10000;
+    
+    /** 构建时由 {@link DictionaryCompiler} 生成的二进制字典 */
+    static final String COMPILED_RESOURCE = "/dictionary.bin";
+    
+    /** 二进制字典魔数（"UMD1"） */
+    private static final int COMPILED_MAGIC = 0x554D4431;
+    
+    /**
+     * 双向字符查找表，覆盖整个 BMP，每个字符一次数组访问即可完成分类：
+     * - 0：既不在字典中，也不是加密字符
+     * - 正数 v：字典字符，索引为 v - 1
+     * - 负数 v：加密字符（PUA/罕用韩文区），索引为 -v - 1
+     * 索引最大为 MAX_RADIX - 1（8499），可以放入 short
+     */
+    private final short[] lookup;
     
     /** 索引到字符的数组 */
-    private char[] indexToChar;
+    private final char[] indexToChar;
     
     /** 实际字符集大小（Radix） */
-    private int radix;
+    private final int radix;
     
     /** 常用字符区大小（映射到PUA区） */
-    private int commonZoneSize;
+    private final int commonZoneSize;
     
+    /**
+     * 创建默认字典（通用规范汉字表）的新实例
+     * 
+     * 实例不可变且线程安全，通常应使用共享的 {@link #getDefault()}，无需重复创建。
+     */
     public CharacterMapping() {
-        charToIndex = new HashMap<>(MAX_RADIX);
+        this(loadDefaultDictionary());
+    }
+    
+    /**
+     * 使用自定义字典创建映射
+     * 
+     * 字符按数组顺序编号：前 6400 个映射到 PUA 区，其余映射到罕用韩文音节区。
+     * 至少需要 1000 个字符，保证任意两个字符的输入都满足 FF1 的最小定义域要求（radix^n ≥ 1,000,000）。
+     * 
+     * @param characters 按索引顺序排列的字典字符，不能重复，不能落在加密字符区间内
+     */
+    public CharacterMapping(char[] characters) {
+        if (characters == null || characters.length < MIN_RADIX || characters.length > MAX_RADIX) {
+            throw new IllegalArgumentException(
+                "Dictionary size must be between " + MIN_RADIX + " and " + MAX_RADIX);
+        }
+        
+        lookup = new short[BMP_SIZE];
+        
+        // 设置实际的字符集大小
+        radix = characters.length;
+        indexToChar = Arrays.copyOf(characters, radix);
+        
+        // 记录常用区大小（前6400个字符映射到PUA区，剩余映射到韩文区）
+        commonZoneSize = Math.min(radix, PUA_CAPACITY);
+        
+        // 建立映射
+        for (int i = 0; i < radix; i++) {
+            char c = indexToChar[i];
+            if (lookup[c] != 0) {
+                throw new IllegalArgumentException(String.format("Duplicate dictionary character U+%04X", (int) c));
+            }
+            if (isInEncryptedRange(c)) {
+                throw new IllegalArgumentException(String.format(
+                    "Dictionary character U+%04X overlaps the encrypted character range", (int) c));
+            }
+            lookup[c] = (short) (i + 1);
+        }
+        
+        // 建立加密字符的反向映射（与 isEncryptedChar 的判定范围一致）
+        for (int i = 0; i < PUA_CAPACITY; i++) {
+            lookup[PUA_START + i] = (short) -(i + 1);
+        }
+        for (int i = 0; i < RARE_KOREAN_CAPACITY; i++) {
+            lookup[RARE_KOREAN_START + i] = (short) -(PUA_CAPACITY + i + 1);
+        }
+    }
+    
+    /**
+     * 获取进程内共享的默认字典映射
+     * 
+     * 首次调用时加载（类持有者惯用法，线程安全且无锁），之后所有服务实例共用同一份查找表。
+     */
+    public static CharacterMapping getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    private static final class DefaultHolder {
+        static final CharacterMapping INSTANCE = new CharacterMapping();
+    }
+    
+    /**
+     * 加载默认字典：优先使用构建时生成的二进制字典
+     */
+    private static char[] loadDefaultDictionary() {
         try {
-            initializeMapping();
+            String source = COMPILED_RESOURCE;
+            char[] chars = loadCompiledDictionary();
+            if (chars == null) {
+                // 未经构建生成二进制字典（如在 IDE 中直接运行）时回退到解析文本字表
+                source = "text resources";
+                chars = parseTextDictionary();
+            }
+            logger.debug("Loaded dictionary from {}: {} characters", source, chars.length);
+            return chars;
         } catch (IOException e) {
             throw new RuntimeException("Failed to initialize character mapping", e);
         }
     }
     
+    private static boolean isInEncryptedRange(char c) {
+        return (c >= PUA_START && c < PUA_START + PUA_CAPACITY)
+            || (c >= RARE_KOREAN_START && c < RARE_KOREAN_START + RARE_KOREAN_CAPACITY);
+    }
+    
+    /**
+     * 加载构建时生成的二进制字典
+     * 
+     * 格式：魔数（int）、字符数（int）、按索引顺序排列的字符（UTF-16BE），一次读入即可使用
+     * 
+     * @return 按索引顺序排列的字符；资源不存在时返回 null
+     */
+    static char[] loadCompiledDictionary() throws IOException {
+        byte[] data;
+        try (InputStream is = CharacterMapping.class.getResourceAsStream(COMPILED_RESOURCE)) {
+            if (is == null) {
+                return null;
+            }
+            data = readFully(is);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < 8 || buffer.getInt() != COMPILED_MAGIC) {
+            throw new IOException("Invalid compiled dictionary: " + COMPILED_RESOURCE);
+        }
+        int count = buffer.getInt();
+        if (count < 0 || count > MAX_RADIX || buffer.remaining() != count * 2) {
+            throw new IOException("Corrupted compiled dictionary: " + COMPILED_RESOURCE);
+        }
+        char[] chars = new char[count];
+        buffer.asCharBuffer().get(chars);
+        return chars;
+    }
+    
+    /**
+     * 写出二进制字典（格式见 {@link #loadCompiledDictionary()}）
+     */
+    static void writeCompiledDictionary(char[] chars, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + chars.length * 2);
+        buffer.putInt(COMPILED_MAGIC);
+        buffer.putInt(chars.length);
+        buffer.asCharBuffer().put(chars);
+        out.write(buffer.array());
+    }
+    
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + MAX_RADIX * 2);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+    
     /**
-     * 初始化字符映射
-     * 从资源文件中读取字符，按文件顺序建立映射
+     * 从文本字表解析字符集
+     * 
+     * 顺序：数字、英文字母、标点符号、一级字表、二级字表、三级字表，
+     * 重复字符只保留第一次出现，总数不超过 MAX_RADIX。
+     * 
+     * @return 按索引顺序排列的字符
      */
-    private void initializeMapping() throws IOException {
-        List<Character> allChars = new ArrayList<>();
+    static char[] parseTextDictionary() throws IOException {
+        DictionaryBuilder builder = new DictionaryBuilder();
         
         // 1. 添加数字 0-9 (10个)
         for (char c = '0'; c <= '9'; c++) {
-            allChars.add(c);
+            builder.add(c);
         }
         
         // 2. 添加大写英文字母 A-Z (26个)
         for (char c = 'A'; c <= 'Z'; c++) {
-            allChars.add(c);
+            builder.add(c);
         }
         
         // 3. 添加小写英文字母 a-z (26个)
         for (char c = 'a'; c <= 'z'; c++) {
-            allChars.add(c);
+            builder.add(c);
         }
         
         // 4. 添加标点符号
-        addPunctuationChars(allChars);
+        addPunctuationChars(builder);
         
         // 5. 从资源文件中读取汉字（按优先级顺序）
         // 一级字表（3500字，常用字）
-        List<Character> level1Chars = loadCharsFromResource("/level-1.txt");
-        for (char c : level1Chars) {
-            if (!allChars.contains(c) && allChars.size() < MAX_RADIX) {
-                allChars.add(c);
-            }
-        }
-        logger.info("Loaded Level 1 characters: {}", level1Chars.size());
-        
+        loadCharsFromResource("/level-1.txt", builder);
         // 二级字表（3000字，次常用字）
-        List<Character> level2Chars = loadCharsFromResource("/level-2.txt");
-        for (char c : level2Chars) {
-            if (!allChars.contains(c) && allChars.size() < MAX_RADIX) {
-                allChars.add(c);
-            }
-        }
-        logger.info("Loaded Level 2 characters: {}", level2Chars.size());
-        
+        loadCharsFromResource("/level-2.txt", builder);
         // 三级字表（1605字，较少使用）
-        List<Character> level3Chars = loadCharsFromResource("/level-3.txt");
-        for (char c : level3Chars) {
-            if (!allChars.contains(c) && allChars.size() < MAX_RADIX) {
-                allChars.add(c);
-            }
-        }
-        logger.info("Loaded Level 3 characters: {}", level3Chars.size());
-        
-        // 记录常用区大小（前6400个字符映射到PUA区，剩余映射到韩文区）
-        commonZoneSize = Math.min(allChars.size(), PUA_CAPACITY);
-        
-        // 限制总数不超过 MAX_RADIX
-        if (allChars.size() > MAX_RADIX) {
-            logger.warn("Character set exceeds MAX_RADIX ({}), truncating to {}", 
-                allChars.size(), MAX_RADIX);
-            allChars = allChars.subList(0, MAX_RADIX);
-        }
-        
-        // 设置实际的字符集大小
-        radix = allChars.size();
-        indexToChar = new char[radix];
-        
-        // 建立映射
-        for (int i = 0; i < allChars.size(); i++) {
-            addMapping(i, allChars.get(i));
-        }
+        loadCharsFromResource("/level-3.txt", builder);
         
-        logger.info("Character mapping initialized:");
-        logger.info("  - Total characters: {}", radix);
-        logger.info("  - Common zone size (mapped to PUA): {}", commonZoneSize);
-        logger.info("  - Rare zone size (mapped to Korean): {}", (radix - commonZoneSize));
-        logger.info("  - PUA capacity: {} (used: {})", PUA_CAPACITY, commonZoneSize);
-        logger.info("  - Korean capacity: {} (used: {})", RARE_KOREAN_CAPACITY, (radix - commonZoneSize));
+        return builder.toArray();
     }
     
     /**
@@ -163,51 +275,38 @@ public class CharacterMapping {
      * - 中文专用 U+3000 - U+303F (64个)
      * - 通用标点 U+2010 - U+203F (48个)
      */
-    private void addPunctuationChars(List<Character> allChars) {
+    private static void addPunctuationChars(DictionaryBuilder builder) {
         // 半角符号（除了数字和字母，这些已添加）
         for (int cp = 0x0020; cp <= 0x007E; cp++) {
             char c = (char) cp;
-            if (!Character.isLetterOrDigit(c) && !allChars.contains(c)) {
-                allChars.add(c);
+            if (!Character.isLetterOrDigit(c)) {
+                builder.add(c);
             }
         }
         
         // 全角符号 U+FF01 - U+FF5E
         for (int cp = 0xFF01; cp <= 0xFF5E; cp++) {
-            char c = (char) cp;
-            if (!allChars.contains(c)) {
-                allChars.add(c);
-            }
+            builder.add((char) cp);
         }
         
         // 中文专用标点 U+3000 - U+303F
         for (int cp = 0x3000; cp <= 0x303F; cp++) {
-            char c = (char) cp;
-            if (!allChars.contains(c)) {
-                allChars.add(c);
-            }
+            builder.add((char) cp);
         }
         
         // 通用标点 U+2010 - U+203F
         for (int cp = 0x2010; cp <= 0x203F; cp++) {
-            char c = (char) cp;
-            if (!allChars.contains(c)) {
-                allChars.add(c);
-            }
+            builder.add((char) cp);
         }
-        
-        logger.debug("Added punctuation characters, total: {}", allChars.size());
     }
     
     /**
-     * 从资源文件中加载字符列表
+     * 从资源文件中加载字符
      * @param resourcePath 资源文件路径
-     * @return 字符列表
+     * @param builder 字符集
      */
-    private List<Character> loadCharsFromResource(String resourcePath) throws IOException {
-        List<Character> chars = new ArrayList<>();
-        
-        try (InputStream is = getClass().getResourceAsStream(resourcePath)) {
+    private static void loadCharsFromResource(String resourcePath, DictionaryBuilder builder) throws IOException {
+        try (InputStream is = CharacterMapping.class.getResourceAsStream(resourcePath)) {
             if (is == null) {
                 throw new IOException("Resource not found: " + resourcePath);
             }
@@ -217,28 +316,39 @@ public class CharacterMapping {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     line = line.trim();
-                    if (!line.isEmpty()) {
-                        // 每行应该只有一个字符
-                        for (char c : line.toCharArray()) {
-                            // 跳过空白字符
-                            if (!Character.isWhitespace(c)) {
-                                chars.add(c);
-                            }
+                    // 每行应该只有一个字符，跳过空白字符
+                    for (int i = 0; i < line.length(); i++) {
+                        char c = line.charAt(i);
+                        if (!Character.isWhitespace(c)) {
+                            builder.add(c);
                         }
                     }
                 }
             }
         }
-        
-        return chars;
     }
     
     /**
-     * 添加字符映射
+     * 有序去重的字符集，用 BMP 位图判重（O(1)），容量上限 MAX_RADIX
      */
-    private void addMapping(int index, char originalChar) {
-        charToIndex.put(originalChar, index);
-        indexToChar[index] = originalChar;
+    private static final class DictionaryBuilder {
+        
+        private final boolean[] seen = new boolean[BMP_SIZE];
+        
+        private final char[] chars = new char[MAX_RADIX];
+        
+        private int size;
+        
+        void add(char c) {
+            if (!seen[c] && size < MAX_RADIX) {
+                seen[c] = true;
+                chars[size++] = c;
+            }
+        }
+        
+        char[] toArray() {
+            return Arrays.copyOf(chars, size);
+        }
     }
     
     /**
@@ -247,8 +357,18 @@ public class CharacterMapping {
      * @return 索引值 (0 到 radix-1)，如果字符不在字典中返回 -1
      */
     public int getCharIndex(char c) {
-        Integer index = charToIndex.get(c);
-        return index != null ? index : -1;
+        int v = lookup[c];
+        return v > 0 ? v - 1 : -1;
+    }
+    
+    /**
+     * 获取加密字符对应的索引
+     * @param c 待检查的字符
+     * @return 索引值，如果不是加密字符返回 -1
+     */
+    public int getEncryptedIndex(char c) {
+        int v = lookup[c];
+        return v < 0 ? -v - 1 : -1;
     }
     
     /**
@@ -294,16 +414,9 @@ public class CharacterMapping {
      * @return 索引值
      */
     public int mapFromEncryptedChar(char encryptedChar) {
-        int codePoint = (int) encryptedChar;
-        
-        // 检查是否在 PUA 区
-        if (codePoint >= PUA_START && codePoint < PUA_START + PUA_CAPACITY) {
-            return codePoint - PUA_START;
-        }
-        
-        // 检查是否在罕用韩文音节区
-        if (codePoint >= RARE_KOREAN_START && codePoint < RARE_KOREAN_START + RARE_KOREAN_CAPACITY) {
-            return PUA_CAPACITY + (codePoint - RARE_KOREAN_START);
+        int v = lookup[encryptedChar];
+        if (v < 0) {
+            return -v - 1;
         }
         
         throw new IllegalArgumentException("Character is not a valid encrypted character: " + encryptedChar);
@@ -315,19 +428,7 @@ public class CharacterMapping {
      * @return 如果是加密字符返回 true，否则返回 false
      */
     public boolean isEncryptedChar(char c) {
-        int codePoint = (int) c;
-        
-        // 检查是否在 PUA 区
-        if (codePoint >= PUA_START && codePoint < PUA_START + PUA_CAPACITY) {
-            return true;
-        }
-        
-        // 检查是否在罕用韩文音节区
-        if (codePoint >= RARE_KOREAN_START && codePoint < RARE_KOREAN_START + RARE_KOREAN_CAPACITY) {
-            return true;
-        }
-        
-        return false;
+        return lookup[c] < 0;
     }
     
     /**
@@ -350,7 +451,7 @@ public class CharacterMapping {
      * 检查字符是否在字典中
      */
     public boolean containsChar(char c) {
-        return charToIndex.containsKey(c);
+        return lookup[c] > 0;
     }
     
     /**
@@ -1,22 +1,25 @@
 package cn.lihongjie.unimask;
 
-import org.bouncycastle.crypto.BlockCipher;
-import org.bouncycastle.crypto.engines.AESEngine;
-import org.bouncycastle.crypto.fpe.FPEEngine;
-import org.bouncycastle.crypto.fpe.FPEFF1Engine;
-import org.bouncycastle.crypto.params.FPEParameters;
-import org.bouncycastle.crypto.params.KeyParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 中文格式保留加密服务
@@ -25,10 +28,11 @@ import java.util.Arrays;
  * 采用特殊的 3 字节 Unicode 映射方案
  * 
  * 特性：
- * - 基于 NIST SP 800-38G 标准的 FF1 算法
+ * - 基于 NIST SP 800-38G 标准的 FF1 算法（可选 FF3-1，参见 {@link FpeAlgorithm}）
  * - 支持 8500 个字符的字符集（常用汉字、ASCII、标点、罕见汉字）
  * - 支持头尾保留功能
  * - 加密后的字符映射到 PUA 和罕用韩文区，保持 3 字节 Unicode
+ * - 线程安全：FF1 引擎通过无锁对象池分配，同一实例可被多个线程并发调用
  * 
  * @author lihongjie
  */
@@ -36,14 +40,35 @@ public class ChineseFPEService {
     
     private static final Logger logger = LoggerFactory.getLogger(ChineseFPEService.class);
     
+    /** 字符串 tweak 缓存的最大条目数 */
+    private static final int TWEAK_CACHE_SIZE = 1024;
+    
+    /** 批量加解密时一次交错处理的记录数 */
+    private static final int BATCH_WINDOW = 256;
+    
     /** 字符映射工具 */
     private final CharacterMapping charMapping;
     
     /** AES 密钥（128位/16字节） */
     private final byte[] key;
     
-    /** FF1 引擎 */
-    private final FPEEngine ff1Engine;
+    /** FPE 使用的 AES 实现 */
+    private final AesBackend aesBackend;
+    
+    /** 格式保留加密算法 */
+    private final FpeAlgorithm algorithm;
+    
+    /** 工作单元池（FF1 引擎及中间缓冲区非线程安全，每次调用或每个批次独占一个） */
+    private final EnginePool<FPEWorker> workers;
+    
+    /** 指标回调，默认不记录 */
+    private volatile FPEMetrics metrics = FPEMetrics.NOOP;
+    
+    /** 字典外字符统计，null 表示不统计 */
+    private volatile UnmappedCharCollector unmappedChars;
+    
+    /** 字符串 tweak 到预计算 Tweak 的有界缓存 */
+    private final BoundedCache<String, Tweak> tweakCache = new BoundedCache<>(TWEAK_CACHE_SIZE);
     
     /**
      * 构造函数（从密码字符串派生密钥）
@@ -65,23 +90,108 @@ public class ChineseFPEService {
         this(deriveKeyFromPassword(password, keyLength));
     }
     
+    /**
+     * 构造函数（按指定参数从密码派生密钥）
+     * 
+     * 构造过程会同步执行 PBKDF2；不希望阻塞当前线程时使用 {@link #createAsync(String, KdfParameters)}。
+     * 
+     * @param password 密码字符串
+     * @param kdfParameters 密钥派生参数（盐值、迭代次数、密钥长度）
+     */
+    public ChineseFPEService(String password, KdfParameters kdfParameters) {
+        this(password, kdfParameters, FPEMetrics.NOOP);
+    }
+    
+    /**
+     * 构造函数（按指定参数从密码派生密钥，并安装指标回调）
+     * 
+     * PBKDF2 的耗时报告给 metrics，构造完成后 metrics 即为该实例的指标回调（见 {@link #setMetrics(FPEMetrics)}）。
+     * 
+     * @param password 密码字符串
+     * @param kdfParameters 密钥派生参数（盐值、迭代次数、密钥长度）
+     * @param metrics 指标回调
+     */
+    public ChineseFPEService(String password, KdfParameters kdfParameters, FPEMetrics metrics) {
+        this(requireKdf(kdfParameters).deriveKey(password, metrics));
+        setMetrics(metrics);
+    }
+    
     /**
      * 构造函数（直接使用字节数组密钥）
      * 
      * @param key AES 密钥（必须是 16、24 或 32 字节）
      */
     public ChineseFPEService(byte[] key) {
+        this(key, CharacterMapping.getDefault());
+    }
+    
+    /**
+     * 构造函数（使用自定义字符映射）
+     * 
+     * 字符映射不可变，可在多个服务实例之间共享；默认构造函数使用进程内共享的
+     * {@link CharacterMapping#getDefault()}，每个实例只持有自己的密钥材料。
+     * 
+     * @param key AES 密钥（必须是 16、24 或 32 字节）
+     * @param charMapping 字符映射
+     */
+    public ChineseFPEService(byte[] key, CharacterMapping charMapping) {
+        this(key, charMapping, AesBackend.getDefault());
+    }
+    
+    /**
+     * 构造函数（指定 AES 实现）
+     * 
+     * 不同 AES 实现的加解密结果完全一致，只影响性能，参见 {@link AesBackend}。
+     * 
+     * @param key AES 密钥（必须是 16、24 或 32 字节）
+     * @param charMapping 字符映射
+     * @param aesBackend AES 实现
+     */
+    public ChineseFPEService(byte[] key, CharacterMapping charMapping, AesBackend aesBackend) {
+        this(key, charMapping, aesBackend, FpeAlgorithm.FF1);
+    }
+    
+    /**
+     * 构造函数（指定 AES 实现和加密算法）
+     * 
+     * 选择 {@link FpeAlgorithm#FF3_1} 时，中间部分可处理的字符数超过
+     * {@link FpeAlgorithm#getMaxLength(int)} 的文本会抛出 IllegalArgumentException。
+     * 
+     * @param key AES 密钥（必须是 16、24 或 32 字节）
+     * @param charMapping 字符映射
+     * @param aesBackend AES 实现
+     * @param algorithm 加密算法
+     */
+    public ChineseFPEService(byte[] key, CharacterMapping charMapping, AesBackend aesBackend,
+                             FpeAlgorithm algorithm) {
         if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
             throw new IllegalArgumentException(
                 "Key must be 16, 24, or 32 bytes (128, 192, or 256 bits)");
         }
+        if (charMapping == null) {
+            throw new IllegalArgumentException("charMapping cannot be null");
+        }
+        if (aesBackend == null) {
+            throw new IllegalArgumentException("aesBackend cannot be null");
+        }
+        if (algorithm == null) {
+            throw new IllegalArgumentException("algorithm cannot be null");
+        }
         
         this.key = Arrays.copyOf(key, key.length);
-        this.charMapping = new CharacterMapping();
+        this.charMapping = charMapping;
+        this.aesBackend = aesBackend;
+        this.algorithm = algorithm;
         
-        // 初始化 FF1 引擎
-        BlockCipher aesEngine = new AESEngine();
-        this.ff1Engine = new FPEFF1Engine(aesEngine);
+        // 初始化 FPE 引擎池（每个引擎创建时完成一次 AES 密钥扩展）
+        this.workers = new EnginePool<>(this::newWorker);
+    }
+    
+    private static KdfParameters requireKdf(KdfParameters kdfParameters) {
+        if (kdfParameters == null) {
+            throw new IllegalArgumentException("kdfParameters cannot be null");
+        }
+        return kdfParameters;
     }
     
     /**
@@ -95,44 +205,35 @@ public class ChineseFPEService {
      * @throws IllegalArgumentException 如果参数无效
      */
     public String encrypt(int headPreserve, int tailPreserve, String tweak, String plaintext) {
+        return encrypt(resolveTweak(tweak), headPreserve, tailPreserve, plaintext);
+    }
+    
+    /**
+     * 加密接口（使用预计算的 tweak）
+     * Tweak 参数放在首位，避免与字符串版本在传入 null 时产生重载歧义
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码，null 视为空扰码
+     * @param headPreserve 开头保留不加密的字符数
+     * @param tailPreserve 末尾保留不加密的字符数
+     * @param plaintext 待加密的明文
+     * @return 密文（保留开头结尾，中间部分映射为 PUA/韩文 字符）
+     * @throws IllegalArgumentException 如果参数无效
+     */
+    public String encrypt(Tweak tweak, int headPreserve, int tailPreserve, String plaintext) {
         // 参数验证
         if (plaintext == null || plaintext.isEmpty()) {
             return plaintext;
         }
         
-        if (headPreserve < 0 || tailPreserve < 0) {
-            throw new IllegalArgumentException("headPreserve and tailPreserve must be non-negative");
-        }
-        
-        // 优先保证头部，如果长度不够，调整或忽略尾部
-        if (headPreserve >= plaintext.length()) {
-            return plaintext; // 连头部都无法完全保留，返回原文
-        }
-        
-        // 调整尾部保留：确保至少有1个字符可以加密
-        int actualTailPreserve = Math.min(tailPreserve, plaintext.length() - headPreserve - 1);
-        if (actualTailPreserve < 0) {
-            actualTailPreserve = 0;
-        }
-        
-        if (tweak == null) {
-            tweak = "";
-        }
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
         
-        // 分割字符串（使用调整后的尾部保留）
-        String prefix = plaintext.substring(0, headPreserve);
-        String suffix = plaintext.substring(plaintext.length() - actualTailPreserve);
-        String middle = plaintext.substring(headPreserve, plaintext.length() - actualTailPreserve);
-        
-        if (middle.isEmpty()) {
-            return plaintext;
+        FPEWorker worker = workers.borrow();
+        try {
+            return transform(true, tweak, headPreserve, tailPreserve, plaintext, worker);
+        } finally {
+            workers.release(worker);
         }
-        
-        // 加密中间部分
-        String encryptedMiddle = encryptMiddlePart(middle, tweak);
-        
-        // 组合结果
-        return prefix + encryptedMiddle + suffix;
     }
     
     /**
@@ -144,17 +245,21 @@ public class ChineseFPEService {
      * @throws IllegalArgumentException 如果参数无效
      */
     public String decrypt(String encryptedText, String tweak) {
-        if (encryptedText == null || encryptedText.isEmpty()) {
-            return encryptedText;
-        }
-        
-        if (tweak == null) {
-            tweak = "";
-        }
-        
+        return decrypt(resolveTweak(tweak), encryptedText);
+    }
+    
+    /**
+     * 解密接口（整个字符串作为加密内容，使用预计算的 tweak）
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码，必须与加密时一致
+     * @param encryptedText 密文（不包含保留部分）
+     * @return 原始明文
+     * @throws IllegalArgumentException 如果参数无效
+     */
+    public String decrypt(Tweak tweak, String encryptedText) {
         // 注意：解密时无法自动识别保留区，需要调用者知道哪些是加密区
         // 这里假设整个字符串都是加密区（实际使用中需要配合元数据）
-        return decryptMiddlePart(encryptedText, tweak);
+        return decrypt(tweak, encryptedText, 0, 0);
     }
     
     /**
@@ -167,55 +272,630 @@ public class ChineseFPEService {
      * @return 原始明文
      */
     public String decrypt(String encryptedText, int headPreserve, int tailPreserve, String tweak) {
+        return decrypt(resolveTweak(tweak), encryptedText, headPreserve, tailPreserve);
+    }
+    
+    /**
+     * 解密接口（带头尾保留信息，使用预计算的 tweak）
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码，必须与加密时一致
+     * @param encryptedText 包含保留部分的密文
+     * @param headPreserve 开头保留的字符数
+     * @param tailPreserve 末尾保留的字符数
+     * @return 原始明文
+     */
+    public String decrypt(Tweak tweak, String encryptedText, int headPreserve, int tailPreserve) {
         if (encryptedText == null || encryptedText.isEmpty()) {
             return encryptedText;
         }
         
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
+        
+        FPEWorker worker = workers.borrow();
+        try {
+            return transform(false, tweak, headPreserve, tailPreserve, encryptedText, worker);
+        } finally {
+            workers.release(worker);
+        }
+    }
+    
+    /**
+     * 加密 text[start, end) 并写入 char 数组（不分配中间对象）
+     * 
+     * 以下写入调用方缓冲区的重载读取任意 {@link CharSequence} 的一个区间，头尾保留在区间内计算；
+     * 结果长度总是等于区间长度。中间结果使用池化的工作单元缓冲区，稳态下除调用方的输出外不产生分配。
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码，null 视为空扰码
+     * @param headPreserve 开头保留不加密的字符数
+     * @param tailPreserve 末尾保留不加密的字符数
+     * @param text 待加密的文本
+     * @param start 区间起点（含）
+     * @param end 区间终点（不含）
+     * @param dst 输出数组
+     * @param dstOffset 输出起始位置
+     * @return 写入的字符数（等于 end - start）
+     * @throws IndexOutOfBoundsException 如果区间越界或输出数组空间不足
+     */
+    public int encrypt(Tweak tweak, int headPreserve, int tailPreserve, CharSequence text, int start, int end,
+                       char[] dst, int dstOffset) {
+        return transformTo(true, tweak, headPreserve, tailPreserve, text, start, end, dst, dstOffset);
+    }
+    
+    /**
+     * 加密 text[start, end) 并追加到 StringBuilder
+     */
+    public void encrypt(Tweak tweak, int headPreserve, int tailPreserve, CharSequence text, int start, int end,
+                        StringBuilder out) {
+        transformTo(true, tweak, headPreserve, tailPreserve, text, start, end, out);
+    }
+    
+    /**
+     * 加密 text[start, end) 并写入 CharBuffer（从当前位置开始，写入后位置前移）
+     * 
+     * @throws java.nio.BufferOverflowException 如果剩余空间不足（此时不写入任何字符）
+     */
+    public void encrypt(Tweak tweak, int headPreserve, int tailPreserve, CharSequence text, int start, int end,
+                        CharBuffer out) {
+        transformTo(true, tweak, headPreserve, tailPreserve, text, start, end, out);
+    }
+    
+    /**
+     * 加密 text[start, end) 并追加到 Appendable（如 Writer）
+     * 
+     * @throws IOException 如果写入失败
+     */
+    public void encrypt(Tweak tweak, int headPreserve, int tailPreserve, CharSequence text, int start, int end,
+                        Appendable out) throws IOException {
+        transformTo(true, tweak, headPreserve, tailPreserve, text, start, end, out);
+    }
+    
+    /**
+     * 解密 text[start, end) 并写入 char 数组（不分配中间对象）
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码，必须与加密时一致
+     * @param text 包含保留部分的密文
+     * @param start 区间起点（含）
+     * @param end 区间终点（不含）
+     * @param headPreserve 开头保留的字符数
+     * @param tailPreserve 末尾保留的字符数
+     * @param dst 输出数组
+     * @param dstOffset 输出起始位置
+     * @return 写入的字符数（等于 end - start）
+     * @throws IndexOutOfBoundsException 如果区间越界或输出数组空间不足
+     */
+    public int decrypt(Tweak tweak, CharSequence text, int start, int end, int headPreserve, int tailPreserve,
+                       char[] dst, int dstOffset) {
+        return transformTo(false, tweak, headPreserve, tailPreserve, text, start, end, dst, dstOffset);
+    }
+    
+    /**
+     * 解密 text[start, end) 并追加到 StringBuilder
+     */
+    public void decrypt(Tweak tweak, CharSequence text, int start, int end, int headPreserve, int tailPreserve,
+                        StringBuilder out) {
+        transformTo(false, tweak, headPreserve, tailPreserve, text, start, end, out);
+    }
+    
+    /**
+     * 解密 text[start, end) 并写入 CharBuffer（从当前位置开始，写入后位置前移）
+     * 
+     * @throws java.nio.BufferOverflowException 如果剩余空间不足（此时不写入任何字符）
+     */
+    public void decrypt(Tweak tweak, CharSequence text, int start, int end, int headPreserve, int tailPreserve,
+                        CharBuffer out) {
+        transformTo(false, tweak, headPreserve, tailPreserve, text, start, end, out);
+    }
+    
+    /**
+     * 解密 text[start, end) 并追加到 Appendable（如 Writer）
+     * 
+     * @throws IOException 如果写入失败
+     */
+    public void decrypt(Tweak tweak, CharSequence text, int start, int end, int headPreserve, int tailPreserve,
+                        Appendable out) throws IOException {
+        transformTo(false, tweak, headPreserve, tailPreserve, text, start, end, out);
+    }
+    
+    /**
+     * 批量加密
+     * 
+     * 整批共享一次参数校验、tweak 解析和引擎借出，中间缓冲区在元素之间复用，
+     * 单值吞吐量明显高于逐个调用 {@link #encrypt(int, int, String, String)}。
+     * 
+     * @param headPreserve 开头保留不加密的字符数
+     * @param tailPreserve 末尾保留不加密的字符数
+     * @param tweak 扰码
+     * @param plaintexts 待加密的明文列表（元素可以为 null）
+     * @return 与输入顺序一致的密文列表
+     */
+    public List<String> encryptBatch(int headPreserve, int tailPreserve, String tweak, List<String> plaintexts) {
+        return encryptBatch(resolveTweak(tweak), headPreserve, tailPreserve, plaintexts);
+    }
+    
+    /**
+     * 批量加密（使用预计算的 tweak）
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码
+     * @param headPreserve 开头保留不加密的字符数
+     * @param tailPreserve 末尾保留不加密的字符数
+     * @param plaintexts 待加密的明文列表（元素可以为 null）
+     * @return 与输入顺序一致的密文列表
+     */
+    public List<String> encryptBatch(Tweak tweak, int headPreserve, int tailPreserve, List<String> plaintexts) {
+        return transformBatch(true, tweak, headPreserve, tailPreserve, plaintexts);
+    }
+    
+    /**
+     * 批量解密
+     * 
+     * @param ciphertexts 包含保留部分的密文列表（元素可以为 null）
+     * @param headPreserve 开头保留的字符数
+     * @param tailPreserve 末尾保留的字符数
+     * @param tweak 必须与加密时一致的扰码
+     * @return 与输入顺序一致的明文列表
+     */
+    public List<String> decryptBatch(List<String> ciphertexts, int headPreserve, int tailPreserve, String tweak) {
+        return decryptBatch(resolveTweak(tweak), ciphertexts, headPreserve, tailPreserve);
+    }
+    
+    /**
+     * 批量解密（使用预计算的 tweak）
+     * 
+     * @param tweak 由本实例 {@link #createTweak(String)} 创建的扰码，必须与加密时一致
+     * @param ciphertexts 包含保留部分的密文列表（元素可以为 null）
+     * @param headPreserve 开头保留的字符数
+     * @param tailPreserve 末尾保留的字符数
+     * @return 与输入顺序一致的明文列表
+     */
+    public List<String> decryptBatch(Tweak tweak, List<String> ciphertexts, int headPreserve, int tailPreserve) {
+        return transformBatch(false, tweak, headPreserve, tailPreserve, ciphertexts);
+    }
+    
+    private List<String> transformBatch(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                                        List<String> texts) {
+        if (texts == null) {
+            throw new IllegalArgumentException("texts cannot be null");
+        }
+        String[] input = texts.toArray(new String[0]);
+        String[] output = new String[input.length];
+        transformRange(forEncryption, tweak, headPreserve, tailPreserve, input, 0, input.length, output, 0);
+        return Arrays.asList(output);
+    }
+    
+    /**
+     * 对 input[from, to) 加/解密并写入 output[outOff...]，整段只借出一次工作单元
+     * 
+     * 每 {@link #BATCH_WINDOW} 条为一个窗口：先提取所有记录的索引，再把可处理字符数相同的记录
+     * 交给引擎的批量接口同步推进，使各记录同一步的 AES 块合并为一次多块调用。
+     * 结果与逐条调用完全一致。
+     */
+    void transformRange(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                        String[] input, int from, int to, String[] output, int outOff) {
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
+        
+        FPEWorker worker = workers.borrow();
+        try {
+            for (int start = from; start < to; start += BATCH_WINDOW) {
+                int end = Math.min(to, start + BATCH_WINDOW);
+                transformWindow(forEncryption, tweak, headPreserve, tailPreserve, input, start, end,
+                    output, outOff + start - from, worker);
+            }
+        } finally {
+            workers.release(worker);
+        }
+    }
+    
+    /**
+     * 交错处理一个窗口内的记录
+     */
+    private void transformWindow(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                                 String[] input, int from, int to, String[] output, int outOff,
+                                 FPEWorker worker) {
+        FPEMetrics m = metrics;
+        long startNanos = m == FPEMetrics.NOOP ? 0L : System.nanoTime();
+        int count = to - from;
+        int radix = charMapping.getRadix();
+        
+        // 1. 计算各记录中间部分的范围，-1 表示原样输出
+        int[] records = worker.records(count * 4);
+        int total = 0;
+        for (int r = 0; r < count; r++) {
+            String text = input[from + r];
+            int length = text == null ? 0 : text.length();
+            if (length == 0 || headPreserve >= length) {
+                records[r * 4] = -1;
+                continue;
+            }
+            int actualTailPreserve = Math.max(0, Math.min(tailPreserve, length - headPreserve - 1));
+            records[r * 4] = headPreserve;
+            records[r * 4 + 1] = length - actualTailPreserve;
+            records[r * 4 + 2] = total;
+            total += records[r * 4 + 1] - headPreserve;
+        }
+        
+        // 2. 提取索引；单字符记录直接置换，两个及以上的记录等待分组
+        int[] indices = worker.indices(total);
+        long[] order = worker.order(count);
+        int pending = 0;
+        UnmappedCharCollector collector = forEncryption ? unmappedChars : null;
+        for (int r = 0; r < count; r++) {
+            if (records[r * 4] < 0) {
+                continue;
+            }
+            String text = input[from + r];
+            int pos = records[r * 4 + 2];
+            int n = 0;
+            for (int i = records[r * 4], end = records[r * 4 + 1]; i < end; i++) {
+                char c = text.charAt(i);
+                int index = forEncryption ? charMapping.getCharIndex(c) : charMapping.getEncryptedIndex(c);
+                if (index != -1) {
+                    indices[pos + n++] = index;
+                } else if (collector != null) {
+                    collector.record(tweak.getValue(), text, i, records[r * 4], end);
+                }
+            }
+            records[r * 4 + 3] = n;
+            if (n == 1) {
+                indices[pos] = forEncryption
+                    ? (indices[pos] + tweak.getShift()) % radix
+                    : (indices[pos] - tweak.getShift() + radix) % radix;
+            } else if (n > 1) {
+                order[pending++] = ((long) n << 32) | r;
+            }
+        }
+        
+        // 3. 按可处理字符数分组，每组最多 FF1Engine.MAX_BATCH 条同步处理
+        Arrays.sort(order, 0, pending);
+        int[] groupOffsets = worker.groupOffsets;
+        for (int i = 0; i < pending; ) {
+            int n = (int) (order[i] >>> 32);
+            int size = 0;
+            while (i < pending && (int) (order[i] >>> 32) == n && size < FF1Engine.MAX_BATCH) {
+                groupOffsets[size++] = records[(int) order[i] * 4 + 2];
+                i++;
+            }
+            worker.processBatch(forEncryption, tweak, indices, groupOffsets, 0, size, n);
+        }
+        
+        // 4. 把索引映射回字符：头部 + 中间部分 + 尾部
+        for (int r = 0; r < count; r++) {
+            String text = input[from + r];
+            if (records[r * 4] < 0 || records[r * 4 + 3] == 0) {
+                output[outOff + r] = text;
+                continue;
+            }
+            int length = text.length();
+            int middleEnd = records[r * 4 + 1];
+            int pos = records[r * 4 + 2];
+            char[] out = worker.chars(length);
+            text.getChars(0, headPreserve, out, 0);
+            for (int i = headPreserve; i < middleEnd; i++) {
+                char c = text.charAt(i);
+                if (forEncryption) {
+                    out[i] = charMapping.getCharIndex(c) != -1 ? charMapping.mapToEncryptedChar(indices[pos++]) : c;
+                } else {
+                    out[i] = charMapping.isEncryptedChar(c) ? charMapping.getOriginalChar(indices[pos++]) : c;
+                }
+            }
+            text.getChars(middleEnd, length, out, middleEnd);
+            output[outOff + r] = new String(out, 0, length);
+        }
+        
+        if (m != FPEMetrics.NOOP) {
+            recordWindow(m, forEncryption, input, from, count, records, System.nanoTime() - startNanos);
+        }
+    }
+    
+    /**
+     * 记录一个批量窗口内每个非空文本的指标，耗时取窗口平均值
+     */
+    private static void recordWindow(FPEMetrics m, boolean forEncryption, String[] input,
+                                     int from, int count, int[] records, long nanos) {
+        int recorded = 0;
+        for (int r = 0; r < count; r++) {
+            String text = input[from + r];
+            if (text != null && !text.isEmpty()) {
+                recorded++;
+            }
+        }
+        long perRecord = recorded == 0 ? 0 : nanos / recorded;
+        for (int r = 0; r < count; r++) {
+            String text = input[from + r];
+            if (text == null || text.isEmpty()) {
+                continue;
+            }
+            if (records[r * 4] < 0) {
+                m.recordTransform(forEncryption, FPEMetrics.Path.PASSTHROUGH, 0, 0, perRecord);
+            } else {
+                int middleLength = records[r * 4 + 1] - records[r * 4];
+                int n = records[r * 4 + 3];
+                m.recordTransform(forEncryption, pathOf(n), middleLength, middleLength - n, perRecord);
+            }
+        }
+    }
+    
+    private int transformTo(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                            CharSequence text, int start, int end, char[] dst, int dstOffset) {
+        int length = checkRange(text, start, end);
+        if (dst == null) {
+            throw new IllegalArgumentException("dst cannot be null");
+        }
+        if (dstOffset < 0 || dstOffset > dst.length - length) {
+            throw new IndexOutOfBoundsException("dstOffset " + dstOffset + ", length " + length
+                + ", dst.length " + dst.length);
+        }
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
+        if (length == 0) {
+            return 0;
+        }
+        
+        FPEWorker worker = workers.borrow();
+        try {
+            char[] out = transformInto(forEncryption, tweak, headPreserve, tailPreserve, text, start, end, worker);
+            System.arraycopy(out, 0, dst, dstOffset, length);
+            return length;
+        } finally {
+            workers.release(worker);
+        }
+    }
+    
+    private void transformTo(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                             CharSequence text, int start, int end, StringBuilder out) {
+        int length = checkRange(text, start, end);
+        if (out == null) {
+            throw new IllegalArgumentException("out cannot be null");
+        }
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
+        if (length == 0) {
+            return;
+        }
+        
+        FPEWorker worker = workers.borrow();
+        try {
+            out.append(transformInto(forEncryption, tweak, headPreserve, tailPreserve, text, start, end, worker),
+                0, length);
+        } finally {
+            workers.release(worker);
+        }
+    }
+    
+    private void transformTo(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                             CharSequence text, int start, int end, CharBuffer out) {
+        int length = checkRange(text, start, end);
+        if (out == null) {
+            throw new IllegalArgumentException("out cannot be null");
+        }
+        if (out.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
+        if (length == 0) {
+            return;
+        }
+        
+        FPEWorker worker = workers.borrow();
+        try {
+            out.put(transformInto(forEncryption, tweak, headPreserve, tailPreserve, text, start, end, worker),
+                0, length);
+        } finally {
+            workers.release(worker);
+        }
+    }
+    
+    private void transformTo(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                             CharSequence text, int start, int end, Appendable out) throws IOException {
+        int length = checkRange(text, start, end);
+        if (out == null) {
+            throw new IllegalArgumentException("out cannot be null");
+        }
+        checkPreserve(headPreserve, tailPreserve);
+        tweak = checkTweak(tweak);
+        if (length == 0) {
+            return;
+        }
+        
+        FPEWorker worker = workers.borrow();
+        try {
+            char[] result = transformInto(forEncryption, tweak, headPreserve, tailPreserve, text, start, end, worker);
+            if (out instanceof Writer) {
+                ((Writer) out).write(result, 0, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    out.append(result[i]);
+                }
+            }
+        } finally {
+            workers.release(worker);
+        }
+    }
+    
+    /**
+     * 校验输入区间
+     * 
+     * @return 区间长度
+     */
+    private static int checkRange(CharSequence text, int start, int end) {
+        if (text == null) {
+            throw new IllegalArgumentException("text cannot be null");
+        }
+        if (start < 0 || start > end || end > text.length()) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + text.length());
+        }
+        return end - start;
+    }
+    
+    /**
+     * 校验头尾保留长度
+     */
+    private static void checkPreserve(int headPreserve, int tailPreserve) {
         if (headPreserve < 0 || tailPreserve < 0) {
             throw new IllegalArgumentException("headPreserve and tailPreserve must be non-negative");
         }
+    }
+    
+    /**
+     * 加/解密单个非空文本
+     */
+    private String transform(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                             String text, FPEWorker worker) {
+        int length = text.length();
+        
+        // 优先保证头部，如果长度不够，调整或忽略尾部
+        if (headPreserve >= length) {
+            FPEMetrics m = metrics;
+            if (m != FPEMetrics.NOOP) {
+                m.recordTransform(forEncryption, FPEMetrics.Path.PASSTHROUGH, 0, 0, 0L);
+            }
+            return text; // 连头部都无法完全保留，返回原文
+        }
+        
+        char[] out = transformInto(forEncryption, tweak, headPreserve, tailPreserve, text, 0, length, worker);
+        return new String(out, 0, length);
+    }
+    
+    /**
+     * 加/解密 text[start, end)，结果写入工作单元的字符缓冲区（长度与输入相同）
+     * 
+     * @return 保存结果的缓冲区
+     */
+    private char[] transformInto(boolean forEncryption, Tweak tweak, int headPreserve, int tailPreserve,
+                               CharSequence text, int start, int end, FPEWorker worker) {
+        FPEMetrics m = metrics;
+        long startNanos = m == FPEMetrics.NOOP ? 0L : System.nanoTime();
+        int length = end - start;
+        char[] out = worker.chars(length);
         
         // 优先保证头部，如果长度不够，调整或忽略尾部
-        if (headPreserve >= encryptedText.length()) {
-            return encryptedText; // 连头部都无法完全保留，返回原文
+        if (headPreserve >= length) {
+            copy(text, start, end, out, 0); // 连头部都无法完全保留，原样输出
+            if (m != FPEMetrics.NOOP) {
+                m.recordTransform(forEncryption, FPEMetrics.Path.PASSTHROUGH, 0, 0, System.nanoTime() - startNanos);
+            }
+            return out;
         }
         
-        // 调整尾部保留：确保至少有1个字符可以解密
-        int actualTailPreserve = Math.min(tailPreserve, encryptedText.length() - headPreserve - 1);
+        // 调整尾部保留：确保至少有1个字符可以加/解密
+        int actualTailPreserve = Math.min(tailPreserve, length - headPreserve - 1);
         if (actualTailPreserve < 0) {
             actualTailPreserve = 0;
         }
+        int middleStart = start + headPreserve;
+        int middleEnd = end - actualTailPreserve;
         
+        // 在复用的缓冲区中拼接：头部 + 处理后的中间部分 + 尾部
+        copy(text, start, middleStart, out, 0);
+        int count = forEncryption
+            ? encryptMiddlePart(text, middleStart, middleEnd, tweak, worker, out, headPreserve)
+            : decryptMiddlePart(text, middleStart, middleEnd, tweak, worker, out, headPreserve);
+        copy(text, middleEnd, end, out, middleEnd - start);
+        if (m != FPEMetrics.NOOP) {
+            int middleLength = middleEnd - middleStart;
+            m.recordTransform(forEncryption, pathOf(count), middleLength, middleLength - count,
+                System.nanoTime() - startNanos);
+        }
+        return out;
+    }
+    
+    /**
+     * 缓存命中时补记原样保留的字符
+     * 
+     * 命中的结果不经过 {@link #transformInto}，在这里按相同的头尾划分扫描中间部分：
+     * 加密时把字典外字符计入收集器，并把保留的字符数报告给指标回调。两者都未安装时直接返回。
+     */
+    void recordCachedTransform(boolean forEncryption, String tweakValue, int headPreserve, int tailPreserve,
+                               String text) {
+        FPEMetrics m = metrics;
+        UnmappedCharCollector collector = forEncryption ? unmappedChars : null;
+        int length = text.length();
+        if ((m == FPEMetrics.NOOP && collector == null) || headPreserve >= length) {
+            return;
+        }
+        int middleStart = headPreserve;
+        int middleEnd = length - Math.max(0, Math.min(tailPreserve, length - headPreserve - 1));
+        int skipped = 0;
+        for (int i = middleStart; i < middleEnd; i++) {
+            char c = text.charAt(i);
+            if (forEncryption ? charMapping.getCharIndex(c) == -1 : charMapping.getEncryptedIndex(c) == -1) {
+                skipped++;
+                if (collector != null) {
+                    collector.record(tweakValue, text, i, middleStart, middleEnd);
+                }
+            }
+        }
+        if (m != FPEMetrics.NOOP) {
+            m.recordSkippedChars(forEncryption, skipped);
+        }
+    }
+    
+    private static FPEMetrics.Path pathOf(int count) {
+        return count == 0 ? FPEMetrics.Path.PASSTHROUGH
+            : count == 1 ? FPEMetrics.Path.SINGLE_CHAR : FPEMetrics.Path.FPE;
+    }
+    
+    /**
+     * 把 text[start, end) 复制到 out[outPos...]
+     */
+    private static void copy(CharSequence text, int start, int end, char[] out, int outPos) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, out, outPos);
+        } else {
+            for (int i = start; i < end; i++) {
+                out[outPos++] = text.charAt(i);
+            }
+        }
+    }
+    
+    /**
+     * 创建预计算的 tweak
+     * 
+     * 对于频繁使用的固定 tweak，建议创建一次后复用，省去每次调用时的编码、哈希和 FF1 前缀计算。
+     * 字符串形式的 tweak 也会经过内部的有界缓存，但仍需一次哈希表查找。
+     * 
+     * @param tweak 扰码字符串（null 视为空字符串）
+     * @return 与本实例绑定的 Tweak
+     */
+    public Tweak createTweak(String tweak) {
         if (tweak == null) {
             tweak = "";
         }
-        
-        // 分割字符串（使用调整后的尾部保留）
-        String prefix = encryptedText.substring(0, headPreserve);
-        String suffix = encryptedText.substring(encryptedText.length() - actualTailPreserve);
-        String middle = encryptedText.substring(headPreserve, encryptedText.length() - actualTailPreserve);
-        
-        if (middle.isEmpty()) {
-            return encryptedText;
+        return new Tweak(this, tweak, calculateShift(tweak.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * 通过有界缓存将字符串 tweak 解析为 Tweak
+     */
+    Tweak resolveTweak(String tweak) {
+        return tweakCache.get(tweak == null ? "" : tweak, this::createTweak);
+    }
+    
+    /**
+     * 校验 tweak 属于本实例，null 视为空扰码
+     */
+    private Tweak checkTweak(Tweak tweak) {
+        if (tweak == null) {
+            return resolveTweak("");
         }
-        
-        // 解密中间部分
-        String decryptedMiddle = decryptMiddlePart(middle, tweak);
-        
-        // 组合结果
-        return prefix + decryptedMiddle + suffix;
+        if (tweak.getOwner() != this) {
+            throw new IllegalArgumentException("Tweak was created by a different ChineseFPEService instance");
+        }
+        return tweak;
     }
     
     /**
      * 计算单字符加密的偏移量
      * 使用 key 和 tweak 的哈希值生成一个确定性的偏移
      */
-    private int calculateShift(String tweak) {
+    private int calculateShift(byte[] tweakBytes) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             // 将 key 和 tweak 结合后计算哈希
             digest.update(key);
-            digest.update(tweak.getBytes(StandardCharsets.UTF_8));
+            digest.update(tweakBytes);
             byte[] hash = digest.digest();
             
             // 使用前4个字节转为int
@@ -232,242 +912,121 @@ public class ChineseFPEService {
     }
     
     /**
-     * 加密中间部分
+     * 加密中间部分 text[start, end)，结果写入 out[outPos...]
+     * 
+     * @return 加密的字符数
      */
-    private String encryptMiddlePart(String middle, String tweak) {
-        // 1. 将字符串转换为索引数组，记录不在字典中的字符位置
-        int[] plainIndices = new int[middle.length()];
-        boolean[] shouldEncrypt = new boolean[middle.length()];
+    private int encryptMiddlePart(CharSequence text, int start, int end, Tweak tweak, FPEWorker worker,
+                                   char[] out, int outPos) {
+        // 1. 提取可加密字符的索引，不在字典中的字符原样保留
+        int[] indices = worker.indices(end - start);
         int encryptableCount = 0;
+        UnmappedCharCollector collector = unmappedChars;
         
-        for (int i = 0; i < middle.length(); i++) {
-            char c = middle.charAt(i);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
             int index = charMapping.getCharIndex(c);
             if (index == -1) {
-                // 字符不在字典中，原样保留
-                plainIndices[i] = -1;
-                shouldEncrypt[i] = false;
-                logger.debug("Character '{}' (U+{}) not in dictionary, will be kept as-is", 
-                    c, Integer.toHexString(c).toUpperCase());
+                if (collector != null) {
+                    collector.record(tweak.getValue(), text, i, start, end);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Character '{}' (U+{}) not in dictionary, will be kept as-is", 
+                        c, Integer.toHexString(c).toUpperCase());
+                }
             } else {
-                plainIndices[i] = index;
-                shouldEncrypt[i] = true;
-                encryptableCount++;
+                indices[encryptableCount++] = index;
             }
         }
         
         // 如果没有可加密的字符，直接返回原文
         if (encryptableCount == 0) {
             logger.debug("No encryptable characters in middle part, returning as-is");
-            return middle;
+            copy(text, start, end, out, outPos);
+            return 0;
         }
         
-        // 对于单字符，使用基于密钥的模加法置换（Keyed Substitution）
         if (encryptableCount == 1) {
-            int shift = calculateShift(tweak);
-            logger.debug("Single character encryption using modular addition with shift: {}", shift);
-            
-            StringBuilder result = new StringBuilder(middle.length());
-            for (int i = 0; i < middle.length(); i++) {
-                if (shouldEncrypt[i]) {
-                    int oldIndex = plainIndices[i];
-                    int newIndex = (oldIndex + shift) % charMapping.getRadix();
-                    char encryptedChar = charMapping.mapToEncryptedChar(newIndex);
-                    result.append(encryptedChar);
-                } else {
-                    result.append(middle.charAt(i));
-                }
+            // 对于单字符，使用基于密钥的模加法置换（Keyed Substitution）
+            int shift = tweak.getShift();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Single character encryption using modular addition with shift: {}", shift);
             }
-            return result.toString();
+            indices[0] = (indices[0] + shift) % charMapping.getRadix();
+        } else {
+            // 2. FF1 / FF3-1 算法处理2个及以上字符
+            worker.process(true, tweak, indices, 0, encryptableCount);
         }
         
-        // FF1 算法处理2个及以上字符
-        int[] toEncrypt = new int[encryptableCount];
-        
-        // 2. 提取可加密的字符索引
+        // 3. 将加密后的索引映射回字符，保留原样的字符
         int idx = 0;
-        for (int i = 0; i < plainIndices.length; i++) {
-            if (shouldEncrypt[i]) {
-                toEncrypt[idx++] = plainIndices[i];
-            }
-        }
-        
-        // 3. 使用 FF1 算法加密
-        int[] encrypted = ff1Encrypt(toEncrypt, tweak);
-        
-        // 4. 将加密后的索引映射回字符串，保留原样的字符
-        StringBuilder result = new StringBuilder(middle.length());
-        idx = 0;
-        for (int i = 0; i < middle.length(); i++) {
-            if (shouldEncrypt[i]) {
-                char encryptedChar = charMapping.mapToEncryptedChar(encrypted[idx++]);
-                result.append(encryptedChar);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (charMapping.getCharIndex(c) != -1) {
+                out[outPos++] = charMapping.mapToEncryptedChar(indices[idx++]);
             } else {
-                // 原样保留
-                result.append(middle.charAt(i));
+                out[outPos++] = c;
             }
         }
-        
-        return result.toString();
+        return encryptableCount;
     }
     
     /**
-     * 解密中间部分
+     * 解密中间部分 text[start, end)，结果写入 out[outPos...]
+     * 
+     * @return 解密的字符数
      */
-    private String decryptMiddlePart(String encryptedMiddle, String tweak) {
+    private int decryptMiddlePart(CharSequence text, int start, int end, Tweak tweak, FPEWorker worker,
+                                   char[] out, int outPos) {
         // 1. 识别哪些字符是加密字符，哪些是原样保留的字符
-        // 优化：直接通过 Unicode 范围判断，避免逐个尝试异常捕获
-        int[] encryptedIndices = new int[encryptedMiddle.length()];
-        boolean[] isEncrypted = new boolean[encryptedMiddle.length()];
+        // 优化：通过 CharacterMapping 的双向查找表判断，一次查表同时完成分类和反向映射
+        int[] indices = worker.indices(end - start);
         int encryptedCount = 0;
         
-        for (int i = 0; i < encryptedMiddle.length(); i++) {
-            char c = encryptedMiddle.charAt(i);
-            
-            // 直接通过字符范围判断是否为加密字符
-            if (charMapping.isEncryptedChar(c)) {
-                // 是加密字符，反向映射到索引
-                encryptedIndices[i] = charMapping.mapFromEncryptedChar(c);
-                isEncrypted[i] = true;
-                encryptedCount++;
-            } else {
-                // 不是加密字符，原样保留
-                encryptedIndices[i] = -1;
-                isEncrypted[i] = false;
+        for (int i = start; i < end; i++) {
+            int index = charMapping.getEncryptedIndex(text.charAt(i));
+            if (index != -1) {
+                indices[encryptedCount++] = index;
             }
         }
         
         // 如果没有加密字符，直接返回原文
         if (encryptedCount == 0) {
-            return encryptedMiddle;
+            copy(text, start, end, out, outPos);
+            return 0;
         }
         
-        // 对于单字符，使用基于密钥的模减法置换（逆操作）
         if (encryptedCount == 1) {
-            int shift = calculateShift(tweak);
-            logger.debug("Single character decryption using modular subtraction with shift: {}", shift);
-            
-            StringBuilder result = new StringBuilder(encryptedMiddle.length());
-            for (int i = 0; i < encryptedMiddle.length(); i++) {
-                if (isEncrypted[i]) {
-                    int encryptedIndex = encryptedIndices[i];
-                    int originalIndex = (encryptedIndex - shift + charMapping.getRadix()) % charMapping.getRadix();
-                    char originalChar = charMapping.getOriginalChar(originalIndex);
-                    result.append(originalChar);
-                } else {
-                    result.append(encryptedMiddle.charAt(i));
-                }
+            // 对于单字符，使用基于密钥的模减法置换（逆操作）
+            int shift = tweak.getShift();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Single character decryption using modular subtraction with shift: {}", shift);
             }
-            return result.toString();
+            indices[0] = (indices[0] - shift + charMapping.getRadix()) % charMapping.getRadix();
+        } else {
+            // 2. FF1 / FF3-1 算法处理2个及以上字符
+            worker.process(false, tweak, indices, 0, encryptedCount);
         }
         
-        // FF1 算法处理2个及以上字符
-        
-        // 2. 提取加密的索引
-        int[] toDecrypt = new int[encryptedCount];
+        // 3. 将索引转换回原始字符，保留非加密字符
         int idx = 0;
-        for (int i = 0; i < encryptedIndices.length; i++) {
-            if (isEncrypted[i]) {
-                toDecrypt[idx++] = encryptedIndices[i];
-            }
-        }
-        
-        // 3. 使用 FF1 算法解密
-        int[] plainIndices = ff1Decrypt(toDecrypt, tweak);
-        
-        // 4. 将索引转换回原始字符，保留原样的字符
-        StringBuilder result = new StringBuilder(encryptedMiddle.length());
-        idx = 0;
-        for (int i = 0; i < encryptedMiddle.length(); i++) {
-            if (isEncrypted[i]) {
-                char originalChar = charMapping.getOriginalChar(plainIndices[idx++]);
-                result.append(originalChar);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (charMapping.isEncryptedChar(c)) {
+                out[outPos++] = charMapping.getOriginalChar(indices[idx++]);
             } else {
-                // 保留非加密字符
-                result.append(encryptedMiddle.charAt(i));
+                out[outPos++] = c;
             }
         }
-        
-        return result.toString();
+        return encryptedCount;
     }
     
     /**
-     * FF1 加密
+     * 创建工作单元（基于 AES 的 FF1 / FF3-1 引擎及其缓冲区）
+     * AES 轮密钥在此处生成一次，之后每次调用只有 tweak 变化
      */
-    private int[] ff1Encrypt(int[] plainIndices, String tweak) {
-        byte[] tweakBytes = tweak.getBytes(StandardCharsets.UTF_8);
-        
-        // 对于宽基数(radix > 256)，需要使用2字节编码
-        // 且数据长度必须是偶数字节
-        int dataLength = plainIndices.length * 2;
-        byte[] plainBytes = new byte[dataLength];
-        
-        // 将 int[] 转换为 byte[]（大端序，2字节per值）
-        for (int i = 0; i < plainIndices.length; i++) {
-            plainBytes[i * 2] = (byte) (plainIndices[i] >>> 8);
-            plainBytes[i * 2 + 1] = (byte) (plainIndices[i] & 0xFF);
-        }
-        
-        // 创建 FPE 参数
-        FPEParameters params = new FPEParameters(
-            new KeyParameter(key),
-            charMapping.getRadix(),
-            tweakBytes
-        );
-        
-        // 初始化加密模式
-        ff1Engine.init(true, params);
-        
-        // 执行加密
-        byte[] resultBytes = new byte[dataLength];
-        ff1Engine.processBlock(plainBytes, 0, dataLength, resultBytes, 0);
-        
-        // 转换 byte[] 回 int[]（大端序）
-        int[] result = new int[plainIndices.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = ((resultBytes[i * 2] & 0xFF) << 8) | (resultBytes[i * 2 + 1] & 0xFF);
-        }
-        
-        return result;
-    }
-    
-    /**
-     * FF1 解密
-     */
-    private int[] ff1Decrypt(int[] encryptedIndices, String tweak) {
-        byte[] tweakBytes = tweak.getBytes(StandardCharsets.UTF_8);
-        
-        // 对于宽基数(radix > 256)，需要使用2字节编码
-        int dataLength = encryptedIndices.length * 2;
-        byte[] encryptedBytes = new byte[dataLength];
-        
-        // 将 int[] 转换为 byte[]（大端序，2字节per值）
-        for (int i = 0; i < encryptedIndices.length; i++) {
-            encryptedBytes[i * 2] = (byte) (encryptedIndices[i] >>> 8);
-            encryptedBytes[i * 2 + 1] = (byte) (encryptedIndices[i] & 0xFF);
-        }
-        
-        // 创建 FPE 参数
-        FPEParameters params = new FPEParameters(
-            new KeyParameter(key),
-            charMapping.getRadix(),
-            tweakBytes
-        );
-        
-        // 初始化解密模式
-        ff1Engine.init(false, params);
-        
-        // 执行解密
-        byte[] resultBytes = new byte[dataLength];
-        ff1Engine.processBlock(encryptedBytes, 0, dataLength, resultBytes, 0);
-        
-        // 转换 byte[] 回 int[]（大端序）
-        int[] result = new int[encryptedIndices.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = ((resultBytes[i * 2] & 0xFF) << 8) | (resultBytes[i * 2 + 1] & 0xFF);
-        }
-        
-        return result;
+    private FPEWorker newWorker() {
+        return algorithm.newWorker(aesBackend, key, charMapping.getRadix());
     }
     
     /**
@@ -479,42 +1038,13 @@ public class ChineseFPEService {
      * @return 派生的密钥
      */
     private static byte[] deriveKeyFromPassword(String password, int keyLength) {
-        if (password == null || password.isEmpty()) {
-            throw new IllegalArgumentException("Password cannot be null or empty");
-        }
-        
-        if (keyLength != 16 && keyLength != 24 && keyLength != 32) {
-            throw new IllegalArgumentException(
-                "Key length must be 16, 24, or 32 bytes (128, 192, or 256 bits)");
-        }
-        
-        try {
-            // 使用固定的盐值（在实际应用中，可以根据应用名称或用户ID生成）
-            // 注意：这里使用固定盐是为了确保相同密码总是生成相同密钥
-            byte[] salt = "UniMaskFPE2026".getBytes(StandardCharsets.UTF_8);
-            
-            // PBKDF2 参数：
-            // - 迭代次数：100000（OWASP 推荐最小值）
-            // - 密钥长度：以位为单位
-            int iterations = 100000;
-            int keyLengthInBits = keyLength * 8;
-            
-            KeySpec spec = new PBEKeySpec(
-                password.toCharArray(),
-                salt,
-                iterations,
-                keyLengthInBits
-            );
-            
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            byte[] derivedKey = factory.generateSecret(spec).getEncoded();
-            
-            logger.debug("Derived {}-bit key from password using PBKDF2", keyLengthInBits);
-            return derivedKey;
-            
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-            throw new RuntimeException("Failed to derive key from password", e);
-        }
+        // 使用固定的盐值（在实际应用中，可以根据应用名称或用户ID生成）
+        // 注意：这里使用固定盐是为了确保相同密码总是生成相同密钥
+        // 迭代次数：100000（OWASP 推荐最小值）
+        byte[] derivedKey = new KdfParameters(KdfParameters.DEFAULT_SALT, KdfParameters.DEFAULT_ITERATIONS, keyLength)
+            .deriveKey(password);
+        logger.debug("Derived {}-bit key from password using PBKDF2", keyLength * 8);
+        return derivedKey;
     }
     
     /**
@@ -527,35 +1057,101 @@ public class ChineseFPEService {
      * @return 派生的密钥
      */
     public static byte[] deriveKeyFromPassword(String password, byte[] salt, int keyLength) {
-        if (password == null || password.isEmpty()) {
-            throw new IllegalArgumentException("Password cannot be null or empty");
+        return new KdfParameters(salt, KdfParameters.DEFAULT_ITERATIONS, keyLength).deriveKey(password);
+    }
+    
+    /**
+     * 异步创建服务（在共享的有界密钥派生线程池上执行 PBKDF2）
+     * 
+     * 密钥派生是 CPU 密集操作（默认约 100ms），放到专用线程池中执行，
+     * 避免冷启动的租户阻塞请求线程。线程池的线程数和队列长度都有上限，
+     * 队列满时返回的 future 以 RejectedExecutionException 失败。
+     * 
+     * @param password 密码字符串
+     * @param kdfParameters 密钥派生参数
+     * @return 完成时得到服务实例
+     */
+    public static CompletableFuture<ChineseFPEService> createAsync(String password, KdfParameters kdfParameters) {
+        return createAsync(password, kdfParameters, KdfExecutorHolder.EXECUTOR, FPEMetrics.NOOP);
+    }
+    
+    /**
+     * 异步创建服务（在共享的密钥派生线程池上执行 PBKDF2，并安装指标回调）
+     * 
+     * @param password 密码字符串
+     * @param kdfParameters 密钥派生参数
+     * @param metrics 指标回调，同时接收 PBKDF2 的耗时
+     * @return 完成时得到服务实例
+     * @see #ChineseFPEService(String, KdfParameters, FPEMetrics)
+     */
+    public static CompletableFuture<ChineseFPEService> createAsync(String password, KdfParameters kdfParameters,
+                                                                   FPEMetrics metrics) {
+        return createAsync(password, kdfParameters, KdfExecutorHolder.EXECUTOR, metrics);
+    }
+    
+    /**
+     * 异步创建服务（在调用方提供的线程池上执行 PBKDF2）
+     * 
+     * @param password 密码字符串
+     * @param kdfParameters 密钥派生参数
+     * @param executor 执行密钥派生的线程池
+     * @return 完成时得到服务实例
+     */
+    public static CompletableFuture<ChineseFPEService> createAsync(String password, KdfParameters kdfParameters,
+                                                                   Executor executor) {
+        return createAsync(password, kdfParameters, executor, FPEMetrics.NOOP);
+    }
+    
+    /**
+     * 异步创建服务（在调用方提供的线程池上执行 PBKDF2，并安装指标回调）
+     * 
+     * @param password 密码字符串
+     * @param kdfParameters 密钥派生参数
+     * @param executor 执行密钥派生的线程池
+     * @param metrics 指标回调，同时接收 PBKDF2 的耗时
+     * @return 完成时得到服务实例
+     */
+    public static CompletableFuture<ChineseFPEService> createAsync(String password, KdfParameters kdfParameters,
+                                                                   Executor executor, FPEMetrics metrics) {
+        if (kdfParameters == null) {
+            throw new IllegalArgumentException("kdfParameters cannot be null");
         }
-        
-        if (salt == null || salt.length < 8) {
-            throw new IllegalArgumentException("Salt must be at least 8 bytes");
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
         }
-        
-        if (keyLength != 16 && keyLength != 24 && keyLength != 32) {
-            throw new IllegalArgumentException(
-                "Key length must be 16, 24, or 32 bytes (128, 192, or 256 bits)");
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
         }
-        
         try {
-            int iterations = 100000;
-            int keyLengthInBits = keyLength * 8;
-            
-            KeySpec spec = new PBEKeySpec(
-                password.toCharArray(),
-                salt,
-                iterations,
-                keyLengthInBits
-            );
-            
-            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            return factory.generateSecret(spec).getEncoded();
-            
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-            throw new RuntimeException("Failed to derive key from password", e);
+            return CompletableFuture.supplyAsync(() -> new ChineseFPEService(password, kdfParameters, metrics),
+                executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<ChineseFPEService> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+    
+    /**
+     * 共享的密钥派生线程池（首次使用时创建）
+     * 线程数不超过 4 且不超过 CPU 核数，队列有界，线程为守护线程
+     */
+    private static final class KdfExecutorHolder {
+        
+        private static final int QUEUE_CAPACITY = 1024;
+        
+        static final ExecutorService EXECUTOR;
+        
+        static {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            AtomicInteger counter = new AtomicInteger();
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "unimask-kdf-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            ((ThreadPoolExecutor) EXECUTOR).allowCoreThreadTimeOut(true);
         }
     }
     
@@ -566,4 +1162,64 @@ public class ChineseFPEService {
     public byte[] getKey() {
         return Arrays.copyOf(key, key.length);
     }
+    
+    /**
+     * 获取使用的字符映射
+     */
+    public CharacterMapping getCharacterMapping() {
+        return charMapping;
+    }
+    
+    /**
+     * 获取使用的 AES 实现
+     */
+    public AesBackend getAesBackend() {
+        return aesBackend;
+    }
+    
+    /**
+     * 安装指标回调
+     * 
+     * 对之后开始的调用生效；传入 {@link FPEMetrics#NOOP} 关闭记录（默认）。
+     * 
+     * @param metrics 指标回调，例如 {@link MetricsRecorder}
+     */
+    public void setMetrics(FPEMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+        this.metrics = metrics;
+    }
+    
+    /**
+     * 获取当前的指标回调
+     */
+    public FPEMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 安装字典外字符统计
+     * 
+     * 加密时不在字典中、被原样保留的字符按 tweak 计入收集器；传入 null 关闭统计（默认）。
+     * 
+     * @param collector 收集器，null 表示不统计
+     */
+    public void setUnmappedCharCollector(UnmappedCharCollector collector) {
+        this.unmappedChars = collector;
+    }
+    
+    /**
+     * 获取当前的字典外字符统计，未安装时为 null
+     */
+    public UnmappedCharCollector getUnmappedCharCollector() {
+        return unmappedChars;
+    }
+    
+    /**
+     * 获取使用的加密算法
+     */
+    public FpeAlgorithm getAlgorithm() {
+        return algorithm;
+    }
 }
@@ -0,0 +1,729 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CSV/TSV 列脱敏命令行工具
+ *
+ * 对 UTF-8 分隔文本文件的指定列加密或解密，其余内容原样输出。
+ *
+ * 处理流程：
+ * - 按换行边界把输入切分为若干段（默认 16MB），每段通过 FileChannel.map 映射读取
+ * - 多个段在线程池中并行处理：每个工作线程按块解码、逐行逐列加/解密到固定大小的字符数组，
+ *   再编码到自己的直接缓冲区（默认 1MB），缓冲区写满即刷出
+ * - 输出按段的顺序写入：轮到的段直接写文件；未轮到的段把写满的缓冲区复制到共享的备用缓冲区中暂存，
+ *   备用缓冲区最多 2 × 线程数 个，用尽时等待前面的段写完归还
+ *
+ * 内存有界且与段大小无关：直接内存不超过 3 × 线程数 × 输出缓冲区大小，
+ * 堆内存为每个线程两个解码块（默认 64K 字符，遇到更长的行时按行长扩大）。
+ *
+ * 限制：不解析引号，分隔符和换行一律视为字段/行边界；单行不能超过 2GB。
+ *
+ * 用法：
+ * <pre>
+ * java -cp unimask.jar:bcprov.jar:slf4j-api.jar cn.lihongjie.unimask.ColumnMaskTool \
+ *     --password secret --column 1:1:0:name --column 3:3:4:phone input.csv output.csv
+ * </pre>
+ *
+ * @author lihongjie
+ */
+public final class ColumnMaskTool {
+
+    /** 默认段大小 */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /** 默认每个工作线程的输出缓冲区大小 */
+    static final int DEFAULT_OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+    /** 默认每次解码的字符数 */
+    static final int DEFAULT_CHUNK_CHARS = 64 * 1024;
+
+    private static final String USAGE =
+        "Usage: ColumnMaskTool [options] <input> <output>\n"
+        + "Options:\n"
+        + "  --password <password>        derive the AES key from a password\n"
+        + "  --key <hex>                  AES key as hex (16, 24 or 32 bytes)\n"
+        + "  --column <i>:<head>:<tail>:<tweak>\n"
+        + "                               mask column i (0-based); repeatable\n"
+        + "  --delimiter <char|tab>       field delimiter (default ',')\n"
+        + "  --header                     copy the first line through unmasked\n"
+        + "  --decrypt                    decrypt instead of encrypt\n"
+        + "  --threads <n>                worker threads (default: CPU count)\n"
+        + "  --segment-size <bytes>       bytes per mapped segment (default 16MB)\n";
+
+    /**
+     * 列配置
+     */
+    public static final class ColumnSpec {
+
+        private final int index;
+
+        private final int headPreserve;
+
+        private final int tailPreserve;
+
+        private final String tweak;
+
+        /**
+         * @param index 列下标（从 0 开始）
+         * @param headPreserve 开头保留的字符数
+         * @param tailPreserve 末尾保留的字符数
+         * @param tweak 扰码
+         */
+        public ColumnSpec(int index, int headPreserve, int tailPreserve, String tweak) {
+            if (index < 0) {
+                throw new IllegalArgumentException("column index must be non-negative");
+            }
+            if (headPreserve < 0 || tailPreserve < 0) {
+                throw new IllegalArgumentException("headPreserve and tailPreserve must be non-negative");
+            }
+            this.index = index;
+            this.headPreserve = headPreserve;
+            this.tailPreserve = tailPreserve;
+            this.tweak = tweak == null ? "" : tweak;
+        }
+
+        /**
+         * 解析 "i:head:tail:tweak" 形式的配置，tweak 中可以包含冒号
+         */
+        public static ColumnSpec parse(String spec) {
+            String[] parts = spec.split(":", 4);
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Invalid column spec: " + spec);
+            }
+            try {
+                return new ColumnSpec(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), parts.length == 4 ? parts[3] : "");
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid column spec: " + spec, e);
+            }
+        }
+    }
+
+    private final ChineseFPEService service;
+
+    private final boolean forEncryption;
+
+    private final char delimiter;
+
+    /** 按列下标索引的配置，未配置的列为 null */
+    private final ColumnSpec[] columns;
+
+    /** 按列下标索引的预计算 tweak */
+    private final Tweak[] tweaks;
+
+    private final int threads;
+
+    private final int segmentSize;
+
+    /** 第一行是否为表头（原样输出） */
+    private final boolean header;
+
+    private final int outputBufferSize;
+
+    private final int chunkChars;
+
+    /**
+     * 使用默认线程数和段大小创建
+     */
+    public ColumnMaskTool(ChineseFPEService service, boolean forEncryption, char delimiter, List<ColumnSpec> columns) {
+        this(service, forEncryption, delimiter, columns,
+            Runtime.getRuntime().availableProcessors(), DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param service 加密服务
+     * @param forEncryption true 表示加密，false 表示解密
+     * @param delimiter 字段分隔符
+     * @param columns 需要处理的列
+     * @param threads 并行处理的线程数
+     * @param segmentSize 每段映射的字节数（实际段会延伸到下一个换行）
+     */
+    public ColumnMaskTool(ChineseFPEService service, boolean forEncryption, char delimiter, List<ColumnSpec> columns,
+                          int threads, int segmentSize) {
+        this(service, forEncryption, delimiter, columns, threads, segmentSize, false);
+    }
+
+    /**
+     * @param service 加密服务
+     * @param forEncryption true 表示加密，false 表示解密
+     * @param delimiter 字段分隔符
+     * @param columns 需要处理的列
+     * @param threads 并行处理的线程数
+     * @param segmentSize 每段映射的字节数（实际段会延伸到下一个换行）
+     * @param header 第一行是否为表头，表头原样输出
+     */
+    public ColumnMaskTool(ChineseFPEService service, boolean forEncryption, char delimiter, List<ColumnSpec> columns,
+                          int threads, int segmentSize, boolean header) {
+        this(service, forEncryption, delimiter, columns, threads, segmentSize, header,
+            DEFAULT_OUTPUT_BUFFER_SIZE, DEFAULT_CHUNK_CHARS);
+    }
+
+    ColumnMaskTool(ChineseFPEService service, boolean forEncryption, char delimiter, List<ColumnSpec> columns,
+                   int threads, int segmentSize, boolean header, int outputBufferSize, int chunkChars) {
+        if (service == null) {
+            throw new IllegalArgumentException("service cannot be null");
+        }
+        if (columns == null || columns.isEmpty()) {
+            throw new IllegalArgumentException("at least one column must be specified");
+        }
+        if (delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("delimiter cannot be a line separator");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be positive");
+        }
+        // 编码器每次至少需要容纳一个完整的 UTF-8 字符
+        if (outputBufferSize < 16 || chunkChars < 1) {
+            throw new IllegalArgumentException("outputBufferSize must be at least 16 and chunkChars positive");
+        }
+        int maxIndex = 0;
+        for (ColumnSpec column : columns) {
+            maxIndex = Math.max(maxIndex, column.index);
+        }
+        this.columns = new ColumnSpec[maxIndex + 1];
+        this.tweaks = new Tweak[maxIndex + 1];
+        for (ColumnSpec column : columns) {
+            if (this.columns[column.index] != null) {
+                throw new IllegalArgumentException("Duplicate column: " + column.index);
+            }
+            this.columns[column.index] = column;
+            this.tweaks[column.index] = service.createTweak(column.tweak);
+        }
+        this.service = service;
+        this.forEncryption = forEncryption;
+        this.delimiter = delimiter;
+        this.threads = threads;
+        this.segmentSize = segmentSize;
+        this.header = header;
+        this.outputBufferSize = outputBufferSize;
+        this.chunkChars = chunkChars;
+    }
+
+    /**
+     * 处理整个文件
+     *
+     * @param input 输入文件（UTF-8）
+     * @param output 输出文件（存在则覆盖）
+     */
+    public void process(Path input, Path output) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "unimask-column-mask");
+            t.setDaemon(true);
+            return t;
+        });
+        // 同时映射的段数上限；输出内存由 OrderedWriter 的备用缓冲区数量约束，与此无关
+        int maxInFlight = threads * 2;
+        Deque<Future<?>> inFlight = new ArrayDeque<>();
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OrderedWriter writer = new OrderedWriter(out, outputBufferSize, maxInFlight);
+            long size = in.size();
+            long start = 0;
+            while (start < size) {
+                long end = nextSegmentEnd(in, start, size);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long at offset " + start);
+                }
+                MappedByteBuffer segment = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                if (inFlight.size() >= maxInFlight) {
+                    await(inFlight.poll());
+                }
+                Segment s = writer.register();
+                boolean skipHeader = header && start == 0;
+                inFlight.add(pool.submit(() -> {
+                    try {
+                        workers.get().process(segment, s, writer, skipHeader);
+                    } catch (Throwable e) {
+                        writer.abort(e);
+                        throw e;
+                    }
+                    return null;
+                }));
+                start = end;
+            }
+            while (!inFlight.isEmpty()) {
+                await(inFlight.poll());
+            }
+        } finally {
+            for (Future<?> future : inFlight) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 从 start 起至少 segmentSize 字节，并延伸到下一个换行之后
+     * UTF-8 多字节序列中不会出现 0x0A，按字节查找换行是安全的
+     */
+    private long nextSegmentEnd(FileChannel in, long start, long size) throws IOException {
+        long pos = start + segmentSize;
+        if (pos >= size) {
+            return size;
+        }
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        while (pos < size) {
+            // clear / flip 经由 Buffer 调用：JDK 9+ 上 ByteBuffer 的协变重载在 Java 8 运行时不存在
+            ((Buffer) probe).clear();
+            int n = in.read(probe, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while masking", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Masking failed", cause);
+        }
+    }
+
+    /**
+     * 逐行逐列处理 src[from, to)，结果写入 dst 的相同位置（加/解密不改变字符数）
+     */
+    private void maskLines(char[] src, CharSequence source, int from, int to, char[] dst) {
+        int column = 0;
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            boolean end = i == to;
+            char c = end ? '\n' : src[i];
+            if (end || c == delimiter || c == '\n') {
+                int fieldEnd = i;
+                // 行尾的 \r 不属于字段内容，避免影响尾部保留的计数
+                boolean lineEnd = end || c == '\n';
+                if (lineEnd && fieldEnd > fieldStart && src[fieldEnd - 1] == '\r') {
+                    fieldEnd--;
+                }
+                maskField(src, source, fieldStart, fieldEnd, column, dst);
+                if (!end) {
+                    System.arraycopy(src, fieldEnd, dst, fieldEnd, i + 1 - fieldEnd);
+                } else {
+                    System.arraycopy(src, fieldEnd, dst, fieldEnd, i - fieldEnd);
+                }
+                column = lineEnd ? 0 : column + 1;
+                fieldStart = i + 1;
+            }
+        }
+    }
+
+    private void maskField(char[] src, CharSequence source, int start, int end, int column, char[] dst) {
+        ColumnSpec spec = column < columns.length ? columns[column] : null;
+        if (spec == null || start == end) {
+            System.arraycopy(src, start, dst, start, end - start);
+        } else if (forEncryption) {
+            service.encrypt(tweaks[column], spec.headPreserve, spec.tailPreserve, source, start, end, dst, start);
+        } else {
+            service.decrypt(tweaks[column], source, start, end, spec.headPreserve, spec.tailPreserve, dst, start);
+        }
+    }
+
+    /**
+     * 工作线程的可复用状态：解码块、脱敏结果块和固定大小的直接输出缓冲区
+     */
+    private final class Worker {
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        private final ByteBuffer output = ByteBuffer.allocateDirect(outputBufferSize);
+
+        private char[] chars;
+
+        private char[] masked;
+
+        /** chars 的解码视图 */
+        private CharBuffer decoded;
+
+        /** chars 的只读视图，位置始终为 0，供加/解密按下标读取 */
+        private CharBuffer source;
+
+        /** masked 的编码视图 */
+        private CharBuffer encoding;
+
+        Worker() {
+            allocate(chunkChars, 0);
+        }
+
+        /**
+         * 分配新的块，保留原块中前 keep 个已解码字符
+         */
+        private void allocate(int capacity, int keep) {
+            char[] previous = chars;
+            chars = new char[capacity];
+            masked = new char[capacity];
+            decoded = CharBuffer.wrap(chars);
+            source = CharBuffer.wrap(chars);
+            encoding = CharBuffer.wrap(masked);
+            if (keep > 0) {
+                System.arraycopy(previous, 0, chars, 0, keep);
+                ((Buffer) decoded).position(keep);
+            }
+        }
+
+        /**
+         * 处理一个段：按块解码，只处理块内完整的行，剩余的半行移到块首与下一块拼接
+         */
+        void process(MappedByteBuffer segment, Segment s, OrderedWriter writer, boolean skipHeader)
+            throws IOException, InterruptedException {
+            decoder.reset();
+            encoder.reset();
+            ((Buffer) decoded).clear();
+            ((Buffer) output).clear();
+            boolean skipLine = skipHeader;
+            while (true) {
+                CoderResult result = decoder.decode(segment, decoded, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                boolean last = result.isUnderflow();
+                if (last) {
+                    decoder.flush(decoded);
+                }
+                int length = decoded.position();
+                int end = last ? length : lastLineEnd(length);
+                if (end == 0 && !last) {
+                    // 单行超过解码块，扩大后继续解码
+                    allocate(chars.length * 2, length);
+                    continue;
+                }
+                int from = 0;
+                if (skipLine) {
+                    from = firstLineEnd(end);
+                    System.arraycopy(chars, 0, masked, 0, from);
+                    skipLine = false;
+                }
+                maskLines(chars, source, from, end, masked);
+                encode(0, end, last, s, writer);
+                if (last) {
+                    break;
+                }
+                System.arraycopy(chars, end, chars, 0, length - end);
+                ((Buffer) decoded).clear();
+                ((Buffer) decoded).position(length - end);
+            }
+            while (encoder.flush(output).isOverflow()) {
+                writer.write(s, output);
+            }
+            writer.finish(s, output);
+        }
+
+        private int lastLineEnd(int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (chars[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+
+        private int firstLineEnd(int end) {
+            for (int i = 0; i < end; i++) {
+                if (chars[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return end;
+        }
+
+        /**
+         * 把 masked[from, to) 编码到输出缓冲区，写满即交给 writer
+         */
+        private void encode(int from, int to, boolean endOfInput, Segment s, OrderedWriter writer)
+            throws IOException, InterruptedException {
+            ((Buffer) encoding).limit(to);
+            ((Buffer) encoding).position(from);
+            while (true) {
+                CoderResult result = encoder.encode(encoding, output, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (result.isUnderflow()) {
+                    break;
+                }
+                writer.write(s, output);
+            }
+        }
+    }
+
+    /**
+     * 段的输出状态
+     */
+    private static final class Segment {
+
+        /** 未轮到写出时暂存的已 flip 的备用缓冲区 */
+        private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+
+        private boolean done;
+    }
+
+    /**
+     * 按段的顺序写出结果
+     *
+     * 队首的段可以直接写文件；其他段写满的缓冲区复制到备用缓冲区中暂存，段成为队首时统一写出并归还。
+     * 队首的段写出时从不需要备用缓冲区，因此等待备用缓冲区的线程总能等到归还，不会死锁。
+     * 所有状态由对象锁保护。
+     */
+    private static final class OrderedWriter {
+
+        private final FileChannel out;
+
+        private final int bufferSize;
+
+        private final int maxSpares;
+
+        private final Deque<ByteBuffer> spares = new ArrayDeque<>();
+
+        private int allocatedSpares;
+
+        /** 已登记、尚未写完的段，队首为当前可写的段 */
+        private final Deque<Segment> order = new ArrayDeque<>();
+
+        private Throwable failure;
+
+        OrderedWriter(FileChannel out, int bufferSize, int maxSpares) {
+            this.out = out;
+            this.bufferSize = bufferSize;
+            this.maxSpares = maxSpares;
+        }
+
+        synchronized Segment register() {
+            Segment segment = new Segment();
+            order.add(segment);
+            return segment;
+        }
+
+        /**
+         * 写出（或暂存）buffer 中已编码的内容，返回时 buffer 已清空可继续使用
+         */
+        synchronized void write(Segment segment, ByteBuffer buffer) throws IOException, InterruptedException {
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                if (failure != null) {
+                    throw new IOException("Masking aborted", failure);
+                }
+                if (order.peek() == segment) {
+                    writeFully(buffer);
+                    break;
+                }
+                ByteBuffer spare = spares.poll();
+                if (spare == null && allocatedSpares < maxSpares) {
+                    allocatedSpares++;
+                    spare = ByteBuffer.allocateDirect(bufferSize);
+                }
+                if (spare != null) {
+                    spare.put(buffer);
+                    ((Buffer) spare).flip();
+                    segment.pending.add(spare);
+                    break;
+                }
+                wait();
+            }
+            ((Buffer) buffer).clear();
+        }
+
+        /**
+         * 写出段的最后一个缓冲区；段位于队首时依次写出后面已完成或已暂存的段
+         */
+        synchronized void finish(Segment segment, ByteBuffer buffer) throws IOException, InterruptedException {
+            write(segment, buffer);
+            segment.done = true;
+            if (order.peek() != segment) {
+                return;
+            }
+            while (!order.isEmpty() && order.peek().done) {
+                order.poll();
+                Segment next = order.peek();
+                if (next != null) {
+                    for (ByteBuffer spare : next.pending) {
+                        writeFully(spare);
+                        ((Buffer) spare).clear();
+                        spares.add(spare);
+                    }
+                    next.pending.clear();
+                }
+            }
+            // 新的队首可能正在等待备用缓冲区，唤醒后它会直接写文件
+            notifyAll();
+        }
+
+        synchronized void abort(Throwable cause) {
+            if (failure == null) {
+                failure = cause;
+            }
+            notifyAll();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * 执行命令行
+     *
+     * @return 进程退出码
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        String password = null;
+        String keyHex = null;
+        List<ColumnSpec> columns = new ArrayList<>();
+        char delimiter = ',';
+        boolean decrypt = false;
+        boolean header = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int segmentSize = DEFAULT_SEGMENT_SIZE;
+        List<String> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--password":
+                        password = value(args, ++i, arg);
+                        break;
+                    case "--key":
+                        keyHex = value(args, ++i, arg);
+                        break;
+                    case "--column":
+                        columns.add(ColumnSpec.parse(value(args, ++i, arg)));
+                        break;
+                    case "--delimiter":
+                        delimiter = parseDelimiter(value(args, ++i, arg));
+                        break;
+                    case "--decrypt":
+                        decrypt = true;
+                        break;
+                    case "--header":
+                        header = true;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--segment-size":
+                        segmentSize = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "-h":
+                    case "--help":
+                        out.print(USAGE);
+                        return 0;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        files.add(arg);
+                }
+            }
+            if (files.size() != 2) {
+                throw new IllegalArgumentException("Expected <input> and <output>");
+            }
+            if ((password == null) == (keyHex == null)) {
+                throw new IllegalArgumentException("Exactly one of --password or --key is required");
+            }
+
+            ChineseFPEService service = password != null
+                ? new ChineseFPEService(password)
+                : new ChineseFPEService(decodeKey(keyHex));
+            ColumnMaskTool tool = new ColumnMaskTool(service, !decrypt, delimiter, columns, threads, segmentSize,
+                header);
+
+            long begin = System.nanoTime();
+            tool.process(Paths.get(files.get(0)), Paths.get(files.get(1)));
+            out.printf("Processed %s in %d ms%n", files.get(0), (System.nanoTime() - begin) / 1_000_000);
+            return 0;
+        } catch (IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
+            err.print(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static byte[] decodeKey(String hex) {
+        try {
+            return Hex.decode(hex);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid hex key", e);
+        }
+    }
+
+    private static char parseDelimiter(String value) {
+        if ("tab".equalsIgnoreCase(value) || "\\t".equals(value)) {
+            return '\t';
+        }
+        if (value.length() != 1) {
+            throw new IllegalArgumentException("Delimiter must be a single character: " + value);
+        }
+        return value.charAt(0);
+    }
+}
@@ -0,0 +1,355 @@
+package cn.lihongjie.unimask;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 派生密钥本地存储
+ *
+ * 部署重启后每个节点都要为访问到的租户重新执行 PBKDF2（默认 100,000 次迭代），
+ * 造成启动后的 CPU 峰值和首个请求的高延迟。该存储把派生结果持久化到一个加密文件，
+ * 启动时一次性全部加载，命中时不再执行 PBKDF2：
+ * - 条目按 (密码指纹, 盐值, 迭代次数, 密钥长度) 索引，指纹是以存储内随机密钥计算的 HMAC-SHA256，不保存密码
+ * - 整个文件用 AES-256-GCM 加密并校验完整性，包装密钥由存储密码经 PBKDF2 派生
+ * - 打开和保存各只需一次 PBKDF2 与一次 GCM 运算，与条目数量无关，热重启的耗时取决于文件读取速度
+ * - 保存时先写临时文件再原子替换，进程中途退出不会损坏已有文件
+ *
+ * 未采用 PKCS12 KeyStore：PKCS12 的每个条目都单独做一次口令加密（各自上万次迭代），
+ * 批量加载时反而重新引入了逐条派生的成本。
+ *
+ * <pre>
+ * DerivedKeyStore store = DerivedKeyStore.open(Paths.get("/var/lib/app/unimask.keys"), storePassword);
+ * ChineseFPEService service = new ChineseFPEService(store.deriveKey(tenantPassword, KdfParameters.DEFAULT));
+ * store.save();
+ * </pre>
+ *
+ * 线程安全。
+ *
+ * @author lihongjie
+ */
+public final class DerivedKeyStore {
+
+    /** 文件魔数 "UMKS" */
+    private static final int MAGIC = 0x554D4B53;
+
+    private static final byte VERSION = 1;
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int NONCE_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private static final int ID_LENGTH = 32;
+
+    /** 魔数 + 版本 + 迭代次数 + 盐值 + nonce */
+    private static final int HEADER_LENGTH = 4 + 1 + 4 + SALT_LENGTH + NONCE_LENGTH;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path file;
+
+    /** 存储包装密钥（AES-256） */
+    private final byte[] wrappingKey;
+
+    private final byte[] salt;
+
+    private final int iterations;
+
+    /** 指纹 HMAC 密钥，随文件一起加密保存 */
+    private final byte[] fingerprintKey;
+
+    private final ConcurrentHashMap<KeyId, byte[]> keys = new ConcurrentHashMap<>();
+
+    private DerivedKeyStore(Path file, byte[] wrappingKey, byte[] salt, int iterations, byte[] fingerprintKey) {
+        this.file = file;
+        this.wrappingKey = wrappingKey;
+        this.salt = salt;
+        this.iterations = iterations;
+        this.fingerprintKey = fingerprintKey;
+    }
+
+    /**
+     * 打开存储：文件存在时一次性加载全部条目，不存在时创建空存储（调用 {@link #save()} 后写入）
+     *
+     * @param file 存储文件
+     * @param storePassword 存储密码
+     * @throws IOException 读取失败，或文件已损坏、密码不正确
+     */
+    public static DerivedKeyStore open(Path file, String storePassword) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        if (storePassword == null || storePassword.isEmpty()) {
+            throw new IllegalArgumentException("Store password cannot be null or empty");
+        }
+        if (!Files.exists(file)) {
+            byte[] salt = new byte[SALT_LENGTH];
+            RANDOM.nextBytes(salt);
+            byte[] fingerprintKey = new byte[32];
+            RANDOM.nextBytes(fingerprintKey);
+            int iterations = KdfParameters.DEFAULT_ITERATIONS;
+            return new DerivedKeyStore(file, wrappingKey(storePassword, salt, iterations), salt, iterations,
+                fingerprintKey);
+        }
+        return load(file, storePassword, Files.readAllBytes(file));
+    }
+
+    /**
+     * 获取已保存的派生密钥
+     *
+     * @param password 派生时使用的密码
+     * @param kdfParameters 派生参数
+     * @return 密钥副本；未保存时返回 null
+     */
+    public byte[] get(String password, KdfParameters kdfParameters) {
+        byte[] key = keys.get(id(password, kdfParameters));
+        return key == null ? null : Arrays.copyOf(key, key.length);
+    }
+
+    /**
+     * 保存派生密钥（只更新内存，调用 {@link #save()} 后写入文件）
+     *
+     * @param password 派生时使用的密码
+     * @param kdfParameters 派生参数
+     * @param key 派生得到的密钥
+     */
+    public void put(String password, KdfParameters kdfParameters, byte[] key) {
+        if (key == null || key.length != requireKdf(kdfParameters).getKeyLength()) {
+            throw new IllegalArgumentException("Key length does not match kdfParameters");
+        }
+        keys.put(id(password, kdfParameters), Arrays.copyOf(key, key.length));
+    }
+
+    /**
+     * 获取派生密钥，未保存时执行 PBKDF2 并保存到内存
+     *
+     * @param password 密码
+     * @param kdfParameters 派生参数
+     * @return 密钥副本
+     */
+    public byte[] deriveKey(String password, KdfParameters kdfParameters) {
+        return deriveKey(password, kdfParameters, FPEMetrics.NOOP);
+    }
+
+    /**
+     * 获取派生密钥，未保存时执行 PBKDF2（耗时报告给 metrics）并保存到内存
+     *
+     * @param password 密码
+     * @param kdfParameters 派生参数
+     * @param metrics 指标回调，{@link FPEMetrics#NOOP} 表示不记录
+     * @return 密钥副本
+     */
+    public byte[] deriveKey(String password, KdfParameters kdfParameters, FPEMetrics metrics) {
+        KeyId id = id(password, kdfParameters);
+        byte[] key = keys.get(id);
+        if (key == null) {
+            // 并发未命中时可能重复派生，结果相同，不影响正确性
+            key = kdfParameters.deriveKey(password, metrics);
+            byte[] existing = keys.putIfAbsent(id, key);
+            if (existing != null) {
+                key = existing;
+            }
+        }
+        return Arrays.copyOf(key, key.length);
+    }
+
+    /**
+     * 当前条目数
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * 移除所有条目（调用 {@link #save()} 后写入文件）
+     */
+    public void clear() {
+        keys.clear();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 把全部条目写入文件（先写临时文件再原子替换）
+     *
+     * @throws IOException 写入失败
+     */
+    public synchronized void save() throws IOException {
+        List<Map.Entry<KeyId, byte[]>> snapshot = new ArrayList<>(keys.entrySet());
+        int size = 32 + 4;
+        for (Map.Entry<KeyId, byte[]> e : snapshot) {
+            size += ID_LENGTH + 1 + e.getValue().length;
+        }
+        ByteBuffer plain = ByteBuffer.allocate(size);
+        plain.put(fingerprintKey).putInt(snapshot.size());
+        for (Map.Entry<KeyId, byte[]> e : snapshot) {
+            plain.put(e.getKey().value).put((byte) e.getValue().length).put(e.getValue());
+        }
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        byte[] header = ByteBuffer.allocate(HEADER_LENGTH)
+            .putInt(MAGIC).put(VERSION).putInt(iterations).put(salt).put(nonce).array();
+        byte[] content;
+        try {
+            Cipher cipher = cipher(Cipher.ENCRYPT_MODE, wrappingKey, nonce, header);
+            content = new byte[HEADER_LENGTH + cipher.getOutputSize(size)];
+            System.arraycopy(header, 0, content, 0, HEADER_LENGTH);
+            cipher.doFinal(plain.array(), 0, size, content, HEADER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to seal key store", e);
+        } finally {
+            Arrays.fill(plain.array(), (byte) 0);
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        // POSIX 系统上临时文件的权限为 600
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static DerivedKeyStore load(Path file, String storePassword, byte[] content) throws IOException {
+        if (content.length < HEADER_LENGTH) {
+            throw new IOException("Not a key store file: " + file);
+        }
+        ByteBuffer header = ByteBuffer.wrap(content, 0, HEADER_LENGTH);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a key store file: " + file);
+        }
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported key store version " + version + ": " + file);
+        }
+        int iterations = header.getInt();
+        if (iterations < KdfParameters.MIN_ITERATIONS) {
+            throw new IOException("Key store is corrupted: " + file);
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        header.get(salt);
+        byte[] nonce = new byte[NONCE_LENGTH];
+        header.get(nonce);
+
+        byte[] wrappingKey = wrappingKey(storePassword, salt, iterations);
+        byte[] plain;
+        try {
+            Cipher cipher = cipher(Cipher.DECRYPT_MODE, wrappingKey, nonce, Arrays.copyOf(content, HEADER_LENGTH));
+            plain = cipher.doFinal(content, HEADER_LENGTH, content.length - HEADER_LENGTH);
+        } catch (AEADBadTagException e) {
+            throw new IOException("Key store is corrupted or the password is incorrect: " + file, e);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to open key store", e);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(plain);
+            byte[] fingerprintKey = new byte[32];
+            buffer.get(fingerprintKey);
+            DerivedKeyStore store = new DerivedKeyStore(file, wrappingKey, salt, iterations, fingerprintKey);
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[ID_LENGTH];
+                buffer.get(id);
+                byte[] key = new byte[buffer.get()];
+                buffer.get(key);
+                store.keys.put(new KeyId(id), key);
+            }
+            return store;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Key store is corrupted: " + file, e);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    private static byte[] wrappingKey(String storePassword, byte[] salt, int iterations) {
+        return new KdfParameters(salt, iterations, 32).deriveKey(storePassword);
+    }
+
+    private static Cipher cipher(int mode, byte[] key, byte[] nonce, byte[] aad) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(aad);
+        return cipher;
+    }
+
+    private static KdfParameters requireKdf(KdfParameters kdfParameters) {
+        if (kdfParameters == null) {
+            throw new IllegalArgumentException("kdfParameters cannot be null");
+        }
+        return kdfParameters;
+    }
+
+    private KeyId id(String password, KdfParameters kdfParameters) {
+        if (password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Password cannot be null or empty");
+        }
+        requireKdf(kdfParameters);
+        byte[] kdfSalt = kdfParameters.getSalt();
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(fingerprintKey, "HmacSHA256"));
+            mac.update(ByteBuffer.allocate(12).putInt(kdfParameters.getKeyLength())
+                .putInt(kdfParameters.getIterations()).putInt(kdfSalt.length).array());
+            mac.update(kdfSalt);
+            return new KeyId(mac.doFinal(passwordBytes));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to compute key fingerprint", e);
+        }
+    }
+
+    /**
+     * 条目标识（密码与派生参数的指纹）
+     */
+    private static final class KeyId {
+
+        private final byte[] value;
+
+        private final int hash;
+
+        KeyId(byte[] value) {
+            this.value = value;
+            this.hash = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof KeyId && Arrays.equals(value, ((KeyId) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
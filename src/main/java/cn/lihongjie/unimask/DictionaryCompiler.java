@@ -0,0 +1,36 @@
+package cn.lihongjie.unimask;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 字典预编译工具（构建时运行）
+ *
+ * 在 process-classes 阶段由 exec-maven-plugin 调用，把文本字表（level-*.txt）解析结果
+ * 写成二进制资源 dictionary.bin，使 {@link CharacterMapping} 运行时只需一次读入，
+ * 无需逐行解析和去重。
+ *
+ * 用法：DictionaryCompiler &lt;classes 输出目录&gt;
+ *
+ * @author lihongjie
+ */
+public final class DictionaryCompiler {
+
+    private DictionaryCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: DictionaryCompiler <output directory>");
+        }
+        char[] chars = CharacterMapping.parseTextDictionary();
+        Path target = Paths.get(args[0], CharacterMapping.COMPILED_RESOURCE.substring(1));
+        Files.createDirectories(target.getParent());
+        try (OutputStream out = Files.newOutputStream(target)) {
+            CharacterMapping.writeCompiledDictionary(chars, out);
+        }
+    }
+}
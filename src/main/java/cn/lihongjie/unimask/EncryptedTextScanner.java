@@ -0,0 +1,390 @@
+package cn.lihongjie.unimask;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 加密文本扫描器
+ *
+ * 在大文档、日志流中定位加密字符（PUA U+E000-U+F8FF 与罕用韩文区 U+CF70-U+D7A3）组成的片段：
+ * 第一个加密字符的位置、加密字符数、连续片段数及各片段范围。
+ * 加密字符区间是固定的，与字典内容无关，因此全部为静态方法，判定结果与
+ * {@link CharacterMapping#isEncryptedChar(char)} 一致。
+ *
+ * 实现：两段加密区间的码点都不小于 U+CF70，而常见文本（ASCII、CJK 统一汉字 U+4E00-U+9FFF、
+ * 全角标点等）都小于该值。扫描循环对每个字符先做一次 {@code c >= U+CF70} 比较，
+ * 该分支在正常文本中几乎从不成立、预测准确，只有越过阈值的字符才做精确的区间判定；
+ * 不访问 128KB 的查找表，缓存友好。String / StringBuilder 按块复制到本地缓冲区后扫描，
+ * 有底层数组的 CharBuffer 直接扫描数组。
+ *
+ * 项目以 Java 8 为目标，不使用 Vector API（jdk.incubator.vector）；在 JDK 17 上实测，
+ * 按块位运算归约、按字打包（SWAR）等写法都未被 C2 向量化，反而比上述标量循环慢。
+ *
+ * @author lihongjie
+ */
+public final class EncryptedTextScanner {
+
+    /** CharSequence 按块复制时的缓冲区大小 */
+    private static final int CHUNK = 1024;
+
+    /** 加密字符的最小码点（罕用韩文区起点） */
+    private static final char MIN_ENCRYPTED = (char) CharacterMapping.RARE_KOREAN_START;
+
+    private EncryptedTextScanner() {
+    }
+
+    /**
+     * 判断字符是否为加密字符
+     */
+    public static boolean isEncryptedChar(char c) {
+        // char 减法回绕：c 小于区间起点时差值不小于 0x2000，不会落入任一区间
+        return (char) (c - CharacterMapping.PUA_START) < CharacterMapping.PUA_CAPACITY
+            || (char) (c - CharacterMapping.RARE_KOREAN_START) < CharacterMapping.RARE_KOREAN_CAPACITY;
+    }
+
+    /**
+     * 查找第一个加密字符
+     *
+     * @return 下标；不含加密字符时返回 -1
+     */
+    public static int indexOf(CharSequence text) {
+        return indexOf(text, 0, length(text));
+    }
+
+    /**
+     * 在 text[start, end) 中查找第一个加密字符
+     *
+     * CharBuffer 的下标相对于其当前 position（与 {@link CharSequence} 语义一致）。
+     *
+     * @return 下标；不含加密字符时返回 -1
+     */
+    public static int indexOf(CharSequence text, int start, int end) {
+        checkRange(text, start, end);
+        return new Cursor(text).nextEncrypted(start, end);
+    }
+
+    /**
+     * 在 chars[start, end) 中查找第一个加密字符
+     *
+     * @return 下标；不含加密字符时返回 -1
+     */
+    public static int indexOf(char[] chars, int start, int end) {
+        checkRange(chars, start, end);
+        return nextEncrypted(chars, start, end);
+    }
+
+    /**
+     * 统计加密字符数
+     */
+    public static int count(CharSequence text) {
+        return count(text, 0, length(text));
+    }
+
+    /**
+     * 统计 text[start, end) 中的加密字符数
+     */
+    public static int count(CharSequence text, int start, int end) {
+        checkRange(text, start, end);
+        Cursor cursor = new Cursor(text);
+        int count = 0;
+        for (int i = cursor.nextEncrypted(start, end); i >= 0; i = cursor.nextEncrypted(i, end)) {
+            int runEnd = cursor.nextPlain(i, end);
+            count += runEnd - i;
+            i = runEnd;
+        }
+        return count;
+    }
+
+    /**
+     * 统计 chars[start, end) 中的加密字符数
+     */
+    public static int count(char[] chars, int start, int end) {
+        checkRange(chars, start, end);
+        int count = 0;
+        for (int i = nextEncrypted(chars, start, end); i >= 0; i = nextEncrypted(chars, i, end)) {
+            int runEnd = nextPlain(chars, i, end);
+            count += runEnd - i;
+            i = runEnd;
+        }
+        return count;
+    }
+
+    /**
+     * 统计连续加密片段数
+     */
+    public static int countRuns(CharSequence text) {
+        return countRuns(text, 0, length(text));
+    }
+
+    /**
+     * 统计 text[start, end) 中的连续加密片段数
+     */
+    public static int countRuns(CharSequence text, int start, int end) {
+        checkRange(text, start, end);
+        Cursor cursor = new Cursor(text);
+        int runs = 0;
+        for (int i = cursor.nextEncrypted(start, end); i >= 0; i = cursor.nextEncrypted(i, end)) {
+            runs++;
+            i = cursor.nextPlain(i, end);
+        }
+        return runs;
+    }
+
+    /**
+     * 统计 chars[start, end) 中的连续加密片段数
+     */
+    public static int countRuns(char[] chars, int start, int end) {
+        checkRange(chars, start, end);
+        int runs = 0;
+        for (int i = nextEncrypted(chars, start, end); i >= 0; i = nextEncrypted(chars, i, end)) {
+            runs++;
+            i = nextPlain(chars, i, end);
+        }
+        return runs;
+    }
+
+    /**
+     * 查找所有连续加密片段
+     */
+    public static List<Run> findRuns(CharSequence text) {
+        return findRuns(text, 0, length(text));
+    }
+
+    /**
+     * 查找 text[start, end) 中的所有连续加密片段
+     *
+     * @return 按位置排序的片段列表
+     */
+    public static List<Run> findRuns(CharSequence text, int start, int end) {
+        checkRange(text, start, end);
+        Cursor cursor = new Cursor(text);
+        List<Run> runs = new ArrayList<>();
+        for (int i = cursor.nextEncrypted(start, end); i >= 0; i = cursor.nextEncrypted(i, end)) {
+            int runEnd = cursor.nextPlain(i, end);
+            runs.add(new Run(i, runEnd));
+            i = runEnd;
+        }
+        return runs;
+    }
+
+    /**
+     * 查找 chars[start, end) 中的所有连续加密片段
+     *
+     * @return 按位置排序的片段列表
+     */
+    public static List<Run> findRuns(char[] chars, int start, int end) {
+        checkRange(chars, start, end);
+        List<Run> runs = new ArrayList<>();
+        for (int i = nextEncrypted(chars, start, end); i >= 0; i = nextEncrypted(chars, i, end)) {
+            int runEnd = nextPlain(chars, i, end);
+            runs.add(new Run(i, runEnd));
+            i = runEnd;
+        }
+        return runs;
+    }
+
+    /**
+     * chars[from, end) 中第一个加密字符，没有时返回 -1
+     */
+    static int nextEncrypted(char[] chars, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char c = chars[i];
+            if (c >= MIN_ENCRYPTED && isEncryptedChar(c)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * chars[from, end) 中第一个非加密字符，没有时返回 end（即加密片段的结束位置）
+     */
+    static int nextPlain(char[] chars, int from, int end) {
+        int i = from;
+        while (i < end && isEncryptedChar(chars[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int length(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException("text cannot be null");
+        }
+        return text.length();
+    }
+
+    private static void checkRange(CharSequence text, int start, int end) {
+        int length = length(text);
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+    }
+
+    private static void checkRange(char[] chars, int start, int end) {
+        if (chars == null) {
+            throw new IllegalArgumentException("chars cannot be null");
+        }
+        if (start < 0 || end > chars.length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + chars.length);
+        }
+    }
+
+    /**
+     * 在任意 CharSequence 上执行数组扫描：有底层数组的 CharBuffer 直接扫描，
+     * String / StringBuilder 按块复制到缓冲区，其余实现逐字符读取
+     */
+    private static final class Cursor {
+
+        private final CharSequence text;
+
+        /** 直接扫描的数组及 text 下标 0 在其中的位置 */
+        private final char[] array;
+        private final int arrayOffset;
+
+        /** 复制缓冲区（String / StringBuilder）及其当前覆盖的 text 范围 */
+        private char[] chunk;
+        private int chunkStart;
+        private int chunkEnd;
+
+        Cursor(CharSequence text) {
+            this.text = text;
+            if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+                CharBuffer buffer = (CharBuffer) text;
+                this.array = buffer.array();
+                this.arrayOffset = buffer.arrayOffset() + buffer.position();
+            } else {
+                this.array = null;
+                this.arrayOffset = 0;
+            }
+        }
+
+        int nextEncrypted(int from, int end) {
+            if (array != null) {
+                int i = EncryptedTextScanner.nextEncrypted(array, arrayOffset + from, arrayOffset + end);
+                return i < 0 ? -1 : i - arrayOffset;
+            }
+            if (!copyable()) {
+                for (int i = from; i < end; i++) {
+                    char c = text.charAt(i);
+                    if (c >= MIN_ENCRYPTED && isEncryptedChar(c)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            for (int i = from; i < end; i = chunkEnd) {
+                fill(i, end);
+                int found = EncryptedTextScanner.nextEncrypted(chunk, i - chunkStart, chunkEnd - chunkStart);
+                if (found >= 0) {
+                    return chunkStart + found;
+                }
+            }
+            return -1;
+        }
+
+        int nextPlain(int from, int end) {
+            if (array != null) {
+                return EncryptedTextScanner.nextPlain(array, arrayOffset + from, arrayOffset + end) - arrayOffset;
+            }
+            if (!copyable()) {
+                int i = from;
+                while (i < end && isEncryptedChar(text.charAt(i))) {
+                    i++;
+                }
+                return i;
+            }
+            for (int i = from; i < end; i = chunkEnd) {
+                fill(i, end);
+                int found = EncryptedTextScanner.nextPlain(chunk, i - chunkStart, chunkEnd - chunkStart);
+                if (found < chunkEnd - chunkStart) {
+                    return chunkStart + found;
+                }
+            }
+            return end;
+        }
+
+        private boolean copyable() {
+            return text instanceof String || text instanceof StringBuilder;
+        }
+
+        /**
+         * 确保缓冲区覆盖 from 位置（加密片段通常很短，已覆盖时不重复复制）
+         */
+        private void fill(int from, int end) {
+            if (chunk != null && from >= chunkStart && from < chunkEnd) {
+                return;
+            }
+            if (chunk == null) {
+                chunk = new char[Math.min(CHUNK, text.length())];
+            }
+            int to = Math.min(end, from + chunk.length);
+            if (text instanceof String) {
+                ((String) text).getChars(from, to, chunk, 0);
+            } else {
+                ((StringBuilder) text).getChars(from, to, chunk, 0);
+            }
+            chunkStart = from;
+            chunkEnd = to;
+        }
+    }
+
+    /**
+     * 连续加密片段 [start, end)
+     */
+    public static final class Run {
+
+        private final int start;
+
+        private final int end;
+
+        Run(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * 起始下标（含）
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * 结束下标（不含）
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * 片段长度
+         */
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Run)) {
+                return false;
+            }
+            Run run = (Run) o;
+            return start == run.start && end == run.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * start + end;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cn.lihongjie.unimask;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * 有界无锁对象池
+ *
+ * 用于在多线程间复用非线程安全的加密引擎（如 FPEFF1Engine）。
+ *
+ * 设计要点：
+ * - 固定数量的槽位（AtomicReferenceArray），借出/归还均为单次 CAS，无锁
+ * - 按线程 ID 散列选择起始槽位，降低不同线程之间的争用（条带化）
+ * - 不依赖 ThreadLocal，虚拟线程场景下不会为每个线程创建一个引擎
+ * - 池空时直接创建新对象，池满时归还的对象直接丢弃，调用方永不阻塞
+ *
+ * @param <T> 池化对象类型
+ */
+final class EnginePool<T> {
+
+    /** 池化对象工厂 */
+    private final Supplier<T> factory;
+
+    /** 槽位（null 表示空槽） */
+    private final AtomicReferenceArray<T> slots;
+
+    /** 槽位数减一（槽位数为 2 的幂） */
+    private final int mask;
+
+    /**
+     * 使用默认容量创建对象池（CPU 核数的 2 倍，向上取 2 的幂）
+     *
+     * @param factory 池化对象工厂
+     */
+    EnginePool(Supplier<T> factory) {
+        this(factory, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * 创建对象池
+     *
+     * @param factory 池化对象工厂
+     * @param capacity 最大缓存对象数（会向上取 2 的幂）
+     */
+    EnginePool(Supplier<T> factory, int capacity) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.factory = factory;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 借出一个对象，池中没有空闲对象时新建
+     */
+    T borrow() {
+        int start = probeStart();
+        for (int i = 0; i <= mask; i++) {
+            int slot = (start + i) & mask;
+            if (slots.get(slot) != null) {
+                T item = slots.getAndSet(slot, null);
+                if (item != null) {
+                    return item;
+                }
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * 归还对象，池已满时丢弃
+     */
+    void release(T item) {
+        if (item == null) {
+            return;
+        }
+        int start = probeStart();
+        for (int i = 0; i <= mask; i++) {
+            int slot = (start + i) & mask;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, item)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 池容量（槽位数）
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 按线程 ID 散列出起始槽位
+     */
+    private int probeStart() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,699 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.BlockCipher;
+
+/**
+ * FF1 格式保留加密引擎（NIST SP 800-38G，算法 7/8）
+ *
+ * 与 Bouncy Castle 的 FPEFF1Engine 输出逐字节一致，但针对本项目的宽基数
+ * （约 8,500 个字符）和短输入做了专门实现：
+ * - 直接在 int[] 数字串上原地加解密，不经过 byte[] 编码
+ * - 半长的数值小于 2^55 时（8410 进制下每半不超过 4 个字符）全部使用 long 运算
+ * - 更长的输入使用 32 位字的多字运算，完全不使用 BigInteger
+ * - P 块的 AES 结果与只含 tweak 的 Q 块的 CBC-MAC 状态在一次调用的 10 轮中复用，
+ *   也可通过 {@link #computePrefix(byte[], int)} 预先计算并跨调用缓存（见 {@link Tweak}）
+ * - 所有中间缓冲区归引擎所有并跨调用复用，稳态下不产生分配
+ * - 批量接口 {@link #encryptBatch} / {@link #decryptBatch} 让多条等长记录同步推进 10 轮，
+ *   每一步 CBC-MAC 和 S 扩展的 AES 块合并为一次多块 ECB 调用（底层支持 {@link BulkCipher} 时）
+ *
+ * 非线程安全：每个实例同一时刻只能被一个线程使用（由 EnginePool 保证）。
+ */
+final class FF1Engine {
+
+    /** AES 分组大小 */
+    private static final int BLOCK_SIZE = 16;
+
+    /** Feistel 轮数 */
+    private static final int ROUNDS = 10;
+
+    /** 批量接口单次处理的最大记录数 */
+    static final int MAX_BATCH = 64;
+
+    /** 与 Bouncy Castle 计算 b 时使用的常量保持一致 */
+    private static final double LOG2 = Math.log(2.0);
+
+    /** long 快速路径的数值上界（保证 (r << 8) | byte 不溢出） */
+    private static final long LONG_PATH_LIMIT = 1L << 55;
+
+    /** 已完成密钥扩展的 AES（加密方向） */
+    private final BlockCipher cipher;
+
+    /** 基数 */
+    private final int radix;
+
+    /** radix 的自然对数，用于计算 b */
+    private final double logRadix;
+
+    /** long 快速路径可处理的最大数字位数 */
+    private final int longDigits;
+
+    /** radix^0 .. radix^longDigits */
+    private final long[] radixPowers;
+
+    /** 多字运算时每次乘/除处理的数字位数（radix^chunkDigits 不超过 int 范围） */
+    private final int chunkDigits;
+
+    /** radix^chunkDigits */
+    private final long chunkModulus;
+
+    /** P 块 */
+    private final byte[] p = new byte[BLOCK_SIZE];
+
+    /** CBC-MAC 状态 */
+    private final byte[] mac = new byte[BLOCK_SIZE];
+
+    /** 处理完 P 和只含 tweak 的 Q 块之后的 CBC-MAC 状态 */
+    private final byte[] prefixMac = new byte[BLOCK_SIZE];
+
+    /** 左右两半数字串 */
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+
+    /** Q 中随轮次变化的尾部块（含 tweak 剩余字节、填充、轮号和 NUM(B)） */
+    private byte[] qTail = new byte[BLOCK_SIZE * 2];
+
+    /** S（d 字节，按块对齐） */
+    private byte[] s = new byte[BLOCK_SIZE * 2];
+
+    /** 多字运算缓冲区（小端序 32 位字） */
+    private int[] limbs = new int[8];
+
+    /** y mod radix^m 的各位数字 */
+    private int[] yDigits = new int[16];
+
+    /** 批量处理：各记录的左右两半（步长为 v） */
+    private int[] batchLeft = new int[0];
+    private int[] batchRight = new int[0];
+
+    /** 批量处理：各记录的 Q 尾部块 */
+    private byte[] batchQ = new byte[0];
+
+    /** 批量处理：各记录的 CBC-MAC 状态 */
+    private byte[] batchMac = new byte[0];
+
+    /** 批量处理：各记录 S 的扩展块（第 1 块起） */
+    private byte[] batchExt = new byte[0];
+
+    /** 批量处理：各记录的 S（步长为 sBlocks * 16） */
+    private byte[] batchS = new byte[0];
+
+    /**
+     * 支持一次处理多个连续块的分组密码（ECB）
+     */
+    interface BulkCipher {
+
+        /**
+         * 依次加密 in[inOff, inOff + blocks * 16) 中的每个块，写入 out[outOff...]（可以原地）
+         */
+        void processBlocks(byte[] in, int inOff, int blocks, byte[] out, int outOff);
+    }
+
+    /**
+     * @param cipher 已用密钥初始化为加密方向的 128 位分组密码
+     * @param radix 基数（2 到 65536）
+     */
+    FF1Engine(BlockCipher cipher, int radix) {
+        if (cipher.getBlockSize() != BLOCK_SIZE) {
+            throw new IllegalArgumentException("base cipher needs to be 128 bits");
+        }
+        if (radix < 2 || radix > (1 << 16)) {
+            throw new IllegalArgumentException("radix must be between 2 and 65536");
+        }
+        this.cipher = cipher;
+        this.radix = radix;
+        this.logRadix = Math.log(radix);
+
+        int digits = 0;
+        long power = 1;
+        while (power < LONG_PATH_LIMIT / radix) {
+            power *= radix;
+            digits++;
+        }
+        this.longDigits = digits;
+        this.radixPowers = new long[digits + 1];
+        this.radixPowers[0] = 1;
+        for (int i = 1; i <= digits; i++) {
+            radixPowers[i] = radixPowers[i - 1] * radix;
+        }
+
+        int chunk = 0;
+        long chunkPower = 1;
+        while (chunkPower * radix <= Integer.MAX_VALUE) {
+            chunkPower *= radix;
+            chunk++;
+        }
+        this.chunkDigits = chunk;
+        this.chunkModulus = chunkPower;
+    }
+
+    /**
+     * 原地加密数字串
+     *
+     * @param tweak 扰码字节
+     * @param x 数字串（每个元素取值 0 到 radix-1）
+     * @param off 起始位置
+     * @param len 长度（至少 2，且 radix^len 不小于 1,000,000）
+     */
+    void encrypt(byte[] tweak, int[] x, int off, int len) {
+        process(true, tweak, null, x, off, len);
+    }
+
+    /**
+     * 原地加密数字串（使用预先计算的前缀状态）
+     *
+     * @param tweak 扰码字节
+     * @param prefix {@link #computePrefix(byte[], int)} 针对同一 tweak 和长度的结果，为 null 时现场计算
+     * @param x 数字串
+     * @param off 起始位置
+     * @param len 长度
+     */
+    void encrypt(byte[] tweak, byte[] prefix, int[] x, int off, int len) {
+        process(true, tweak, prefix, x, off, len);
+    }
+
+    /**
+     * 原地解密数字串
+     *
+     * @param tweak 扰码字节（必须与加密时一致）
+     * @param x 数字串
+     * @param off 起始位置
+     * @param len 长度
+     */
+    void decrypt(byte[] tweak, int[] x, int off, int len) {
+        process(false, tweak, null, x, off, len);
+    }
+
+    /**
+     * 原地解密数字串（使用预先计算的前缀状态）
+     *
+     * @param tweak 扰码字节
+     * @param prefix {@link #computePrefix(byte[], int)} 针对同一 tweak 和长度的结果，为 null 时现场计算
+     * @param x 数字串
+     * @param off 起始位置
+     * @param len 长度
+     */
+    void decrypt(byte[] tweak, byte[] prefix, int[] x, int off, int len) {
+        process(false, tweak, prefix, x, off, len);
+    }
+
+    /**
+     * 计算只依赖 (密钥, tweak, 长度) 的 CBC-MAC 前缀状态，
+     * 即 CIPH(P) 吸收 Q 中只含 tweak 和填充的完整块之后的结果。
+     * 该状态可以跨调用缓存，相同 tweak 和长度的后续调用可省去这些 AES 运算。
+     *
+     * @param tweak 扰码字节
+     * @param n 数字串长度
+     * @return 16 字节前缀状态（新分配的数组）
+     */
+    byte[] computePrefix(byte[] tweak, int n) {
+        int t = tweak.length;
+        int b = byteLength(n - n / 2);
+        int constBlocks = (t + (-(t + b + 1) & 15)) / BLOCK_SIZE;
+        byte[] prefix = new byte[BLOCK_SIZE];
+        computePrefix(tweak, n / 2, n, constBlocks, prefix);
+        return prefix;
+    }
+
+    /**
+     * 批量原地加密多条等长数字串
+     *
+     * 结果与逐条调用 {@link #encrypt(byte[], byte[], int[], int, int)} 完全一致。
+     *
+     * @param tweak 扰码字节
+     * @param prefix {@link #computePrefix(byte[], int)} 针对同一 tweak 和长度的结果，为 null 时现场计算
+     * @param x 数字串所在数组
+     * @param offsets 各记录在 x 中的起始位置
+     * @param from offsets 中的起始下标
+     * @param to offsets 中的结束下标（不含），to - from 不超过 {@link #MAX_BATCH}
+     * @param n 每条记录的长度
+     */
+    void encryptBatch(byte[] tweak, byte[] prefix, int[] x, int[] offsets, int from, int to, int n) {
+        processBatch(true, tweak, prefix, x, offsets, from, to, n);
+    }
+
+    /**
+     * 批量原地解密多条等长数字串，参数同 {@link #encryptBatch}
+     */
+    void decryptBatch(byte[] tweak, byte[] prefix, int[] x, int[] offsets, int from, int to, int n) {
+        processBatch(false, tweak, prefix, x, offsets, from, to, n);
+    }
+
+    private void processBatch(boolean forEncryption, byte[] tweak, byte[] prefix, int[] x, int[] offsets,
+                              int from, int to, int n) {
+        int count = to - from;
+        if (count < 1 || count > MAX_BATCH) {
+            throw new IllegalArgumentException("batch size must be between 1 and " + MAX_BATCH);
+        }
+        for (int r = from; r < to; r++) {
+            checkInput(x, offsets[r], n);
+        }
+
+        int u = n / 2;
+        int v = n - u;
+        int t = tweak.length;
+        int b = byteLength(v);
+        int d = ((b + 3) / 4) * 4 + 4;
+        int roundOff = t + (-(t + b + 1) & 15);
+        int constBlocks = roundOff / BLOCK_SIZE;
+        int tailStart = constBlocks * BLOCK_SIZE;
+        int tailLen = roundOff + 1 + b - tailStart;
+        int sBlocks = (d + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        prepareTail(tweak, tailStart, tailLen);
+        if (prefix != null) {
+            System.arraycopy(prefix, 0, prefixMac, 0, BLOCK_SIZE);
+        } else {
+            computePrefix(tweak, u, n, constBlocks, prefixMac);
+        }
+        ensureBatch(count, v, tailLen, sBlocks);
+
+        for (int r = 0; r < count; r++) {
+            int off = offsets[from + r];
+            System.arraycopy(x, off, batchLeft, r * v, u);
+            System.arraycopy(x, off + u, batchRight, r * v, v);
+        }
+        int[] a = batchLeft;
+        int[] bHalf = batchRight;
+        int lenA = u;
+        int lenB = v;
+        int sStride = sBlocks * BLOCK_SIZE;
+
+        for (int step = 0; step < ROUNDS; step++) {
+            if (forEncryption) {
+                computeSBatch(step, bHalf, lenB, v, count, roundOff - tailStart, tailLen, b, sBlocks);
+                for (int r = 0; r < count; r++) {
+                    combine(true, a, r * v, lenA, batchS, r * sStride, d);
+                }
+            } else {
+                computeSBatch(ROUNDS - 1 - step, a, lenA, v, count, roundOff - tailStart, tailLen, b, sBlocks);
+                for (int r = 0; r < count; r++) {
+                    combine(false, bHalf, r * v, lenB, batchS, r * sStride, d);
+                }
+            }
+            int[] tmp = a;
+            a = bHalf;
+            bHalf = tmp;
+            int tmpLen = lenA;
+            lenA = lenB;
+            lenB = tmpLen;
+        }
+
+        for (int r = 0; r < count; r++) {
+            int off = offsets[from + r];
+            System.arraycopy(a, r * v, x, off, lenA);
+            System.arraycopy(bHalf, r * v, x, off + lenA, lenB);
+        }
+    }
+
+    /**
+     * 为 count 条记录计算第 round 轮的 S：同一步的 AES 块合并为一次多块调用
+     */
+    private void computeSBatch(int round, int[] digits, int len, int stride, int count, int roundPos,
+                               int tailLen, int b, int sBlocks) {
+        for (int r = 0; r < count; r++) {
+            int qOff = r * tailLen;
+            System.arraycopy(qTail, 0, batchQ, qOff, tailLen);
+            batchQ[qOff + roundPos] = (byte) round;
+            writeNum(digits, r * stride, len, batchQ, qOff + tailLen - b, b);
+            System.arraycopy(prefixMac, 0, batchMac, r * BLOCK_SIZE, BLOCK_SIZE);
+        }
+
+        // CBC-MAC：每条记录的链是串行的，但各记录的第 k 步相互独立
+        for (int base = 0; base < tailLen; base += BLOCK_SIZE) {
+            for (int r = 0; r < count; r++) {
+                int qOff = r * tailLen + base;
+                int macOff = r * BLOCK_SIZE;
+                for (int k = 0; k < BLOCK_SIZE; k++) {
+                    batchMac[macOff + k] ^= batchQ[qOff + k];
+                }
+            }
+            processBlocks(batchMac, 0, count);
+        }
+
+        // S = R || CIPH(R ^ [1]) || CIPH(R ^ [2]) ...，所有记录的扩展块一次处理
+        int extBlocks = sBlocks - 1;
+        if (extBlocks > 0) {
+            for (int r = 0; r < count; r++) {
+                for (int j = 1; j <= extBlocks; j++) {
+                    int base = (r * extBlocks + j - 1) * BLOCK_SIZE;
+                    System.arraycopy(batchMac, r * BLOCK_SIZE, batchExt, base, BLOCK_SIZE);
+                    batchExt[base + 12] ^= (byte) (j >>> 24);
+                    batchExt[base + 13] ^= (byte) (j >>> 16);
+                    batchExt[base + 14] ^= (byte) (j >>> 8);
+                    batchExt[base + 15] ^= (byte) j;
+                }
+            }
+            processBlocks(batchExt, 0, count * extBlocks);
+        }
+        int sStride = sBlocks * BLOCK_SIZE;
+        for (int r = 0; r < count; r++) {
+            System.arraycopy(batchMac, r * BLOCK_SIZE, batchS, r * sStride, BLOCK_SIZE);
+            if (extBlocks > 0) {
+                System.arraycopy(batchExt, r * extBlocks * BLOCK_SIZE, batchS, r * sStride + BLOCK_SIZE,
+                    extBlocks * BLOCK_SIZE);
+            }
+        }
+    }
+
+    /**
+     * 原地加密 buf[off, off + blocks * 16) 中的每个块
+     */
+    private void processBlocks(byte[] buf, int off, int blocks) {
+        if (cipher instanceof BulkCipher) {
+            ((BulkCipher) cipher).processBlocks(buf, off, blocks, buf, off);
+            return;
+        }
+        for (int i = 0; i < blocks; i++) {
+            cipher.processBlock(buf, off + i * BLOCK_SIZE, buf, off + i * BLOCK_SIZE);
+        }
+    }
+
+    private void ensureBatch(int count, int v, int tailLen, int sBlocks) {
+        if (batchLeft.length < count * v) {
+            batchLeft = new int[count * v];
+            batchRight = new int[count * v];
+        }
+        if (batchQ.length < count * tailLen) {
+            batchQ = new byte[count * tailLen];
+        }
+        if (batchMac.length < count * BLOCK_SIZE) {
+            batchMac = new byte[count * BLOCK_SIZE];
+        }
+        if (batchExt.length < count * (sBlocks - 1) * BLOCK_SIZE) {
+            batchExt = new byte[count * (sBlocks - 1) * BLOCK_SIZE];
+        }
+        if (batchS.length < count * sBlocks * BLOCK_SIZE) {
+            batchS = new byte[count * sBlocks * BLOCK_SIZE];
+        }
+    }
+
+    private void process(boolean forEncryption, byte[] tweak, byte[] prefix, int[] x, int off, int n) {
+        checkInput(x, off, n);
+
+        int u = n / 2;
+        int v = n - u;
+        int t = tweak.length;
+        int b = byteLength(v);
+        int d = ((b + 3) / 4) * 4 + 4;
+
+        // Q = T || 0^pad || [i]^1 || [NUM(B)]^b，其中 T 和填充在 10 轮中不变
+        int roundOff = t + (-(t + b + 1) & 15);
+        int constBlocks = roundOff / BLOCK_SIZE;
+        int tailStart = constBlocks * BLOCK_SIZE;
+        int tailLen = roundOff + 1 + b - tailStart;
+        prepareTail(tweak, tailStart, tailLen);
+        if (prefix != null) {
+            System.arraycopy(prefix, 0, prefixMac, 0, BLOCK_SIZE);
+        } else {
+            computePrefix(tweak, u, n, constBlocks, prefixMac);
+        }
+
+        ensureHalves(v);
+        System.arraycopy(x, off, left, 0, u);
+        System.arraycopy(x, off + u, right, 0, v);
+        int[] a = left;
+        int[] bHalf = right;
+        int lenA = u;
+        int lenB = v;
+
+        if (forEncryption) {
+            for (int i = 0; i < ROUNDS; i++) {
+                computeS(i, bHalf, lenB, roundOff - tailStart, tailLen, b, d);
+                // c = (NUM(A) + y) mod radix^m，写回 A，然后交换两半
+                combine(true, a, 0, lenA, s, 0, d);
+                int[] tmp = a;
+                a = bHalf;
+                bHalf = tmp;
+                int tmpLen = lenA;
+                lenA = lenB;
+                lenB = tmpLen;
+            }
+        } else {
+            for (int i = ROUNDS - 1; i >= 0; i--) {
+                computeS(i, a, lenA, roundOff - tailStart, tailLen, b, d);
+                // c = (NUM(B) - y) mod radix^m，写回 B，然后交换两半
+                combine(false, bHalf, 0, lenB, s, 0, d);
+                int[] tmp = a;
+                a = bHalf;
+                bHalf = tmp;
+                int tmpLen = lenA;
+                lenA = lenB;
+                lenB = tmpLen;
+            }
+        }
+
+        System.arraycopy(a, 0, x, off, lenA);
+        System.arraycopy(bHalf, 0, x, off + lenA, lenB);
+    }
+
+    private void checkInput(int[] x, int off, int n) {
+        if (n < 2 || Math.pow(radix, n) < 1000000) {
+            throw new IllegalArgumentException("input too short");
+        }
+        for (int i = off; i < off + n; i++) {
+            if (x[i] < 0 || x[i] >= radix) {
+                throw new IllegalArgumentException("input data outside of radix");
+            }
+        }
+    }
+
+    /**
+     * 填充 Q 的尾部模板：tweak 中未落入常量块的字节，其余置零
+     */
+    private void prepareTail(byte[] tweak, int tailStart, int tailLen) {
+        if (qTail.length < tailLen) {
+            qTail = new byte[tailLen];
+        }
+        int tweakBytes = Math.max(0, Math.min(tweak.length - tailStart, tailLen));
+        if (tweakBytes > 0) {
+            System.arraycopy(tweak, tailStart, qTail, 0, tweakBytes);
+        }
+        for (int i = tweakBytes; i < tailLen; i++) {
+            qTail[i] = 0;
+        }
+    }
+
+    /**
+     * 计算 CIPH(P) 并吸收只含 tweak 的 Q 块，结果存入 out
+     */
+    private void computePrefix(byte[] tweak, int u, int n, int constBlocks, byte[] out) {
+        p[0] = 1;
+        p[1] = 2;
+        p[2] = 1;
+        p[3] = (byte) (radix >> 16);
+        p[4] = (byte) (radix >> 8);
+        p[5] = (byte) radix;
+        p[6] = 10;
+        p[7] = (byte) u;
+        intToBigEndian(n, p, 8);
+        intToBigEndian(tweak.length, p, 12);
+        cipher.processBlock(p, 0, out, 0);
+
+        // 常量块可能在 tweak 之后还包含填充的零字节
+        for (int blk = 0; blk < constBlocks; blk++) {
+            int base = blk * BLOCK_SIZE;
+            int end = Math.min(BLOCK_SIZE, tweak.length - base);
+            for (int k = 0; k < end; k++) {
+                out[k] ^= tweak[base + k];
+            }
+            cipher.processBlock(out, 0, out, 0);
+        }
+    }
+
+    /**
+     * 计算第 round 轮的 S（前 d 字节有效）
+     */
+    private void computeS(int round, int[] digits, int len, int roundPos, int tailLen, int b, int d) {
+        qTail[roundPos] = (byte) round;
+        writeNum(digits, 0, len, qTail, tailLen - b, b);
+
+        System.arraycopy(prefixMac, 0, mac, 0, BLOCK_SIZE);
+        for (int base = 0; base < tailLen; base += BLOCK_SIZE) {
+            for (int k = 0; k < BLOCK_SIZE; k++) {
+                mac[k] ^= qTail[base + k];
+            }
+            cipher.processBlock(mac, 0, mac, 0);
+        }
+
+        int sBlocks = (d + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (s.length < sBlocks * BLOCK_SIZE) {
+            s = new byte[sBlocks * BLOCK_SIZE];
+        }
+        System.arraycopy(mac, 0, s, 0, BLOCK_SIZE);
+        for (int j = 1; j < sBlocks; j++) {
+            int base = j * BLOCK_SIZE;
+            System.arraycopy(mac, 0, s, base, BLOCK_SIZE);
+            s[base + 12] ^= (byte) (j >>> 24);
+            s[base + 13] ^= (byte) (j >>> 16);
+            s[base + 14] ^= (byte) (j >>> 8);
+            s[base + 15] ^= (byte) j;
+            cipher.processBlock(s, base, s, base);
+        }
+    }
+
+    /**
+     * 以 b 字节大端序写出 NUM_radix(digits[digitOff, digitOff + len))
+     */
+    private void writeNum(int[] digits, int digitOff, int len, byte[] out, int outOff, int b) {
+        if (len <= longDigits) {
+            long value = 0;
+            for (int i = 0; i < len; i++) {
+                value = value * radix + digits[digitOff + i];
+            }
+            for (int k = b - 1; k >= 0; k--) {
+                out[outOff + k] = (byte) value;
+                value >>>= 8;
+            }
+            return;
+        }
+
+        int limbCount = (b + 3) / 4;
+        ensureLimbs(limbCount);
+        for (int i = 0; i < limbCount; i++) {
+            limbs[i] = 0;
+        }
+
+        // Horner：每次乘以 radix^k 并加上 k 位数字组成的块
+        int pos = 0;
+        int first = len % chunkDigits;
+        int step = first == 0 ? chunkDigits : first;
+        while (pos < len) {
+            long chunk = 0;
+            long multiplier = 1;
+            for (int k = 0; k < step; k++) {
+                chunk = chunk * radix + digits[digitOff + pos + k];
+                multiplier *= radix;
+            }
+            long carry = chunk;
+            for (int i = 0; i < limbCount; i++) {
+                long prod = (limbs[i] & 0xFFFFFFFFL) * multiplier + carry;
+                limbs[i] = (int) prod;
+                carry = prod >>> 32;
+            }
+            pos += step;
+            step = chunkDigits;
+        }
+
+        for (int k = 0; k < b; k++) {
+            out[outOff + b - 1 - k] = (byte) (limbs[k >>> 2] >>> ((k & 3) * 8));
+        }
+    }
+
+    /**
+     * 计算 y = NUM(S[0..d)) 并与 operand[opOff, opOff + m) 合并：
+     * 加密时 operand = (operand + y) mod radix^m，解密时 operand = (operand - y) mod radix^m
+     */
+    private void combine(boolean add, int[] operand, int opOff, int m, byte[] sBuf, int sOff, int d) {
+        if (m <= longDigits) {
+            long modulus = radixPowers[m];
+            long y = 0;
+            for (int k = 0; k < d; k++) {
+                y = ((y << 8) | (sBuf[sOff + k] & 0xFF)) % modulus;
+            }
+            long value = 0;
+            for (int i = 0; i < m; i++) {
+                value = value * radix + operand[opOff + i];
+            }
+            long c = add ? value + y : value - y;
+            if (c >= modulus) {
+                c -= modulus;
+            } else if (c < 0) {
+                c += modulus;
+            }
+            for (int i = m - 1; i >= 0; i--) {
+                operand[opOff + i] = (int) (c % radix);
+                c /= radix;
+            }
+            return;
+        }
+
+        reduceY(m, sBuf, sOff, d);
+        int carry = 0;
+        if (add) {
+            for (int i = m - 1; i >= 0; i--) {
+                int sum = operand[opOff + i] + yDigits[i] + carry;
+                if (sum >= radix) {
+                    sum -= radix;
+                    carry = 1;
+                } else {
+                    carry = 0;
+                }
+                operand[opOff + i] = sum;
+            }
+        } else {
+            for (int i = m - 1; i >= 0; i--) {
+                int diff = operand[opOff + i] - yDigits[i] - carry;
+                if (diff < 0) {
+                    diff += radix;
+                    carry = 1;
+                } else {
+                    carry = 0;
+                }
+                operand[opOff + i] = diff;
+            }
+        }
+    }
+
+    /**
+     * 多字运算：将 y = NUM(sBuf[sOff, sOff + d)) 的最低 m 位 radix 数字写入 yDigits（大端序）
+     */
+    private void reduceY(int m, byte[] sBuf, int sOff, int d) {
+        int limbCount = d / 4;
+        ensureLimbs(limbCount);
+        for (int i = 0; i < limbCount; i++) {
+            int base = sOff + d - 4 - i * 4;
+            limbs[i] = ((sBuf[base] & 0xFF) << 24)
+                | ((sBuf[base + 1] & 0xFF) << 16)
+                | ((sBuf[base + 2] & 0xFF) << 8)
+                | (sBuf[base + 3] & 0xFF);
+        }
+        if (yDigits.length < m) {
+            yDigits = new int[Math.max(m, yDigits.length * 2)];
+        }
+
+        int top = limbCount - 1;
+        int pos = m;
+        while (pos > 0) {
+            while (top >= 0 && limbs[top] == 0) {
+                top--;
+            }
+            long rem = 0;
+            for (int i = top; i >= 0; i--) {
+                long cur = (rem << 32) | (limbs[i] & 0xFFFFFFFFL);
+                limbs[i] = (int) (cur / chunkModulus);
+                rem = cur % chunkModulus;
+            }
+            for (int k = 0; k < chunkDigits && pos > 0; k++) {
+                yDigits[--pos] = (int) (rem % radix);
+                rem /= radix;
+            }
+        }
+    }
+
+    /**
+     * 计算 b = ceil(ceil(v * log2(radix)) / 8)，与 Bouncy Castle 的浮点计算方式一致
+     */
+    private int byteLength(int v) {
+        return ((int) Math.ceil(logRadix * v / LOG2) + 7) / 8;
+    }
+
+    private void ensureHalves(int len) {
+        if (left.length < len) {
+            int size = Math.max(len, left.length * 2);
+            left = new int[size];
+            right = new int[size];
+        }
+    }
+
+    private void ensureLimbs(int count) {
+        if (limbs.length < count) {
+            limbs = new int[Math.max(count, limbs.length * 2)];
+        }
+    }
+
+    private static void intToBigEndian(int value, byte[] out, int off) {
+        out[off] = (byte) (value >>> 24);
+        out[off + 1] = (byte) (value >>> 16);
+        out[off + 2] = (byte) (value >>> 8);
+        out[off + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,317 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.BlockCipher;
+
+import java.math.BigInteger;
+
+/**
+ * FF3-1 格式保留加密引擎（NIST SP 800-38G Rev.1，算法 9/10）
+ *
+ * 与 Bouncy Castle 的 FPEFF3_1Engine 输出逐字节一致。相比 FF1：
+ * - 8 轮，每轮只有一次单块 AES（FF1 每轮是多块 CBC-MAC 加扩展块）
+ * - tweak 固定为 56 位（7 字节）
+ * - 输入长度有上限：2 * floor(log_radix(2^96))，8410 进制下为 14
+ *
+ * 实现要点：
+ * - 每半长度满足 radix^len ≤ 2^96，NUM(REV(B)) 用 3 个 32 位字计算，不使用 BigInteger
+ * - y mod radix^m 的各位数字通过对 128 位 y 逐次除以 radix 得到，直接按位与另一半相加/相减
+ * - 批量接口让多条等长记录同步推进，每轮所有记录的 AES 块合并为一次多块调用（底层支持
+ *   {@link FF1Engine.BulkCipher} 时）
+ *
+ * 非线程安全：每个实例同一时刻只能被一个线程使用（由 EnginePool 保证）。
+ */
+final class FF31Engine {
+
+    /** tweak 长度（字节） */
+    static final int TWEAK_LENGTH = 7;
+
+    /** AES 分组大小 */
+    private static final int BLOCK_SIZE = 16;
+
+    /** Feistel 轮数 */
+    private static final int ROUNDS = 8;
+
+    /** 32 位字掩码 */
+    private static final long MASK = 0xFFFFFFFFL;
+
+    /** 以反转后的密钥初始化为加密方向的 AES */
+    private final BlockCipher cipher;
+
+    /** 基数 */
+    private final int radix;
+
+    /** 允许的最大长度 */
+    private final int maxLength;
+
+    /** 允许的最小长度（radix^minLength ≥ 1,000,000） */
+    private final int minLength;
+
+    /** 单条调用使用的偏移量数组 */
+    private final int[] singleOffset = new int[1];
+
+    /** 各记录的左右两半（步长为 ceil(n/2)） */
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+
+    /** 各记录的 REVB(P)，加密后即 REVB(S) */
+    private byte[] blocks = new byte[0];
+
+    /**
+     * @param cipher 已用<b>字节反转后</b>的密钥初始化为加密方向的 128 位分组密码
+     * @param radix 基数（2 到 65536）
+     */
+    FF31Engine(BlockCipher cipher, int radix) {
+        if (cipher.getBlockSize() != BLOCK_SIZE) {
+            throw new IllegalArgumentException("base cipher needs to be 128 bits");
+        }
+        if (radix < 2 || radix > (1 << 16)) {
+            throw new IllegalArgumentException("radix must be between 2 and 65536");
+        }
+        this.cipher = cipher;
+        this.radix = radix;
+        this.maxLength = maxLength(radix);
+        int min = 1;
+        for (double power = radix; power < 1000000; power *= radix) {
+            min++;
+        }
+        this.minLength = min;
+    }
+
+    /**
+     * 给定基数下 FF3-1 允许的最大长度：2 * floor(log_radix(2^96))
+     */
+    static int maxLength(int radix) {
+        // 精确求最大的 half 使 radix^half ≤ 2^96（只在构造时执行一次）
+        int half = 0;
+        BigInteger limit = BigInteger.ONE.shiftLeft(96);
+        BigInteger power = BigInteger.valueOf(radix);
+        while (power.compareTo(limit) <= 0) {
+            half++;
+            power = power.multiply(BigInteger.valueOf(radix));
+        }
+        return 2 * half;
+    }
+
+    int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * 原地加密数字串
+     *
+     * @param tweak 7 字节扰码
+     * @param x 数字串（每个元素取值 0 到 radix-1）
+     * @param off 起始位置
+     * @param len 长度
+     */
+    void encrypt(byte[] tweak, int[] x, int off, int len) {
+        singleOffset[0] = off;
+        process(true, tweak, x, singleOffset, 0, 1, len);
+    }
+
+    /**
+     * 原地解密数字串
+     *
+     * @param tweak 7 字节扰码（必须与加密时一致）
+     * @param x 数字串
+     * @param off 起始位置
+     * @param len 长度
+     */
+    void decrypt(byte[] tweak, int[] x, int off, int len) {
+        singleOffset[0] = off;
+        process(false, tweak, x, singleOffset, 0, 1, len);
+    }
+
+    /**
+     * 批量原地加密多条等长数字串，结果与逐条调用完全一致
+     *
+     * @param tweak 7 字节扰码
+     * @param x 数字串所在数组
+     * @param offsets 各记录在 x 中的起始位置
+     * @param from offsets 中的起始下标
+     * @param to offsets 中的结束下标（不含），to - from 不超过 {@link FF1Engine#MAX_BATCH}
+     * @param n 每条记录的长度
+     */
+    void encryptBatch(byte[] tweak, int[] x, int[] offsets, int from, int to, int n) {
+        process(true, tweak, x, offsets, from, to, n);
+    }
+
+    /**
+     * 批量原地解密多条等长数字串，参数同 {@link #encryptBatch}
+     */
+    void decryptBatch(byte[] tweak, int[] x, int[] offsets, int from, int to, int n) {
+        process(false, tweak, x, offsets, from, to, n);
+    }
+
+    private void process(boolean forEncryption, byte[] tweak, int[] x, int[] offsets, int from, int to, int n) {
+        int count = to - from;
+        if (count < 1 || count > FF1Engine.MAX_BATCH) {
+            throw new IllegalArgumentException("batch size must be between 1 and " + FF1Engine.MAX_BATCH);
+        }
+        if (tweak.length != TWEAK_LENGTH) {
+            throw new IllegalArgumentException("tweak should be 56 bits");
+        }
+        if (n < minLength || n > maxLength) {
+            throw new IllegalArgumentException("FF3-1 input length must be between " + minLength + " and " + maxLength);
+        }
+        for (int r = from; r < to; r++) {
+            int off = offsets[r];
+            for (int i = off; i < off + n; i++) {
+                if (x[i] < 0 || x[i] >= radix) {
+                    throw new IllegalArgumentException("input data outside of radix");
+                }
+            }
+        }
+
+        // T_L = T[0..27] || 0^4，T_R = T[32..55] || T[28..31] || 0^4
+        int tl = ((tweak[0] & 0xFF) << 24) | ((tweak[1] & 0xFF) << 16) | ((tweak[2] & 0xFF) << 8)
+            | (tweak[3] & 0xF0);
+        int tr = ((tweak[4] & 0xFF) << 24) | ((tweak[5] & 0xFF) << 16) | ((tweak[6] & 0xFF) << 8)
+            | ((tweak[3] & 0x0F) << 4);
+
+        int u = (n + 1) / 2;
+        int v = n - u;
+        ensureCapacity(count, u);
+        for (int r = 0; r < count; r++) {
+            int off = offsets[from + r];
+            System.arraycopy(x, off, left, r * u, u);
+            System.arraycopy(x, off + u, right, r * u, v);
+        }
+
+        int[] a = left;
+        int[] b = right;
+        int lenA = u;
+        int lenB = v;
+        for (int step = 0; step < ROUNDS; step++) {
+            int round = forEncryption ? step : ROUNDS - 1 - step;
+            int w = (round & 1) == 0 ? tr : tl;
+            // 加密：P 取自 B，结果加到 A；解密：P 取自 A，结果从 B 减去
+            int[] source = forEncryption ? b : a;
+            int sourceLen = forEncryption ? lenB : lenA;
+            int[] target = forEncryption ? a : b;
+            int m = forEncryption ? lenA : lenB;
+            for (int r = 0; r < count; r++) {
+                writeBlock(w ^ round, source, r * u, sourceLen, r * BLOCK_SIZE);
+            }
+            processBlocks(count);
+            for (int r = 0; r < count; r++) {
+                combine(forEncryption, target, r * u, m, r * BLOCK_SIZE);
+            }
+            if (forEncryption) {
+                // A = B, B = C
+                int[] tmp = a;
+                a = b;
+                b = tmp;
+                int tmpLen = lenA;
+                lenA = lenB;
+                lenB = tmpLen;
+            } else {
+                // B = A, A = C
+                int[] tmp = b;
+                b = a;
+                a = tmp;
+                int tmpLen = lenB;
+                lenB = lenA;
+                lenA = tmpLen;
+            }
+        }
+
+        for (int r = 0; r < count; r++) {
+            int off = offsets[from + r];
+            System.arraycopy(a, r * u, x, off, lenA);
+            System.arraycopy(b, r * u, x, off + lenA, lenB);
+        }
+    }
+
+    /**
+     * 写出 REVB(P)，P = (W ^ [i]^4) || [NUM_radix(REV(digits))]^12
+     *
+     * REVB(P) 的前 12 字节即数值的小端序表示，后 4 字节为 W 的反转。
+     */
+    private void writeBlock(int w, int[] digits, int off, int len, int blockOff) {
+        // NUM_radix(REV(X)) = Σ X[j] * radix^j，从最高位 X[len-1] 开始做 Horner
+        long l0 = 0;
+        long l1 = 0;
+        long l2 = 0;
+        for (int j = off + len - 1; j >= off; j--) {
+            long c0 = l0 * radix + digits[j];
+            long c1 = l1 * radix + (c0 >>> 32);
+            long c2 = l2 * radix + (c1 >>> 32);
+            l0 = c0 & MASK;
+            l1 = c1 & MASK;
+            l2 = c2 & MASK;
+        }
+        putIntLE(blocks, blockOff, (int) l0);
+        putIntLE(blocks, blockOff + 4, (int) l1);
+        putIntLE(blocks, blockOff + 8, (int) l2);
+        putIntLE(blocks, blockOff + 12, w);
+    }
+
+    /**
+     * 取 y = NUM(REVB(CIPH(REVB(P))))（即加密结果按小端序解释），
+     * 加密时 target = target + y，解密时 target = target - y（均 mod radix^m，REV 表示下最低位在前）
+     */
+    private void combine(boolean add, int[] target, int off, int m, int blockOff) {
+        long y0 = getIntLE(blocks, blockOff) & MASK;
+        long y1 = getIntLE(blocks, blockOff + 4) & MASK;
+        long y2 = getIntLE(blocks, blockOff + 8) & MASK;
+        long y3 = getIntLE(blocks, blockOff + 12) & MASK;
+        int carry = 0;
+        for (int j = 0; j < m; j++) {
+            // y 除以 radix，余数即 y 的第 j 位
+            long cur = y3;
+            y3 = cur / radix;
+            cur = ((cur % radix) << 32) | y2;
+            y2 = cur / radix;
+            cur = ((cur % radix) << 32) | y1;
+            y1 = cur / radix;
+            cur = ((cur % radix) << 32) | y0;
+            y0 = cur / radix;
+            int digit = (int) (cur % radix);
+
+            int value;
+            if (add) {
+                value = target[off + j] + digit + carry;
+                carry = value >= radix ? 1 : 0;
+                value -= carry * radix;
+            } else {
+                value = target[off + j] - digit - carry;
+                carry = value < 0 ? 1 : 0;
+                value += carry * radix;
+            }
+            target[off + j] = value;
+        }
+    }
+
+    private void processBlocks(int count) {
+        if (cipher instanceof FF1Engine.BulkCipher) {
+            ((FF1Engine.BulkCipher) cipher).processBlocks(blocks, 0, count, blocks, 0);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            cipher.processBlock(blocks, i * BLOCK_SIZE, blocks, i * BLOCK_SIZE);
+        }
+    }
+
+    private void ensureCapacity(int count, int half) {
+        if (left.length < count * half) {
+            left = new int[count * half];
+            right = new int[count * half];
+        }
+        if (blocks.length < count * BLOCK_SIZE) {
+            blocks = new byte[count * BLOCK_SIZE];
+        }
+    }
+
+    private static void putIntLE(byte[] buf, int off, int value) {
+        buf[off] = (byte) value;
+        buf[off + 1] = (byte) (value >>> 8);
+        buf[off + 2] = (byte) (value >>> 16);
+        buf[off + 3] = (byte) (value >>> 24);
+    }
+
+    private static int getIntLE(byte[] buf, int off) {
+        return (buf[off] & 0xFF) | ((buf[off + 1] & 0xFF) << 8) | ((buf[off + 2] & 0xFF) << 16)
+            | ((buf[off + 3] & 0xFF) << 24);
+    }
+}
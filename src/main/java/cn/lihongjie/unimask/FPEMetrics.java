@@ -0,0 +1,85 @@
+package cn.lihongjie.unimask;
+
+/**
+ * 加解密指标回调（SPI）
+ *
+ * 通过 {@link ChineseFPEService#setMetrics(FPEMetrics)} 安装到服务实例。PBKDF2 密钥派生
+ * 发生在服务创建之前，需要在派生时传入：{@link KdfParameters#deriveKey(String, FPEMetrics)}、
+ * {@link ChineseFPEService#ChineseFPEService(String, KdfParameters, FPEMetrics)} 或
+ * {@link ServiceRegistry#ServiceRegistry(int, long, DerivedKeyStore, FPEMetrics)}。
+ * 所有方法都有空的默认实现，实现方只需覆盖关心的事件；{@link MetricsRecorder} 是基于
+ * LongAdder 的现成实现。
+ *
+ * 默认为 {@link #NOOP}：热路径只做一次引用比较，不调用 System.nanoTime，也不调用回调。
+ * 回调在调用线程上同步执行，实现必须线程安全且足够轻量。
+ *
+ * @author lihongjie
+ */
+public interface FPEMetrics {
+
+    /** 不记录任何指标 */
+    FPEMetrics NOOP = new FPEMetrics() {
+    };
+
+    /**
+     * 单个文本中间部分的处理路径
+     */
+    enum Path {
+
+        /** 没有可处理的字符（头部保留覆盖全文，或中间部分全部不在字典/加密区间内），原样输出 */
+        PASSTHROUGH,
+
+        /** 只有一个可处理字符，使用基于密钥的模加法置换 */
+        SINGLE_CHAR,
+
+        /** 两个及以上可处理字符，使用 FF1 / FF3-1 */
+        FPE
+    }
+
+    /**
+     * 一个非空文本加/解密完成
+     *
+     * @param forEncryption 是否为加密
+     * @param path 处理路径
+     * @param middleLength 中间部分长度（不含头尾保留）
+     * @param skippedChars 中间部分中原样保留的字符数（加密时为字典外字符，解密时为非加密字符；
+     *                     两者含义不同，实现方应按 forEncryption 分开统计）
+     * @param nanos 耗时（纳秒）；批量调用中为所在批次的平均值
+     */
+    default void recordTransform(boolean forEncryption, Path path, int middleLength, int skippedChars, long nanos) {
+    }
+
+    /**
+     * 结果缓存命中
+     *
+     * @param shared 是否为第二级共享缓存（{@link MappedResultCache}）命中
+     */
+    default void recordCacheHit(boolean shared) {
+    }
+
+    /**
+     * 结果缓存命中时，命中文本中原样保留的字符数
+     *
+     * 命中时不经过 {@link #recordTransform}，单独报告这部分字符，使跳过字符的统计与缓存命中率无关。
+     *
+     * @param forEncryption 是否为加密
+     * @param skippedChars 中间部分中原样保留的字符数，含义同 {@link #recordTransform}
+     */
+    default void recordSkippedChars(boolean forEncryption, int skippedChars) {
+    }
+
+    /**
+     * 结果缓存未命中
+     */
+    default void recordCacheMiss() {
+    }
+
+    /**
+     * 完成一次 PBKDF2 密钥派生
+     *
+     * @param iterations 迭代次数
+     * @param nanos 耗时（纳秒）
+     */
+    default void recordKeyDerivation(int iterations, long nanos) {
+    }
+}
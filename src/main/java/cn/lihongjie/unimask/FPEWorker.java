@@ -0,0 +1,129 @@
+package cn.lihongjie.unimask;
+
+/**
+ * 加解密工作单元
+ *
+ * 把非线程安全的 FPE 引擎（FF1 或 FF3-1）和每次调用都需要的中间缓冲区打包在一起，
+ * 由 {@link ChineseFPEService} 通过 {@link EnginePool} 池化。
+ * 单次调用借出一次；批量调用整批只借出一次，缓冲区在各元素之间复用。
+ */
+final class FPEWorker {
+
+    /** 输出缓冲区保留的最大长度，超过后不再保留，避免偶发的超长文本长期占用内存 */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    /** FF1 引擎（使用 FF3-1 时为 null） */
+    private final FF1Engine ff1;
+
+    /** FF3-1 引擎（使用 FF1 时为 null） */
+    private final FF31Engine ff3;
+
+    /** 可加密字符的索引 */
+    private int[] indices = new int[64];
+
+    /** 输出缓冲区 */
+    private char[] chars = new char[64];
+
+    /** 批量处理：每条记录的中间部分范围、索引起点和可处理字符数 */
+    private int[] records = new int[0];
+
+    /** 批量处理：按可处理字符数排序的 (数量, 记录下标) */
+    private long[] order = new long[0];
+
+    /** 批量处理：同一组记录在索引缓冲区中的起点 */
+    final int[] groupOffsets = new int[FF1Engine.MAX_BATCH];
+
+    FPEWorker(FF1Engine ff1) {
+        this.ff1 = ff1;
+        this.ff3 = null;
+    }
+
+    FPEWorker(FF31Engine ff3) {
+        this.ff1 = null;
+        this.ff3 = ff3;
+    }
+
+    /**
+     * 原地加/解密 x[off, off + n)
+     */
+    void process(boolean forEncryption, Tweak tweak, int[] x, int off, int n) {
+        if (ff3 != null) {
+            if (forEncryption) {
+                ff3.encrypt(tweak.ff3Bytes(), x, off, n);
+            } else {
+                ff3.decrypt(tweak.ff3Bytes(), x, off, n);
+            }
+            return;
+        }
+        byte[] prefix = tweak.ff1Prefix(ff1, n);
+        if (forEncryption) {
+            ff1.encrypt(tweak.getBytes(), prefix, x, off, n);
+        } else {
+            ff1.decrypt(tweak.getBytes(), prefix, x, off, n);
+        }
+    }
+
+    /**
+     * 同步加/解密多条等长数字串，offsets[from, to) 为各记录在 x 中的起点（最多 {@link FF1Engine#MAX_BATCH} 条）
+     */
+    void processBatch(boolean forEncryption, Tweak tweak, int[] x, int[] offsets, int from, int to, int n) {
+        if (ff3 != null) {
+            if (forEncryption) {
+                ff3.encryptBatch(tweak.ff3Bytes(), x, offsets, from, to, n);
+            } else {
+                ff3.decryptBatch(tweak.ff3Bytes(), x, offsets, from, to, n);
+            }
+            return;
+        }
+        byte[] prefix = tweak.ff1Prefix(ff1, n);
+        if (forEncryption) {
+            ff1.encryptBatch(tweak.getBytes(), prefix, x, offsets, from, to, n);
+        } else {
+            ff1.decryptBatch(tweak.getBytes(), prefix, x, offsets, from, to, n);
+        }
+    }
+
+    /**
+     * 获取至少能容纳 length 个索引的缓冲区
+     */
+    int[] indices(int length) {
+        if (indices.length < length) {
+            indices = new int[Math.max(length, indices.length * 2)];
+        }
+        return indices;
+    }
+
+    /**
+     * 获取至少能容纳 length 个字符的输出缓冲区
+     * 超过保留上限的请求使用临时数组，不替换常驻缓冲区
+     */
+    char[] chars(int length) {
+        if (chars.length < length) {
+            if (length > MAX_RETAINED_CAPACITY) {
+                return new char[length];
+            }
+            chars = new char[Math.min(Math.max(length, chars.length * 2), MAX_RETAINED_CAPACITY)];
+        }
+        return chars;
+    }
+
+    /**
+     * 获取至少能容纳 length 个整数的记录缓冲区
+     */
+    int[] records(int length) {
+        if (records.length < length) {
+            records = new int[length];
+        }
+        return records;
+    }
+
+    /**
+     * 获取至少能容纳 length 个元素的排序缓冲区
+     */
+    long[] order(int length) {
+        if (order.length < length) {
+            order = new long[length];
+        }
+        return order;
+    }
+}
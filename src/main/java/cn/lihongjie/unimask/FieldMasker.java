@@ -0,0 +1,150 @@
+package cn.lihongjie.unimask;
+
+/**
+ * 流式字段脱敏规则
+ *
+ * 描述如何处理以分隔符切分的文本流：分隔符原样输出，分隔符之间的每个字段
+ * 作为一个整体加密或解密（与对该字段单独调用 {@link ChineseFPEService} 的结果完全一致）。
+ * 由 {@link MaskingWriter} 和 {@link MaskingReader} 使用，字段长度受 maxFieldLength 限制，
+ * 因此处理任意大小的流只需要有界的内存。
+ *
+ * 线程安全：实例不可变，可被多个流同时使用。
+ *
+ * @author lihongjie
+ */
+public final class FieldMasker {
+
+    /** 默认分隔符：逗号、制表符和换行 */
+    public static final String DEFAULT_DELIMITERS = ",\t\r\n";
+
+    /** 默认最大字段长度 */
+    public static final int DEFAULT_MAX_FIELD_LENGTH = 64 * 1024;
+
+    private final ChineseFPEService service;
+
+    private final boolean forEncryption;
+
+    private final Tweak tweak;
+
+    private final int headPreserve;
+
+    private final int tailPreserve;
+
+    private final char[] delimiters;
+
+    private final int maxFieldLength;
+
+    /**
+     * 使用默认分隔符和最大字段长度创建
+     *
+     * @param service 加密服务
+     * @param forEncryption true 表示加密，false 表示解密
+     * @param tweak 扰码
+     * @param headPreserve 每个字段开头保留的字符数
+     * @param tailPreserve 每个字段末尾保留的字符数
+     */
+    public FieldMasker(ChineseFPEService service, boolean forEncryption, String tweak,
+                       int headPreserve, int tailPreserve) {
+        this(service, forEncryption, tweak, headPreserve, tailPreserve,
+            DEFAULT_DELIMITERS, DEFAULT_MAX_FIELD_LENGTH);
+    }
+
+    /**
+     * 创建字段脱敏规则
+     *
+     * @param service 加密服务
+     * @param forEncryption true 表示加密，false 表示解密
+     * @param tweak 扰码
+     * @param headPreserve 每个字段开头保留的字符数
+     * @param tailPreserve 每个字段末尾保留的字符数
+     * @param delimiters 字段分隔符集合（每个字符都是分隔符）
+     * @param maxFieldLength 单个字段的最大字符数
+     */
+    public FieldMasker(ChineseFPEService service, boolean forEncryption, String tweak,
+                       int headPreserve, int tailPreserve, String delimiters, int maxFieldLength) {
+        this(service, forEncryption, service == null ? null : service.resolveTweak(tweak),
+            headPreserve, tailPreserve, delimiters, maxFieldLength);
+    }
+
+    /**
+     * 创建字段脱敏规则（使用预计算的 tweak）
+     *
+     * @param service 加密服务
+     * @param forEncryption true 表示加密，false 表示解密
+     * @param tweak 由该服务实例创建的扰码
+     * @param headPreserve 每个字段开头保留的字符数
+     * @param tailPreserve 每个字段末尾保留的字符数
+     * @param delimiters 字段分隔符集合（每个字符都是分隔符）
+     * @param maxFieldLength 单个字段的最大字符数
+     */
+    public FieldMasker(ChineseFPEService service, boolean forEncryption, Tweak tweak,
+                       int headPreserve, int tailPreserve, String delimiters, int maxFieldLength) {
+        if (service == null) {
+            throw new IllegalArgumentException("service cannot be null");
+        }
+        if (headPreserve < 0 || tailPreserve < 0) {
+            throw new IllegalArgumentException("headPreserve and tailPreserve must be non-negative");
+        }
+        if (delimiters == null || delimiters.isEmpty()) {
+            throw new IllegalArgumentException("delimiters cannot be empty");
+        }
+        if (maxFieldLength < 1) {
+            throw new IllegalArgumentException("maxFieldLength must be positive");
+        }
+        if (tweak != null && tweak.getOwner() != service) {
+            throw new IllegalArgumentException("Tweak was created by a different ChineseFPEService instance");
+        }
+        this.service = service;
+        this.forEncryption = forEncryption;
+        this.tweak = tweak;
+        this.headPreserve = headPreserve;
+        this.tailPreserve = tailPreserve;
+        this.delimiters = delimiters.toCharArray();
+        this.maxFieldLength = maxFieldLength;
+    }
+
+    public boolean isForEncryption() {
+        return forEncryption;
+    }
+
+    public int getMaxFieldLength() {
+        return maxFieldLength;
+    }
+
+    /**
+     * 判断字符是否为分隔符
+     */
+    boolean isDelimiter(char c) {
+        // 分隔符通常只有几个，线性扫描比查表更省内存且足够快
+        for (char d : delimiters) {
+            if (d == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加/解密一个字段
+     */
+    String transform(char[] field, int off, int len) {
+        if (len == 0) {
+            return "";
+        }
+        String text = new String(field, off, len);
+        return forEncryption
+            ? service.encrypt(tweak, headPreserve, tailPreserve, text)
+            : service.decrypt(tweak, text, headPreserve, tailPreserve);
+    }
+
+    /**
+     * 加/解密 field[start, end) 并写入 dst（不分配中间对象，dst 可以与 field 的底层数组相同）
+     */
+    void transform(CharSequence field, int start, int end, char[] dst, int dstOffset) {
+        if (forEncryption) {
+            service.encrypt(tweak, headPreserve, tailPreserve, field, start, end, dst, dstOffset);
+        } else {
+            service.decrypt(tweak, field, start, end, headPreserve, tailPreserve, dst, dstOffset);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.lihongjie.unimask;
+
+/**
+ * 格式保留加密算法
+ *
+ * 两种算法在同一 {@link CharacterMapping} 基数上工作，输出字符集和保留规则相同，
+ * 但密文互不兼容：同一密钥下用一种算法加密的数据只能用同一种算法解密。
+ * 单字符的中间部分两者都使用基于密钥的模加法置换，结果相同。
+ *
+ * - {@link #FF1}：默认算法，长度不限；每轮一次 CBC-MAC（多块 AES）
+ * - {@link #FF3_1}：每轮只有一次单块 AES，共 8 轮，短文本的成本明显更低；
+ *   可处理字符数受限（默认字典的 8410 进制下最多 14 个），tweak 固定为 56 位，
+ *   由 tweak 字符串的 SHA-256 截取前 7 字节得到。适合姓名、电话等以读为主的短字段。
+ *
+ * @author lihongjie
+ */
+public enum FpeAlgorithm {
+
+    /** NIST SP 800-38G FF1 */
+    FF1 {
+        @Override
+        FPEWorker newWorker(AesBackend aesBackend, byte[] key, int radix) {
+            return new FPEWorker(new FF1Engine(aesBackend.newCipher(key), radix));
+        }
+
+        @Override
+        public int getMaxLength(int radix) {
+            return Integer.MAX_VALUE;
+        }
+    },
+
+    /** NIST SP 800-38G Rev.1 FF3-1 */
+    FF3_1 {
+        @Override
+        FPEWorker newWorker(AesBackend aesBackend, byte[] key, int radix) {
+            // FF3-1 规定 AES 使用字节反转后的密钥
+            byte[] reversed = new byte[key.length];
+            for (int i = 0; i < key.length; i++) {
+                reversed[i] = key[key.length - 1 - i];
+            }
+            return new FPEWorker(new FF31Engine(aesBackend.newCipher(reversed), radix));
+        }
+
+        @Override
+        public int getMaxLength(int radix) {
+            return FF31Engine.maxLength(radix);
+        }
+    };
+
+    /**
+     * 创建该算法的工作单元（AES 密钥扩展在此完成）
+     */
+    abstract FPEWorker newWorker(AesBackend aesBackend, byte[] key, int radix);
+
+    /**
+     * 给定基数下单次可处理的最大字符数（中间部分中在字典内的字符）
+     */
+    public abstract int getMaxLength(int radix);
+}
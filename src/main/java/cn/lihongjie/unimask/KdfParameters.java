@@ -0,0 +1,144 @@
+package cn.lihongjie.unimask;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+/**
+ * 密码派生密钥（PBKDF2-HMAC-SHA256）参数
+ *
+ * 包含盐值、迭代次数和密钥长度。迭代次数决定派生成本：默认 100,000 次，
+ * 单核约需数十到一百毫秒；安全要求更高时可以调大，测试或低延迟场景可以在可接受范围内调小。
+ *
+ * 实例不可变、线程安全。
+ *
+ * @author lihongjie
+ */
+public final class KdfParameters {
+
+    /** 默认盐值（与 {@link ChineseFPEService#ChineseFPEService(String)} 一致） */
+    static final byte[] DEFAULT_SALT = "UniMaskFPE2026".getBytes(StandardCharsets.UTF_8);
+
+    /** 默认迭代次数 */
+    public static final int DEFAULT_ITERATIONS = 100000;
+
+    /** 最小迭代次数（NIST SP 800-132 建议值） */
+    public static final int MIN_ITERATIONS = 1000;
+
+    /** 默认参数：默认盐值、100,000 次迭代、AES-128 */
+    public static final KdfParameters DEFAULT = new KdfParameters(DEFAULT_SALT, DEFAULT_ITERATIONS, 16);
+
+    private final byte[] salt;
+
+    private final int iterations;
+
+    private final int keyLength;
+
+    /**
+     * 使用默认盐值和 AES-128 密钥长度
+     *
+     * @param iterations 迭代次数（至少 1000）
+     */
+    public KdfParameters(int iterations) {
+        this(DEFAULT_SALT, iterations, 16);
+    }
+
+    /**
+     * @param salt 盐值（至少 8 字节）
+     * @param iterations 迭代次数（至少 1000）
+     * @param keyLength 密钥长度（16=AES-128, 24=AES-192, 32=AES-256）
+     */
+    public KdfParameters(byte[] salt, int iterations, int keyLength) {
+        if (salt == null || salt.length < 8) {
+            throw new IllegalArgumentException("Salt must be at least 8 bytes");
+        }
+        if (iterations < MIN_ITERATIONS) {
+            throw new IllegalArgumentException("Iterations must be at least " + MIN_ITERATIONS);
+        }
+        if (keyLength != 16 && keyLength != 24 && keyLength != 32) {
+            throw new IllegalArgumentException(
+                "Key length must be 16, 24, or 32 bytes (128, 192, or 256 bits)");
+        }
+        this.salt = Arrays.copyOf(salt, salt.length);
+        this.iterations = iterations;
+        this.keyLength = keyLength;
+    }
+
+    /**
+     * 从密码派生密钥
+     *
+     * @param password 密码字符串
+     * @return 派生的密钥
+     */
+    public byte[] deriveKey(String password) {
+        return deriveKey(password, FPEMetrics.NOOP);
+    }
+
+    /**
+     * 从密码派生密钥，并把派生耗时报告给 metrics
+     *
+     * @param password 密码字符串
+     * @param metrics 指标回调，{@link FPEMetrics#NOOP} 表示不记录
+     * @return 派生的密钥
+     */
+    public byte[] deriveKey(String password, FPEMetrics metrics) {
+        if (password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Password cannot be null or empty");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+
+        long startNanos = metrics == FPEMetrics.NOOP ? 0L : System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength * 8);
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            byte[] key = factory.generateSecret(spec).getEncoded();
+            if (metrics != FPEMetrics.NOOP) {
+                metrics.recordKeyDerivation(iterations, System.nanoTime() - startNanos);
+            }
+            return key;
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new RuntimeException("Failed to derive key from password", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public byte[] getSalt() {
+        return Arrays.copyOf(salt, salt.length);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KdfParameters)) {
+            return false;
+        }
+        KdfParameters other = (KdfParameters) o;
+        return iterations == other.iterations && keyLength == other.keyLength && Arrays.equals(salt, other.salt);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(salt) * 31 + iterations) * 31 + keyLength;
+    }
+
+    @Override
+    public String toString() {
+        return "KdfParameters[iterations=" + iterations + ", keyLength=" + keyLength + "]";
+    }
+}
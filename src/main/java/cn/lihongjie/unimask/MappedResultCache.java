@@ -0,0 +1,398 @@
+package cn.lihongjie.unimask;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的堆外结果缓存
+ *
+ * 同一主机上的多个 JVM 映射同一个文件即可共享加解密结果，进程重启后缓存仍然有效，
+ * 重复的值不再执行 FF1。通过 {@link CachingFPEService#CachingFPEService(ChineseFPEService, long, int, MappedResultCache)}
+ * 作为堆内缓存之后的第二级使用。
+ *
+ * 文件结构是固定槽位的开放寻址哈希表：
+ * - 文件头记录魔数、版本、槽位数和槽位大小，打开已有文件时校验
+ * - 每个槽位保存一条完整记录：密钥指纹、方向、tweak、头尾保留、输入和结果
+ * - 键的 64 位哈希决定起始槽位，线性探测最多 {@value #MAX_PROBES} 个槽位；探测窗口已满时覆盖其中一个
+ * - 槽位开头是记录内容的 CRC32。跨进程写入没有锁，并发写入同一槽位产生的撕裂记录无法通过校验，按未命中处理；
+ *   命中时还会逐字段比较完整的键，因此不会返回错误结果
+ *
+ * 注意：缓存文件中包含明文，只应放在本机受保护的目录中（新建文件的权限由进程 umask 决定）。
+ * 密钥本身不写入文件，只保存由密钥、字典和算法计算的 64 位指纹，用于区分不同服务配置的条目。
+ *
+ * 线程安全，可被多个进程同时打开。
+ *
+ * @author lihongjie
+ */
+public final class MappedResultCache implements Closeable {
+
+    /** 默认槽位数 */
+    public static final int DEFAULT_SLOT_COUNT = 1 << 18;
+
+    /** 默认槽位大小（字节），可容纳约 50 个字符的输入 */
+    public static final int DEFAULT_SLOT_SIZE = 256;
+
+    /** 文件魔数 "UMRC" */
+    private static final int MAGIC = 0x554D5243;
+
+    /** 版本 2：指纹加入字典摘要 */
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int MAX_PROBES = 8;
+
+    /** 槽位头：CRC32 + 记录长度 */
+    private static final int SLOT_HEADER = 4 + 2;
+
+    /** 记录的定长部分：指纹 + 方向 + 头尾保留 + tweak 长度 + 输入长度 */
+    private static final int RECORD_FIXED = 8 + 1 + 4 + 4 + 2 + 2;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int slotCount;
+
+    private final int slotSize;
+
+    /** 每个线程复用的槽位缓冲区，查找和写入时不再分配 */
+    private final ThreadLocal<byte[]> scratch;
+
+    /**
+     * 使用默认槽位数和槽位大小打开（文件不存在时创建）
+     */
+    public static MappedResultCache open(Path file) throws IOException {
+        return open(file, DEFAULT_SLOT_COUNT, DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * 打开缓存文件（不存在时创建）
+     *
+     * @param file 缓存文件
+     * @param slotCount 槽位数
+     * @param slotSize 槽位大小（字节，64 到 4096）
+     * @throws IOException 读写失败，或已有文件的槽位参数与给定参数不一致
+     */
+    public static MappedResultCache open(Path file, int slotCount, int slotSize) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        if (slotCount < MAX_PROBES) {
+            throw new IllegalArgumentException("slotCount must be at least " + MAX_PROBES);
+        }
+        if (slotSize < 64 || slotSize > 4096) {
+            throw new IllegalArgumentException("slotSize must be between 64 and 4096");
+        }
+        long size = HEADER_SIZE + (long) slotCount * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache file larger than 2 GB is not supported");
+        }
+
+        FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer;
+            // 文件头的初始化与校验在文件锁内进行，避免多个进程同时创建
+            FileLock lock = channel.lock();
+            try {
+                boolean created = channel.size() == 0;
+                if (!created && channel.size() != size) {
+                    throw new IOException("Incompatible result cache file (size " + channel.size()
+                        + ", expected " + size + "): " + file);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (created) {
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, VERSION);
+                    buffer.putInt(8, slotCount);
+                    buffer.putInt(12, slotSize);
+                    buffer.force();
+                } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                        || buffer.getInt(8) != slotCount || buffer.getInt(12) != slotSize) {
+                    throw new IOException("Incompatible result cache file: " + file);
+                }
+            } finally {
+                lock.release();
+            }
+            return new MappedResultCache(channel, buffer, slotCount, slotSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedResultCache(FileChannel channel, MappedByteBuffer buffer, int slotCount, int slotSize) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        this.scratch = ThreadLocal.withInitial(() -> new byte[slotSize]);
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * 统计有效条目数（扫描全部槽位）
+     */
+    public int count() {
+        byte[] slot = new byte[slotSize];
+        int count = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (readSlot(i, slot) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 清空全部槽位（对共享该文件的其他进程同样生效）
+     */
+    public void clear() {
+        for (int i = 0; i < slotCount; i++) {
+            buffer.putInt(HEADER_SIZE + i * slotSize, 0);
+        }
+    }
+
+    /**
+     * 把映射内容写回磁盘并关闭文件（映射在垃圾回收时释放）
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * 使用默认字典和 FF1 时的密钥指纹
+     */
+    static long keyFingerprint(byte[] key) {
+        return keyFingerprint(key, CharacterMapping.getDefault(), FpeAlgorithm.FF1);
+    }
+
+    /**
+     * 计算服务配置的指纹：SHA-256("unimask-result-cache" || key || radix || 字典字符 || 算法名) 的前 8 字节
+     *
+     * 相同配置在所有进程中得到相同指纹；密钥、字典（含自定义字典）或算法任一不同，结果互不混淆。
+     */
+    static long keyFingerprint(byte[] key, CharacterMapping mapping, FpeAlgorithm algorithm) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update("unimask-result-cache".getBytes(StandardCharsets.UTF_8));
+            digest.update(key);
+            int radix = mapping.getRadix();
+            byte[] dictionary = new byte[4 + radix * 2];
+            ByteBuffer dictionaryView = ByteBuffer.wrap(dictionary).putInt(radix);
+            for (int i = 0; i < radix; i++) {
+                dictionaryView.putChar(mapping.getOriginalChar(i));
+            }
+            digest.update(dictionary);
+            digest.update(algorithm.name().getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest();
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    /**
+     * 查找结果
+     *
+     * @return 结果；未命中时返回 null
+     */
+    String get(long fingerprint, boolean forEncryption, String tweak, int headPreserve, int tailPreserve,
+               String input) {
+        int length = recordLength(tweak, input);
+        if (length < 0) {
+            return null;
+        }
+        long hash = hash(fingerprint, forEncryption, tweak, headPreserve, tailPreserve, input);
+        byte[] slot = scratch.get();
+        int home = home(hash);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int recordLength = readSlot((home + probe) % slotCount, slot);
+            if (recordLength == 0) {
+                // 从未写入的槽位之后不会有该键
+                return null;
+            }
+            if (recordLength == length
+                    && matches(slot, fingerprint, forEncryption, tweak, headPreserve, tailPreserve, input)) {
+                return readOutput(slot, tweak.length(), input.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入结果（结果长度必须与输入相同；记录超过槽位大小时不写入）
+     */
+    void put(long fingerprint, boolean forEncryption, String tweak, int headPreserve, int tailPreserve,
+             String input, String output) {
+        int length = recordLength(tweak, input);
+        if (length < 0 || output.length() != input.length()) {
+            return;
+        }
+        long hash = hash(fingerprint, forEncryption, tweak, headPreserve, tailPreserve, input);
+        byte[] slot = scratch.get();
+        int home = home(hash);
+        int target = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (home + probe) % slotCount;
+            int recordLength = readSlot(index, slot);
+            if (recordLength == length
+                    && matches(slot, fingerprint, forEncryption, tweak, headPreserve, tailPreserve, input)) {
+                return;
+            }
+            if (recordLength <= 0) {
+                target = index;
+                break;
+            }
+        }
+        if (target < 0) {
+            // 探测窗口已满：按哈希的高位选择一个槽位覆盖
+            target = (home + (int) ((hash >>> 40) % MAX_PROBES)) % slotCount;
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(slot, SLOT_HEADER, length);
+        record.putLong(fingerprint).put((byte) (forEncryption ? 1 : 0))
+            .putInt(headPreserve).putInt(tailPreserve)
+            .putShort((short) tweak.length()).putShort((short) input.length());
+        putChars(record, tweak);
+        putChars(record, input);
+        putChars(record, output);
+        ByteBuffer.wrap(slot, 4, 2).putShort((short) length);
+
+        // 先写记录内容，最后写校验和
+        viewAt(HEADER_SIZE + target * slotSize + 4).put(slot, 4, 2 + length);
+        buffer.putInt(HEADER_SIZE + target * slotSize, checksum(slot, length));
+    }
+
+    /**
+     * 从 offset 开始的独立视图（各线程的读写位置互不影响）
+     *
+     * 经由 ByteBuffer / Buffer 调用 duplicate 与 position：JDK 9+ 编译时会绑定到子类的协变重载，
+     * 在 Java 8 运行时上抛出 NoSuchMethodError。
+     */
+    private ByteBuffer viewAt(int offset) {
+        ByteBuffer view = ((ByteBuffer) buffer).duplicate();
+        ((Buffer) view).position(offset);
+        return view;
+    }
+
+    /**
+     * 把槽位内容复制到 slot，校验通过时返回记录长度；空槽位返回 0，校验失败返回 -1
+     */
+    private int readSlot(int index, byte[] slot) {
+        ByteBuffer view = viewAt(HEADER_SIZE + index * slotSize);
+        view.get(slot, 0, SLOT_HEADER);
+        int stored = ByteBuffer.wrap(slot, 0, SLOT_HEADER).getInt();
+        if (stored == 0) {
+            return 0;
+        }
+        int length = ((slot[4] & 0xFF) << 8) | (slot[5] & 0xFF);
+        if (length < RECORD_FIXED || length > slotSize - SLOT_HEADER) {
+            return -1;
+        }
+        view.get(slot, SLOT_HEADER, length);
+        return checksum(slot, length) == stored ? length : -1;
+    }
+
+    private int recordLength(String tweak, String input) {
+        if (tweak.length() > Short.MAX_VALUE || input.length() > Short.MAX_VALUE) {
+            return -1;
+        }
+        long length = RECORD_FIXED + 2L * tweak.length() + 4L * input.length();
+        return length > slotSize - SLOT_HEADER ? -1 : (int) length;
+    }
+
+    private int home(long hash) {
+        return (int) ((hash >>> 1) % slotCount);
+    }
+
+    private static boolean matches(byte[] slot, long fingerprint, boolean forEncryption, String tweak,
+                                   int headPreserve, int tailPreserve, String input) {
+        ByteBuffer record = ByteBuffer.wrap(slot, SLOT_HEADER, slot.length - SLOT_HEADER);
+        if (record.getLong() != fingerprint || record.get() != (forEncryption ? 1 : 0)
+                || record.getInt() != headPreserve || record.getInt() != tailPreserve
+                || record.getShort() != tweak.length() || record.getShort() != input.length()) {
+            return false;
+        }
+        return charsEqual(record, tweak) && charsEqual(record, input);
+    }
+
+    private static String readOutput(byte[] slot, int tweakLength, int inputLength) {
+        ByteBuffer record = ByteBuffer.wrap(slot,
+            SLOT_HEADER + RECORD_FIXED + 2 * (tweakLength + inputLength), 2 * inputLength);
+        char[] chars = new char[inputLength];
+        record.asCharBuffer().get(chars);
+        return new String(chars);
+    }
+
+    private static boolean charsEqual(ByteBuffer record, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (record.getChar() != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putChars(ByteBuffer record, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            record.putChar(s.charAt(i));
+        }
+    }
+
+    /**
+     * 记录长度与内容的 CRC32（0 保留给空槽位）
+     */
+    private static int checksum(byte[] slot, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(slot, 4, 2 + length);
+        int value = (int) crc.getValue();
+        return value == 0 ? 1 : value;
+    }
+
+    /**
+     * 键的 64 位 FNV-1a 哈希（与进程无关，所有 JVM 得到相同的槽位）
+     */
+    private static long hash(long fingerprint, boolean forEncryption, String tweak, int headPreserve,
+                             int tailPreserve, String input) {
+        long h = 0xcbf29ce484222325L ^ fingerprint;
+        h = (h ^ (forEncryption ? 1 : 2)) * 0x100000001b3L;
+        h = (h ^ headPreserve) * 0x100000001b3L;
+        h = (h ^ tailPreserve) * 0x100000001b3L;
+        for (int i = 0; i < tweak.length(); i++) {
+            h = (h ^ tweak.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ 0xFFFF) * 0x100000001b3L;
+        for (int i = 0; i < input.length(); i++) {
+            h = (h ^ input.charAt(i)) * 0x100000001b3L;
+        }
+        // 最终混合，使低位也依赖全部输入
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,178 @@
+package cn.lihongjie.unimask;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 流式脱敏输入
+ *
+ * 从底层 Reader 读取文本，按 {@link FieldMasker} 的分隔符切分字段，读出的是加/解密后的结果。
+ * 只缓存当前字段和一个固定大小的读缓冲区，内存占用与流的总长度无关。
+ * 字段超过 maxFieldLength 时抛出 IOException。
+ *
+ * <pre>
+ * FieldMasker unmasker = new FieldMasker(service, false, "export", 1, 0);
+ * try (BufferedReader in = new BufferedReader(new MaskingReader(Files.newBufferedReader(path), unmasker))) {
+ *     String line;
+ *     while ((line = in.readLine()) != null) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * 非线程安全。
+ *
+ * @author lihongjie
+ */
+public class MaskingReader extends Reader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+
+    private final FieldMasker masker;
+
+    /** 底层输入的读缓冲区 */
+    private final char[] input = new char[BUFFER_SIZE];
+
+    private int inputPos;
+
+    private int inputLimit;
+
+    private boolean eof;
+
+    /** 当前字段缓冲区，按需增长到 maxFieldLength */
+    private char[] field = new char[256];
+
+    private int fieldLength;
+
+    /** 已处理完毕、等待读出的字段 */
+    private String pending;
+
+    private int pendingPos;
+
+    /** 紧跟在 pending 字段之后的分隔符，-1 表示没有 */
+    private int pendingDelimiter = -1;
+
+    private boolean closed;
+
+    /**
+     * @param in 底层输入
+     * @param masker 字段脱敏规则
+     */
+    public MaskingReader(Reader in, FieldMasker masker) {
+        super(in);
+        if (masker == null) {
+            throw new IllegalArgumentException("masker cannot be null");
+        }
+        this.in = in;
+        this.masker = masker;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            while (n < len) {
+                if (pending != null) {
+                    int count = Math.min(len - n, pending.length() - pendingPos);
+                    pending.getChars(pendingPos, pendingPos + count, cbuf, off + n);
+                    pendingPos += count;
+                    n += count;
+                    if (pendingPos == pending.length()) {
+                        pending = null;
+                    }
+                    continue;
+                }
+                if (pendingDelimiter >= 0) {
+                    cbuf[off + n++] = (char) pendingDelimiter;
+                    pendingDelimiter = -1;
+                    continue;
+                }
+                if (inputPos == inputLimit) {
+                    if (eof) {
+                        if (fieldLength == 0) {
+                            break;
+                        }
+                        completeField(-1);
+                        continue;
+                    }
+                    // 已有数据可返回时不再阻塞等待底层输入
+                    if (n > 0) {
+                        break;
+                    }
+                    int read = in.read(input, 0, input.length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        inputPos = 0;
+                        inputLimit = read;
+                    }
+                    continue;
+                }
+                scanInput();
+            }
+            return n == 0 ? -1 : n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (!closed) {
+                closed = true;
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * 扫描读缓冲区，把非分隔符字符拷入字段，遇到分隔符时完成该字段
+     */
+    private void scanInput() throws IOException {
+        int start = inputPos;
+        for (int i = inputPos; i < inputLimit; i++) {
+            char c = input[i];
+            if (masker.isDelimiter(c)) {
+                appendToField(start, i - start);
+                inputPos = i + 1;
+                completeField(c);
+                return;
+            }
+        }
+        appendToField(start, inputLimit - start);
+        inputPos = inputLimit;
+    }
+
+    private void completeField(int delimiter) {
+        if (fieldLength > 0) {
+            pending = masker.transform(field, 0, fieldLength);
+            pendingPos = 0;
+            fieldLength = 0;
+        }
+        pendingDelimiter = delimiter;
+    }
+
+    private void appendToField(int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        int required = fieldLength + len;
+        if (required > masker.getMaxFieldLength()) {
+            throw new IOException("Field exceeds maximum length of " + masker.getMaxFieldLength() + " characters");
+        }
+        if (required > field.length) {
+            char[] grown = new char[Math.min(Math.max(required, field.length * 2), masker.getMaxFieldLength())];
+            System.arraycopy(field, 0, grown, 0, fieldLength);
+            field = grown;
+        }
+        System.arraycopy(input, off, field, fieldLength, len);
+        fieldLength = required;
+    }
+}
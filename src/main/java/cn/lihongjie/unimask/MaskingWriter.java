@@ -0,0 +1,184 @@
+package cn.lihongjie.unimask;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * 流式脱敏输出
+ *
+ * 写入的文本按 {@link FieldMasker} 的分隔符切分为字段，每个字段完整后加/解密并写入底层 Writer，
+ * 分隔符原样写出。只缓存当前未结束的字段，内存占用不超过 maxFieldLength 个字符。
+ *
+ * 注意：
+ * - {@link #flush()} 只刷新已完成的字段，未遇到分隔符的字段会继续等待
+ * - {@link #close()} 会处理最后一个未以分隔符结尾的字段
+ * - 字段超过 maxFieldLength 时抛出 IOException
+ *
+ * <pre>
+ * FieldMasker masker = new FieldMasker(service, true, "export", 1, 0);
+ * try (Writer out = new MaskingWriter(Files.newBufferedWriter(path), masker)) {
+ *     out.write("张三,李四\n");
+ * }
+ * </pre>
+ *
+ * 非线程安全。
+ *
+ * @author lihongjie
+ */
+public class MaskingWriter extends Writer {
+
+    private final Writer out;
+
+    private final FieldMasker masker;
+
+    /** 当前字段缓冲区，按需增长到 maxFieldLength */
+    private char[] field = new char[256];
+
+    /** 字段缓冲区的只读视图，作为加/解密的输入 */
+    private CharBuffer fieldView = CharBuffer.wrap(field);
+
+    private int fieldLength;
+
+    private boolean closed;
+
+    /**
+     * @param out 底层输出
+     * @param masker 字段脱敏规则
+     */
+    public MaskingWriter(Writer out, FieldMasker masker) {
+        super(out);
+        if (masker == null) {
+            throw new IllegalArgumentException("masker cannot be null");
+        }
+        this.out = out;
+        this.masker = masker;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            char ch = (char) c;
+            if (masker.isDelimiter(ch)) {
+                emitField();
+                out.write(ch);
+            } else {
+                reserve(1);
+                field[fieldLength++] = ch;
+            }
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            int end = off + len;
+            // 连续的非分隔符字符整段拷贝进字段缓冲区
+            int runStart = off;
+            for (int i = off; i < end; i++) {
+                char c = cbuf[i];
+                if (masker.isDelimiter(c)) {
+                    appendToField(cbuf, runStart, i - runStart);
+                    emitField();
+                    out.write(c);
+                    runStart = i + 1;
+                }
+            }
+            appendToField(cbuf, runStart, end - runStart);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            int end = off + len;
+            // 与 char[] 重载相同，连续的非分隔符字符直接从字符串拷贝进字段缓冲区
+            int runStart = off;
+            for (int i = off; i < end; i++) {
+                char c = str.charAt(i);
+                if (masker.isDelimiter(c)) {
+                    appendToField(str, runStart, i);
+                    emitField();
+                    out.write(c);
+                    runStart = i + 1;
+                }
+            }
+            appendToField(str, runStart, end);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                emitField();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private void appendToField(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        reserve(len);
+        System.arraycopy(cbuf, off, field, fieldLength, len);
+        fieldLength += len;
+    }
+
+    private void appendToField(String str, int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+        reserve(end - start);
+        str.getChars(start, end, field, fieldLength);
+        fieldLength += end - start;
+    }
+
+    /**
+     * 确保字段缓冲区还能容纳 len 个字符
+     */
+    private void reserve(int len) throws IOException {
+        int required = fieldLength + len;
+        if (required > masker.getMaxFieldLength()) {
+            throw new IOException("Field exceeds maximum length of " + masker.getMaxFieldLength() + " characters");
+        }
+        if (required > field.length) {
+            char[] grown = new char[Math.min(Math.max(required, field.length * 2), masker.getMaxFieldLength())];
+            System.arraycopy(field, 0, grown, 0, fieldLength);
+            field = grown;
+            fieldView = CharBuffer.wrap(field);
+        }
+    }
+
+    private void emitField() throws IOException {
+        if (fieldLength > 0) {
+            // 结果长度与字段相同，直接写回字段缓冲区
+            masker.transform(fieldView, 0, fieldLength, field, 0);
+            out.write(field, 0, fieldLength);
+            fieldLength = 0;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 主密钥（HKDF-SHA256 子密钥派生）
+ *
+ * 多租户场景下无需为每个租户执行一次 PBKDF2：只对主密码执行一次 PBKDF2（或直接使用随机生成的
+ * 32 字节主密钥），再用 HKDF-SHA256（RFC 5869）为每个租户、每一列派生独立的子密钥。
+ * HKDF 只需要几次 HMAC 运算（微秒级），上万个租户的初始化可以在毫秒级完成。
+ *
+ * - 构造时执行一次 HKDF-Extract，只保存伪随机密钥（PRK），不保存原始主密钥
+ * - 子密钥由上下文标签（如租户 ID、列名）通过 HKDF-Expand 派生，不同标签的子密钥相互独立
+ * - 标签按长度前缀编码，("a:b", "c") 与 ("a", "b:c") 不会得到相同的子密钥
+ *
+ * <pre>
+ * MasterKey master = MasterKey.fromPassword(masterPassword, KdfParameters.DEFAULT);
+ * ChineseFPEService tenantService = master.createService("tenant-42");
+ * ChineseFPEService phoneColumn = master.createService("tenant-42", "phone");
+ * </pre>
+ *
+ * 实例不可变、线程安全。
+ *
+ * @author lihongjie
+ */
+public final class MasterKey {
+
+    /** 默认 HKDF 盐值 */
+    private static final byte[] DEFAULT_SALT = "UniMaskHKDF2026".getBytes(StandardCharsets.UTF_8);
+
+    /** info 前缀，区分本库派生的子密钥与其他用途 */
+    private static final byte[] INFO_PREFIX = "unimask-fpe-subkey".getBytes(StandardCharsets.UTF_8);
+
+    /** HKDF-Extract 得到的伪随机密钥 */
+    private final byte[] prk;
+
+    /**
+     * 使用原始主密钥创建（默认盐值）
+     *
+     * @param key 主密钥（至少 16 字节，建议 32 字节随机值）
+     */
+    public MasterKey(byte[] key) {
+        this(key, DEFAULT_SALT);
+    }
+
+    /**
+     * 使用原始主密钥和自定义 HKDF 盐值创建
+     *
+     * @param key 主密钥（至少 16 字节，建议 32 字节随机值）
+     * @param salt HKDF 盐值（可以为空数组）
+     */
+    public MasterKey(byte[] key, byte[] salt) {
+        if (key == null || key.length < 16) {
+            throw new IllegalArgumentException("Master key must be at least 16 bytes");
+        }
+        if (salt == null) {
+            throw new IllegalArgumentException("salt cannot be null");
+        }
+        this.prk = extract(salt, key);
+    }
+
+    /**
+     * 从主密码派生主密钥（只执行一次 PBKDF2）
+     *
+     * @param password 主密码
+     * @param kdfParameters 密钥派生参数，密钥长度建议使用 32
+     */
+    public static MasterKey fromPassword(String password, KdfParameters kdfParameters) {
+        if (kdfParameters == null) {
+            throw new IllegalArgumentException("kdfParameters cannot be null");
+        }
+        byte[] key = kdfParameters.deriveKey(password);
+        try {
+            return new MasterKey(key);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * 派生子密钥
+     *
+     * @param keyLength 密钥长度（16、24 或 32 字节）
+     * @param context 上下文标签（如租户 ID、列名），至少一个
+     * @return 子密钥
+     */
+    public byte[] deriveSubkey(int keyLength, String... context) {
+        if (keyLength != 16 && keyLength != 24 && keyLength != 32) {
+            throw new IllegalArgumentException(
+                "Key length must be 16, 24, or 32 bytes (128, 192, or 256 bits)");
+        }
+        if (context == null || context.length == 0) {
+            throw new IllegalArgumentException("At least one context label is required");
+        }
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(HKDFParameters.skipExtractParameters(prk, info(keyLength, context)));
+        byte[] subkey = new byte[keyLength];
+        hkdf.generateBytes(subkey, 0, keyLength);
+        return subkey;
+    }
+
+    /**
+     * 使用 AES-128 子密钥创建服务
+     *
+     * @param context 上下文标签（如租户 ID、列名），至少一个
+     */
+    public ChineseFPEService createService(String... context) {
+        return createService(16, context);
+    }
+
+    /**
+     * 使用指定长度的子密钥创建服务
+     *
+     * @param keyLength 密钥长度（16、24 或 32 字节）
+     * @param context 上下文标签（如租户 ID、列名），至少一个
+     */
+    public ChineseFPEService createService(int keyLength, String... context) {
+        byte[] subkey = deriveSubkey(keyLength, context);
+        try {
+            return new ChineseFPEService(subkey);
+        } finally {
+            // 服务内部保存副本
+            Arrays.fill(subkey, (byte) 0);
+        }
+    }
+
+    /**
+     * HKDF-Extract：PRK = HMAC-SHA256(salt, IKM)
+     */
+    static byte[] extract(byte[] salt, byte[] ikm) {
+        HMac hmac = new HMac(new SHA256Digest());
+        // RFC 5869：未提供盐值时使用 HashLen 个零字节
+        hmac.init(new KeyParameter(salt.length == 0 ? new byte[hmac.getMacSize()] : salt));
+        hmac.update(ikm, 0, ikm.length);
+        byte[] prk = new byte[hmac.getMacSize()];
+        hmac.doFinal(prk, 0);
+        return prk;
+    }
+
+    /**
+     * info = 前缀 || 密钥长度 || (标签长度 || 标签)*
+     */
+    private static byte[] info(int keyLength, String[] context) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(INFO_PREFIX, 0, INFO_PREFIX.length);
+        out.write(keyLength);
+        for (String label : context) {
+            if (label == null) {
+                throw new IllegalArgumentException("Context labels cannot be null");
+            }
+            byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes.length >>> 24);
+            out.write(bytes.length >>> 16);
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,304 @@
+package cn.lihongjie.unimask;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 LongAdder 的指标记录器
+ *
+ * 无锁、无分配，适合在高并发热路径上使用；通过 {@link #snapshot()} 取得快照后导出到
+ * 自己的监控系统。直方图按 2 的幂分桶：第 0 桶为 0，第 i 桶（i ≥ 1）为 [2^(i-1), 2^i)。
+ *
+ * <pre>
+ * MetricsRecorder recorder = new MetricsRecorder();
+ * ChineseFPEService service = new ChineseFPEService(password, kdfParameters, recorder);
+ * ...
+ * MetricsRecorder.Snapshot snapshot = recorder.snapshot();
+ * snapshot.getCalls(FPEMetrics.Path.FPE);
+ * snapshot.getLatencyPercentile(0.99);
+ * </pre>
+ *
+ * @author lihongjie
+ */
+public final class MetricsRecorder implements FPEMetrics {
+
+    /** 中间长度直方图的桶数（最后一桶为 2^15 及以上） */
+    static final int LENGTH_BUCKETS = 17;
+
+    /** 耗时直方图的桶数（最后一桶为 2^39 ns，约 9 分钟及以上） */
+    static final int LATENCY_BUCKETS = 41;
+
+    private static final Path[] PATHS = Path.values();
+
+    /** [加密 0 / 解密 1][路径] 调用次数 */
+    private final LongAdder[][] calls = new LongAdder[2][PATHS.length];
+
+    private final LongAdder[] middleLengths = newAdders(LENGTH_BUCKETS);
+
+    /** [加密 0 / 解密 1] 原样保留的字符数 */
+    private final LongAdder[] skippedChars = newAdders(2);
+
+    private final LongAdder[] latencies = newAdders(LATENCY_BUCKETS);
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder sharedCacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private final LongAdder keyDerivations = new LongAdder();
+
+    private final LongAdder keyDerivationNanos = new LongAdder();
+
+    public MetricsRecorder() {
+        calls[0] = newAdders(PATHS.length);
+        calls[1] = newAdders(PATHS.length);
+    }
+
+    @Override
+    public void recordTransform(boolean forEncryption, Path path, int middleLength, int skippedChars, long nanos) {
+        calls[forEncryption ? 0 : 1][path.ordinal()].increment();
+        middleLengths[bucket(middleLength, LENGTH_BUCKETS)].increment();
+        if (skippedChars > 0) {
+            this.skippedChars[forEncryption ? 0 : 1].add(skippedChars);
+        }
+        latencies[bucket(nanos, LATENCY_BUCKETS)].increment();
+        totalNanos.add(nanos);
+    }
+
+    @Override
+    public void recordCacheHit(boolean shared) {
+        (shared ? sharedCacheHits : cacheHits).increment();
+    }
+
+    @Override
+    public void recordSkippedChars(boolean forEncryption, int skippedChars) {
+        if (skippedChars > 0) {
+            this.skippedChars[forEncryption ? 0 : 1].add(skippedChars);
+        }
+    }
+
+    @Override
+    public void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void recordKeyDerivation(int iterations, long nanos) {
+        keyDerivations.increment();
+        keyDerivationNanos.add(nanos);
+    }
+
+    /**
+     * 获取当前计数的快照（各计数分别读取，并发更新时彼此之间不保证一致）
+     */
+    public Snapshot snapshot() {
+        long[][] callCounts = new long[2][PATHS.length];
+        for (int d = 0; d < 2; d++) {
+            for (int p = 0; p < PATHS.length; p++) {
+                callCounts[d][p] = calls[d][p].sum();
+            }
+        }
+        return new Snapshot(callCounts, sums(middleLengths), sums(skippedChars), sums(latencies), totalNanos.sum(),
+            cacheHits.sum(), sharedCacheHits.sum(), cacheMisses.sum(), keyDerivations.sum(), keyDerivationNanos.sum());
+    }
+
+    /**
+     * 直方图第 i 桶的下界（含）
+     */
+    public static long bucketLowerBound(int i) {
+        return i == 0 ? 0 : 1L << (i - 1);
+    }
+
+    static int bucket(long value, int buckets) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(value), buckets - 1);
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] result = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            result[i] = adders[i].sum();
+        }
+        return result;
+    }
+
+    /**
+     * 指标快照
+     */
+    public static final class Snapshot {
+
+        private final long[][] calls;
+
+        private final long[] middleLengthHistogram;
+
+        private final long[] skippedChars;
+
+        private final long[] latencyHistogram;
+
+        private final long totalNanos;
+
+        private final long cacheHits;
+
+        private final long sharedCacheHits;
+
+        private final long cacheMisses;
+
+        private final long keyDerivations;
+
+        private final long keyDerivationNanos;
+
+        Snapshot(long[][] calls, long[] middleLengthHistogram, long[] skippedChars, long[] latencyHistogram,
+                 long totalNanos, long cacheHits, long sharedCacheHits, long cacheMisses,
+                 long keyDerivations, long keyDerivationNanos) {
+            this.calls = calls;
+            this.middleLengthHistogram = middleLengthHistogram;
+            this.skippedChars = skippedChars;
+            this.latencyHistogram = latencyHistogram;
+            this.totalNanos = totalNanos;
+            this.cacheHits = cacheHits;
+            this.sharedCacheHits = sharedCacheHits;
+            this.cacheMisses = cacheMisses;
+            this.keyDerivations = keyDerivations;
+            this.keyDerivationNanos = keyDerivationNanos;
+        }
+
+        /**
+         * 某一路径的加解密次数合计
+         */
+        public long getCalls(Path path) {
+            return calls[0][path.ordinal()] + calls[1][path.ordinal()];
+        }
+
+        /**
+         * 某一方向、某一路径的次数
+         */
+        public long getCalls(boolean forEncryption, Path path) {
+            return calls[forEncryption ? 0 : 1][path.ordinal()];
+        }
+
+        /**
+         * 加解密总次数
+         */
+        public long getTotalCalls() {
+            long total = 0;
+            for (long[] direction : calls) {
+                for (long count : direction) {
+                    total += count;
+                }
+            }
+            return total;
+        }
+
+        /**
+         * 中间部分长度直方图（下标含义见 {@link MetricsRecorder#bucketLowerBound(int)}）
+         */
+        public long[] getMiddleLengthHistogram() {
+            return Arrays.copyOf(middleLengthHistogram, middleLengthHistogram.length);
+        }
+
+        /**
+         * 加密时因不在字典中而原样保留的字符数（即以明文输出的字符数）
+         */
+        public long getSkippedChars() {
+            return skippedChars[0];
+        }
+
+        /**
+         * 某一方向原样保留的字符数：加密时为字典外字符，解密时为不在密文字符集中的字符
+         */
+        public long getSkippedChars(boolean forEncryption) {
+            return skippedChars[forEncryption ? 0 : 1];
+        }
+
+        /**
+         * 耗时直方图（纳秒，下标含义见 {@link MetricsRecorder#bucketLowerBound(int)}）
+         */
+        public long[] getLatencyHistogram() {
+            return Arrays.copyOf(latencyHistogram, latencyHistogram.length);
+        }
+
+        /**
+         * 平均耗时（纳秒，无调用时为 0）
+         */
+        public double getMeanLatencyNanos() {
+            long total = getTotalCalls();
+            return total == 0 ? 0 : (double) totalNanos / total;
+        }
+
+        /**
+         * 耗时分位数的上界估计：返回 quantile 所在桶的上界（纳秒），无调用时为 0
+         *
+         * @param quantile 0 到 1 之间
+         */
+        public long getLatencyPercentile(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("quantile must be between 0 and 1");
+            }
+            long total = 0;
+            for (long count : latencyHistogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < latencyHistogram.length; i++) {
+                seen += latencyHistogram[i];
+                if (seen >= rank) {
+                    return i == 0 ? 0 : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getSharedCacheHits() {
+            return sharedCacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * PBKDF2 派生次数
+         */
+        public long getKeyDerivations() {
+            return keyDerivations;
+        }
+
+        /**
+         * PBKDF2 派生总耗时（纳秒）
+         */
+        public long getKeyDerivationNanos() {
+            return keyDerivationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot[passthrough=" + getCalls(Path.PASSTHROUGH) + ", singleChar=" + getCalls(Path.SINGLE_CHAR)
+                + ", fpe=" + getCalls(Path.FPE) + ", skippedChars=" + skippedChars[0]
+                + ", meanNanos=" + String.format("%.0f", getMeanLatencyNanos())
+                + ", p99Nanos=" + getLatencyPercentile(0.99)
+                + ", cacheHits=" + cacheHits + ", sharedCacheHits=" + sharedCacheHits + ", cacheMisses=" + cacheMisses
+                + ", keyDerivations=" + keyDerivations + "]";
+        }
+    }
+}
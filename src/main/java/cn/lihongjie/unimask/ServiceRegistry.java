@@ -0,0 +1,559 @@
+package cn.lihongjie.unimask;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 多租户服务注册表
+ *
+ * 为大量租户（各自的密码或密钥）缓存 {@link ChineseFPEService}，避免每次请求都执行 PBKDF2 派生：
+ * - 按密钥材料的指纹缓存：不同租户使用相同密钥时共享同一个服务实例
+ * - 单飞加载：同一指纹的并发首次请求只触发一次派生，其余请求等待同一结果
+ * - 容量上限：超过 maxServices 时按最近访问时间淘汰最久未用的实例
+ * - 空闲淘汰：超过 idleTimeout 未被访问的实例被移除
+ * - 统计：命中、未命中、淘汰、加载失败次数
+ *
+ * 指纹是以注册表随机密钥计算的 HMAC-SHA256，不保存密码或密钥本身，
+ * 指纹也无法脱离当前进程用于离线猜测密码。
+ *
+ * 配置 {@link DerivedKeyStore} 后，从密码派生的密钥会先在存储中查找，未命中时派生并写入存储，
+ * 重启后只需加载存储文件而无需重新执行 PBKDF2（存储的持久化由调用方通过 {@link DerivedKeyStore#save()} 控制）。
+ *
+ * <pre>
+ * ServiceRegistry registry = new ServiceRegistry(10_000, TimeUnit.MINUTES.toMillis(30));
+ * ChineseFPEService service = registry.getService("tenant-42", tenantPassword);
+ * </pre>
+ *
+ * 线程安全。
+ *
+ * @author lihongjie
+ */
+public final class ServiceRegistry {
+
+    /** 默认最大缓存实例数 */
+    public static final int DEFAULT_MAX_SERVICES = 10_000;
+
+    /** 默认空闲超时（30 分钟） */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /** 超过容量时一次淘汰到容量的这个比例，均摊扫描成本 */
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    private final int maxServices;
+
+    private final long idleTimeoutNanos;
+
+    /** 两次空闲扫描的最小间隔 */
+    private final long cleanupIntervalNanos;
+
+    private final LongSupplier clock;
+
+    /** 派生密钥存储，可以为 null */
+    private final DerivedKeyStore keyStore;
+
+    /** 安装到新建实例上的指标回调，同时接收密钥派生耗时 */
+    private final FPEMetrics metrics;
+
+    /** 指纹 HMAC 密钥，每个注册表随机生成 */
+    private final byte[] fingerprintKey;
+
+    private final ConcurrentHashMap<Fingerprint, Entry> services = new ConcurrentHashMap<>();
+
+    /** 租户到指纹的索引 */
+    private final ConcurrentHashMap<String, Fingerprint> tenants = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastCleanup;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    /**
+     * 使用默认容量和空闲超时创建
+     */
+    public ServiceRegistry() {
+        this(DEFAULT_MAX_SERVICES, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxServices 最大缓存实例数
+     * @param idleTimeoutMillis 空闲超时（毫秒），超过该时间未访问的实例会被移除
+     */
+    public ServiceRegistry(int maxServices, long idleTimeoutMillis) {
+        this(maxServices, idleTimeoutMillis, null, System::nanoTime);
+    }
+
+    /**
+     * @param maxServices 最大缓存实例数
+     * @param idleTimeoutMillis 空闲超时（毫秒），超过该时间未访问的实例会被移除
+     * @param keyStore 派生密钥存储，从密码派生的密钥优先从中读取
+     */
+    public ServiceRegistry(int maxServices, long idleTimeoutMillis, DerivedKeyStore keyStore) {
+        this(maxServices, idleTimeoutMillis, keyStore, FPEMetrics.NOOP, System::nanoTime);
+    }
+
+    /**
+     * @param maxServices 最大缓存实例数
+     * @param idleTimeoutMillis 空闲超时（毫秒），超过该时间未访问的实例会被移除
+     * @param keyStore 派生密钥存储，可以为 null
+     * @param metrics 指标回调，安装到注册表创建的每个实例上，并接收密钥派生耗时
+     */
+    public ServiceRegistry(int maxServices, long idleTimeoutMillis, DerivedKeyStore keyStore, FPEMetrics metrics) {
+        this(maxServices, idleTimeoutMillis, keyStore, metrics, System::nanoTime);
+    }
+
+    ServiceRegistry(int maxServices, long idleTimeoutMillis, LongSupplier clock) {
+        this(maxServices, idleTimeoutMillis, null, FPEMetrics.NOOP, clock);
+    }
+
+    ServiceRegistry(int maxServices, long idleTimeoutMillis, DerivedKeyStore keyStore, LongSupplier clock) {
+        this(maxServices, idleTimeoutMillis, keyStore, FPEMetrics.NOOP, clock);
+    }
+
+    ServiceRegistry(int maxServices, long idleTimeoutMillis, DerivedKeyStore keyStore, FPEMetrics metrics,
+                    LongSupplier clock) {
+        if (maxServices < 1) {
+            throw new IllegalArgumentException("maxServices must be positive");
+        }
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+        this.maxServices = maxServices;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.cleanupIntervalNanos = Math.max(1, idleTimeoutNanos / 4);
+        this.clock = clock;
+        this.keyStore = keyStore;
+        this.metrics = metrics;
+        this.fingerprintKey = new byte[32];
+        new SecureRandom().nextBytes(fingerprintKey);
+        this.lastCleanup = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * 获取使用给定密钥的服务
+     *
+     * @param tenantId 租户标识
+     * @param key AES 密钥（16、24 或 32 字节）
+     */
+    public ChineseFPEService getService(String tenantId, byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+        byte[] copy = Arrays.copyOf(key, key.length);
+        return getService(tenantId, fingerprint("key", copy), () -> withMetrics(new ChineseFPEService(copy)));
+    }
+
+    /**
+     * 获取使用密码派生密钥（默认盐值，AES-128）的服务
+     *
+     * 与 {@code getService(tenantId, password, KdfParameters.DEFAULT)} 共享同一个实例。
+     *
+     * @param tenantId 租户标识
+     * @param password 租户密码
+     */
+    public ChineseFPEService getService(String tenantId, String password) {
+        return getService(tenantId, password, KdfParameters.DEFAULT);
+    }
+
+    /**
+     * 获取使用密码和自定义盐值派生密钥的服务
+     *
+     * 使用默认迭代次数，与参数相同的 {@link KdfParameters} 重载共享同一个实例。
+     *
+     * @param tenantId 租户标识
+     * @param password 租户密码
+     * @param salt 盐值（至少 8 字节）
+     * @param keyLength 密钥长度（16、24 或 32）
+     */
+    public ChineseFPEService getService(String tenantId, String password, byte[] salt, int keyLength) {
+        if (password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Password cannot be null or empty");
+        }
+        return getService(tenantId, password, new KdfParameters(salt, KdfParameters.DEFAULT_ITERATIONS, keyLength));
+    }
+
+    /**
+     * 获取按指定参数从密码派生密钥的服务
+     *
+     * 所有从密码派生的重载都按派生参数和密码计算指纹，参数相同的请求共享一个实例和一次派生。
+     *
+     * @param tenantId 租户标识
+     * @param password 租户密码
+     * @param kdfParameters 密钥派生参数
+     */
+    public ChineseFPEService getService(String tenantId, String password, KdfParameters kdfParameters) {
+        Fingerprint fingerprint = kdfFingerprint(password, kdfParameters);
+        return getService(tenantId, fingerprint, () -> newService(password, kdfParameters));
+    }
+
+    /**
+     * 异步获取按指定参数从密码派生密钥的服务
+     *
+     * 命中缓存时返回已完成的 future；未命中时在 {@link ChineseFPEService#createAsync(String, KdfParameters)}
+     * 的密钥派生线程池上派生，调用线程不会阻塞。同一密钥的并发请求共享一次派生。
+     *
+     * @param tenantId 租户标识
+     * @param password 租户密码
+     * @param kdfParameters 密钥派生参数
+     */
+    public CompletableFuture<ChineseFPEService> getServiceAsync(String tenantId, String password,
+                                                                KdfParameters kdfParameters) {
+        Fingerprint fingerprint = kdfFingerprint(password, kdfParameters);
+        Entry entry = acquire(tenantId, fingerprint, () -> newServiceAsync(password, kdfParameters));
+        // 返回副本，避免调用方完成或取消共享的 future
+        return entry.future.thenApply(service -> service);
+    }
+
+    /**
+     * 获取租户当前缓存的服务
+     *
+     * @return 服务实例；租户未注册或已被淘汰时返回 null
+     */
+    public ChineseFPEService getService(String tenantId) {
+        Fingerprint fingerprint = tenants.get(tenantId);
+        Entry entry = fingerprint == null ? null : services.get(fingerprint);
+        if (entry == null || !entry.future.isDone() || entry.future.isCompletedExceptionally()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = clock.getAsLong();
+        return entry.future.join();
+    }
+
+    /**
+     * 移除租户的注册信息
+     * 服务实例在其他租户仍使用相同密钥时保留，否则在淘汰时回收
+     */
+    public void invalidate(String tenantId) {
+        tenants.remove(tenantId);
+    }
+
+    /**
+     * 移除所有缓存
+     */
+    public void invalidateAll() {
+        tenants.clear();
+        services.clear();
+    }
+
+    /**
+     * 当前缓存的服务实例数
+     */
+    public int size() {
+        return services.size();
+    }
+
+    /**
+     * 立即执行一次空闲淘汰
+     */
+    public void cleanUp() {
+        long now = clock.getAsLong();
+        lastCleanup.set(now);
+        for (Map.Entry<Fingerprint, Entry> e : services.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.future.isDone() && now - entry.lastAccess > idleTimeoutNanos
+                    && services.remove(e.getKey(), entry)) {
+                evictions.increment();
+            }
+        }
+        // 清理指向已淘汰实例的租户索引
+        tenants.values().removeIf(fingerprint -> !services.containsKey(fingerprint));
+    }
+
+    /**
+     * 获取统计信息快照
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), loadFailures.sum(), services.size());
+    }
+
+    private ChineseFPEService withMetrics(ChineseFPEService service) {
+        service.setMetrics(metrics);
+        return service;
+    }
+
+    private ChineseFPEService newService(String password, KdfParameters kdfParameters) {
+        if (keyStore == null) {
+            return new ChineseFPEService(password, kdfParameters, metrics);
+        }
+        return withMetrics(new ChineseFPEService(keyStore.deriveKey(password, kdfParameters, metrics)));
+    }
+
+    private CompletableFuture<ChineseFPEService> newServiceAsync(String password, KdfParameters kdfParameters) {
+        if (keyStore == null) {
+            return ChineseFPEService.createAsync(password, kdfParameters, metrics);
+        }
+        byte[] key = keyStore.get(password, kdfParameters);
+        if (key != null) {
+            return CompletableFuture.completedFuture(withMetrics(new ChineseFPEService(key)));
+        }
+        return ChineseFPEService.createAsync(password, kdfParameters, metrics).thenApply(service -> {
+            keyStore.put(password, kdfParameters, service.getKey());
+            return service;
+        });
+    }
+
+    private ChineseFPEService getService(String tenantId, Fingerprint fingerprint,
+                                         Supplier<ChineseFPEService> loader) {
+        Entry entry = acquire(tenantId, fingerprint, () -> {
+            try {
+                return CompletableFuture.completedFuture(loader.get());
+            } catch (RuntimeException | Error e) {
+                CompletableFuture<ChineseFPEService> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        });
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 查找或创建条目；当前线程创建了条目时负责启动加载，其他线程共享同一个 future
+     */
+    private Entry acquire(String tenantId, Fingerprint fingerprint,
+                          Supplier<CompletableFuture<ChineseFPEService>> loader) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId cannot be null");
+        }
+        long now = clock.getAsLong();
+
+        Entry entry = services.get(fingerprint);
+        if (entry != null) {
+            hits.increment();
+            entry.lastAccess = now;
+        } else {
+            Entry created = new Entry(now);
+            entry = services.putIfAbsent(fingerprint, created);
+            if (entry == null) {
+                misses.increment();
+                entry = created;
+                load(fingerprint, created, loader);
+                evictIfNecessary(now);
+            } else {
+                hits.increment();
+                entry.lastAccess = now;
+            }
+        }
+
+        tenants.put(tenantId, fingerprint);
+        if (now - lastCleanup.get() > cleanupIntervalNanos) {
+            cleanUp();
+        }
+        return entry;
+    }
+
+    private void load(Fingerprint fingerprint, Entry entry, Supplier<CompletableFuture<ChineseFPEService>> loader) {
+        CompletableFuture<ChineseFPEService> result;
+        try {
+            result = loader.get();
+        } catch (RuntimeException | Error e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((service, error) -> {
+            if (error == null) {
+                entry.future.complete(service);
+            } else {
+                // 加载失败不缓存，后续请求重新尝试
+                loadFailures.increment();
+                services.remove(fingerprint, entry);
+                entry.future.completeExceptionally(
+                    error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        });
+    }
+
+    /**
+     * 超过容量时按最近访问时间淘汰，一次淘汰到容量的 90%，均摊扫描成本
+     */
+    private void evictIfNecessary(long now) {
+        int excess = services.size() - maxServices;
+        if (excess <= 0) {
+            return;
+        }
+        int target = (int) (maxServices * EVICTION_TARGET_RATIO);
+        List<Map.Entry<Fingerprint, Entry>> candidates = new ArrayList<>(services.size());
+        for (Map.Entry<Fingerprint, Entry> e : services.entrySet()) {
+            if (e.getValue().future.isDone()) {
+                candidates.add(e);
+            }
+        }
+        // 排序期间 lastAccess 可能被并发更新，先取快照保证比较器一致
+        long[][] order = new long[candidates.size()][2];
+        for (int i = 0; i < order.length; i++) {
+            order[i][0] = now - candidates.get(i).getValue().lastAccess;
+            order[i][1] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(b[0], a[0]));
+        for (long[] item : order) {
+            if (services.size() <= target) {
+                break;
+            }
+            Map.Entry<Fingerprint, Entry> e = candidates.get((int) item[1]);
+            if (services.remove(e.getKey(), e.getValue())) {
+                evictions.increment();
+            }
+        }
+        tenants.values().removeIf(fingerprint -> !services.containsKey(fingerprint));
+    }
+
+    private Fingerprint kdfFingerprint(String password, KdfParameters kdfParameters) {
+        if (password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Password cannot be null or empty");
+        }
+        if (kdfParameters == null) {
+            throw new IllegalArgumentException("kdfParameters cannot be null");
+        }
+        byte[] salt = kdfParameters.getSalt();
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        byte[] material = ByteBuffer.allocate(12 + salt.length + passwordBytes.length)
+            .putInt(kdfParameters.getKeyLength()).putInt(kdfParameters.getIterations())
+            .putInt(salt.length).put(salt).put(passwordBytes).array();
+        return fingerprint("kdf", material);
+    }
+
+    private Fingerprint fingerprint(String type, byte[] material) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(fingerprintKey, "HmacSHA256"));
+            mac.update(type.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return new Fingerprint(mac.doFinal(material));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to compute key fingerprint", e);
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+
+        final CompletableFuture<ChineseFPEService> future = new CompletableFuture<>();
+
+        /** 最近访问时间（纳秒），并发更新时只要求近似 */
+        volatile long lastAccess;
+
+        Entry(long now) {
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * 密钥材料指纹
+     */
+    private static final class Fingerprint {
+
+        private final byte[] value;
+
+        private final int hash;
+
+        Fingerprint(byte[] value) {
+            this.value = value;
+            this.hash = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint && Arrays.equals(value, ((Fingerprint) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 统计信息快照
+     */
+    public static final class Stats {
+
+        private final long hitCount;
+
+        private final long missCount;
+
+        private final long evictionCount;
+
+        private final long loadFailureCount;
+
+        private final int size;
+
+        Stats(long hitCount, long missCount, long evictionCount, long loadFailureCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.loadFailureCount = loadFailureCount;
+            this.size = size;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * 命中率（无请求时为 1.0）
+         */
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 1.0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                + ", loadFailures=" + loadFailureCount + ", size=" + size + "]";
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package cn.lihongjie.unimask;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 预计算的扰码（tweak）
+ *
+ * 通过 {@link ChineseFPEService#createTweak(String)} 创建，与创建它的服务实例绑定。
+ * 实际业务中少量 tweak（如 "name"、"phone"、"address"）覆盖了绝大多数调用，
+ * 因此把所有只依赖 tweak（以及服务密钥）的中间结果缓存在该对象中：
+ * - tweak 的 UTF-8 编码
+ * - 单字符加密使用的偏移量（SHA-256(key || tweak)）
+ * - 各长度下 FF1 的 CBC-MAC 前缀状态（CIPH(P) 及只含 tweak 的 Q 块），按需计算
+ * - FF3-1 使用的 56 位 tweak（SHA-256(UTF-8) 的前 7 字节），按需计算
+ *
+ * 线程安全：不可变字段在构造时计算，前缀状态的延迟填充是无害竞争（结果确定）。
+ *
+ * @author lihongjie
+ */
+public final class Tweak {
+
+    /** 缓存 FF1 前缀状态的最大数字串长度，更长的输入每次现场计算 */
+    static final int MAX_CACHED_LENGTH = 128;
+
+    /** 创建该 tweak 的服务实例（前缀状态依赖其密钥） */
+    private final ChineseFPEService owner;
+
+    /** 原始字符串 */
+    private final String value;
+
+    /** UTF-8 编码 */
+    private final byte[] bytes;
+
+    /** 单字符加密偏移量 */
+    private final int shift;
+
+    /** 按数字串长度索引的 FF1 前缀状态 */
+    private final AtomicReferenceArray<byte[]> ff1Prefixes = new AtomicReferenceArray<>(MAX_CACHED_LENGTH + 1);
+
+    /** FF3-1 的 7 字节 tweak */
+    private volatile byte[] ff3Bytes;
+
+    Tweak(ChineseFPEService owner, String value, int shift) {
+        this.owner = owner;
+        this.value = value;
+        this.bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.shift = shift;
+    }
+
+    /**
+     * 获取 tweak 的原始字符串
+     */
+    public String getValue() {
+        return value;
+    }
+
+    ChineseFPEService getOwner() {
+        return owner;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getShift() {
+        return shift;
+    }
+
+    /**
+     * 获取长度为 n 时的 FF1 前缀状态，首次访问时使用给定引擎计算
+     *
+     * @return 前缀状态；长度超出缓存范围时返回 null（由引擎现场计算）
+     */
+    byte[] ff1Prefix(FF1Engine engine, int n) {
+        if (n > MAX_CACHED_LENGTH) {
+            return null;
+        }
+        byte[] prefix = ff1Prefixes.get(n);
+        if (prefix == null) {
+            prefix = engine.computePrefix(bytes, n);
+            ff1Prefixes.lazySet(n, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * 获取 FF3-1 使用的 7 字节 tweak，首次访问时计算
+     */
+    byte[] ff3Bytes() {
+        byte[] result = ff3Bytes;
+        if (result == null) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+                result = Arrays.copyOf(hash, FF31Engine.TWEAK_LENGTH);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-256 algorithm not available", e);
+            }
+            ff3Bytes = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Tweak[" + value + "]";
+    }
+}
@@ -0,0 +1,357 @@
+package cn.lihongjie.unimask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 字典外字符统计
+ *
+ * 加密时不在 {@link CharacterMapping} 中的字符会原样保留（即明文泄露）。该收集器按 tweak 统计
+ * 这些字符（按码点，代理对合并为一个补充平面字符），用于根据真实数据扩充字典，
+ * 替代在生产环境打开逐字符的 debug 日志。
+ *
+ * <pre>
+ * UnmappedCharCollector collector = new UnmappedCharCollector();
+ * service.setUnmappedCharCollector(collector);
+ * ...
+ * logger.info(collector.dump());
+ * collector.getTopChars("address"); // [U+2460(①)=1532, U+00B7(·)=870, ...]
+ * </pre>
+ *
+ * 实现要点：
+ * - 每个 tweak 一张固定大小的开放寻址表（AtomicLongArray，码点和计数打包在同一个 long 中），
+ *   计数和占用空槽都是单次 CAS，无锁、记录时无分配
+ * - 探测窗口内既没有该字符也没有空槽时，按 Space-Saving 替换窗口内计数最小的槽，新字符继承其计数加一：
+ *   高频字符不会被挤出，代价是被替换过的槽计数偏大（上界为被替换者的计数）
+ * - tweak 数量有上限，超出后的 tweak 合并统计到溢出表（{@link #getOverflowTopChars()}）
+ * - 可按 1/sampleRate 概率抽样记录，报告的计数乘回 sampleRate
+ *
+ * 线程安全。
+ *
+ * @author lihongjie
+ */
+public final class UnmappedCharCollector {
+
+    /** 默认每个 tweak 报告的字符数 */
+    public static final int DEFAULT_TOP_N = 64;
+
+    /** 默认最多单独统计的 tweak 数 */
+    public static final int DEFAULT_MAX_TWEAKS = 1024;
+
+    /** 探测窗口大小 */
+    private static final int PROBES = 8;
+
+    /** 计数占用的低位数 */
+    private static final int COUNT_BITS = 42;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int topN;
+
+    private final int maxTweaks;
+
+    private final int sampleRate;
+
+    private final ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<>();
+
+    private volatile Table overflow;
+
+    /**
+     * 使用默认参数：每个 tweak 报告前 64 个字符，最多 1024 个 tweak，不抽样
+     */
+    public UnmappedCharCollector() {
+        this(DEFAULT_TOP_N, DEFAULT_MAX_TWEAKS, 1);
+    }
+
+    /**
+     * @param topN 每个 tweak 报告的字符数（内部保留 4 倍的槽位以减少替换）
+     * @param maxTweaks 最多单独统计的 tweak 数
+     * @param sampleRate 抽样率，每个字符以 1/sampleRate 的概率被记录（1 表示全部记录）
+     */
+    public UnmappedCharCollector(int topN, int maxTweaks, int sampleRate) {
+        if (topN < 1 || topN > (1 << 16)) {
+            throw new IllegalArgumentException("topN must be between 1 and 65536");
+        }
+        if (maxTweaks < 1) {
+            throw new IllegalArgumentException("maxTweaks must be positive");
+        }
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.topN = topN;
+        this.maxTweaks = maxTweaks;
+        this.sampleRate = sampleRate;
+        this.overflow = new Table(topN);
+    }
+
+    /**
+     * 记录一次字典外字符
+     *
+     * @param tweak tweak 字符串
+     * @param codePoint 码点
+     */
+    public void record(String tweak, int codePoint) {
+        if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT) {
+            throw new IllegalArgumentException("invalid code point: " + codePoint);
+        }
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        tableFor(tweak).increment(codePoint);
+    }
+
+    /**
+     * 记录 text[i] 处的字典外字符（位于 [start, end) 之内）
+     *
+     * 高代理项与其后的低代理项合并为一个码点，在高代理项处记录；低代理项单独出现时按自身记录。
+     */
+    void record(String tweak, CharSequence text, int i, int start, int end) {
+        char c = text.charAt(i);
+        if (Character.isHighSurrogate(c)) {
+            if (i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                record(tweak, Character.toCodePoint(c, text.charAt(i + 1)));
+                return;
+            }
+        } else if (Character.isLowSurrogate(c) && i > start && Character.isHighSurrogate(text.charAt(i - 1))) {
+            return;
+        }
+        record(tweak, c);
+    }
+
+    private Table tableFor(String tweak) {
+        Table table = tables.get(tweak);
+        if (table != null) {
+            return table;
+        }
+        if (tables.size() >= maxTweaks) {
+            return overflow;
+        }
+        table = new Table(topN);
+        Table existing = tables.putIfAbsent(tweak, table);
+        return existing != null ? existing : table;
+    }
+
+    /**
+     * 某个 tweak 下出现次数最多的字典外字符（按次数降序，最多 topN 个）
+     */
+    public List<Entry> getTopChars(String tweak) {
+        Table table = tables.get(tweak);
+        return table == null ? Collections.<Entry>emptyList() : table.top(topN, sampleRate);
+    }
+
+    /**
+     * 超出 tweak 数量上限后合并统计的字典外字符
+     */
+    public List<Entry> getOverflowTopChars() {
+        return overflow.top(topN, sampleRate);
+    }
+
+    /**
+     * 所有单独统计的 tweak 的快照（按 tweak 排序）
+     */
+    public Map<String, List<Entry>> snapshot() {
+        Map<String, List<Entry>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Table> e : new TreeMap<>(tables).entrySet()) {
+            result.put(e.getKey(), e.getValue().top(topN, sampleRate));
+        }
+        return result;
+    }
+
+    /**
+     * 因并发替换反复失败而放弃的记录数（正常情况下为 0）
+     */
+    public long getDroppedCount() {
+        long total = overflow.dropped.sum();
+        for (Table table : tables.values()) {
+            total += table.dropped.sum();
+        }
+        return total;
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        tables.clear();
+        overflow = new Table(topN);
+    }
+
+    /**
+     * 以文本形式导出全部统计，每个 tweak 一行
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<Entry>> e : snapshot().entrySet()) {
+            sb.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        List<Entry> others = getOverflowTopChars();
+        if (!others.isEmpty()) {
+            sb.append("(overflow): ").append(others).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "UnmappedCharCollector[tweaks=" + tables.size() + ", topN=" + topN + ", sampleRate=" + sampleRate + "]";
+    }
+
+    /**
+     * 单个 tweak 的计数表：每个槽为 ((码点 + 1) << 42) | 计数，0 表示空槽
+     */
+    private static final class Table {
+
+        private final AtomicLongArray slots;
+
+        private final int mask;
+
+        /** 并发替换反复失败而放弃的记录数 */
+        private final LongAdder dropped = new LongAdder();
+
+        Table(int topN) {
+            int capacity = Integer.highestOneBit(Math.max(PROBES, topN * 4) - 1) << 1;
+            this.slots = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        void increment(int codePoint) {
+            long key = (long) (codePoint + 1) << COUNT_BITS;
+            int home = mix(codePoint) & mask;
+            // 每次重试都至少有一个其他线程的 CAS 成功，整体无锁；争用极端时有限次后放弃
+            for (int attempt = 0; attempt < PROBES; attempt++) {
+                int minIndex = -1;
+                long minSlot = 0;
+                boolean retry = false;
+                for (int p = 0; p < PROBES; p++) {
+                    int i = (home + p) & mask;
+                    long slot = slots.get(i);
+                    if (slot == 0) {
+                        if (slots.compareAndSet(i, 0, key | 1)) {
+                            return;
+                        }
+                        slot = slots.get(i);
+                    }
+                    if ((slot & ~COUNT_MASK) == key) {
+                        if ((slot & COUNT_MASK) == COUNT_MASK || slots.compareAndSet(i, slot, slot + 1)) {
+                            return;
+                        }
+                        retry = true;
+                        break;
+                    }
+                    if (minIndex < 0 || (slot & COUNT_MASK) < (minSlot & COUNT_MASK)) {
+                        minIndex = i;
+                        minSlot = slot;
+                    }
+                }
+                if (retry) {
+                    continue;
+                }
+                // 窗口已满且没有该字符：Space-Saving 替换计数最小的槽
+                long count = Math.min((minSlot & COUNT_MASK) + 1, COUNT_MASK);
+                if (slots.compareAndSet(minIndex, minSlot, key | count)) {
+                    return;
+                }
+            }
+            dropped.increment();
+        }
+
+        List<Entry> top(int n, int scale) {
+            // 并发替换可能让同一字符短暂占用两个槽，按码点合并
+            Map<Integer, Long> counts = new HashMap<>();
+            for (int i = 0; i < slots.length(); i++) {
+                long slot = slots.get(i);
+                if (slot != 0) {
+                    counts.merge((int) (slot >>> COUNT_BITS) - 1, slot & COUNT_MASK, Long::sum);
+                }
+            }
+            List<Entry> entries = new ArrayList<>(counts.size());
+            for (Map.Entry<Integer, Long> e : counts.entrySet()) {
+                entries.add(new Entry(e.getKey(), e.getValue() * scale));
+            }
+            entries.sort(Comparator.comparingLong(Entry::getCount).reversed()
+                .thenComparingInt(Entry::getCodePoint));
+            return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * 字典外字符及其（估计）出现次数
+     */
+    public static final class Entry {
+
+        private final int codePoint;
+
+        private final long count;
+
+        Entry(int codePoint, long count) {
+            this.codePoint = codePoint;
+            this.count = count;
+        }
+
+        public int getCodePoint() {
+            return codePoint;
+        }
+
+        /**
+         * 字符本身（补充平面字符为两个 char）
+         */
+        public String getCharacter() {
+            return new String(Character.toChars(codePoint));
+        }
+
+        /**
+         * 出现次数；发生过替换或抽样时为估计值
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return codePoint == entry.codePoint && count == entry.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * codePoint + Long.hashCode(count);
+        }
+
+        @Override
+        public String toString() {
+            String hex = Integer.toHexString(codePoint).toUpperCase();
+            StringBuilder sb = new StringBuilder("U+");
+            for (int i = hex.length(); i < 4; i++) {
+                sb.append('0');
+            }
+            sb.append(hex).append('(');
+            if (Character.isISOControl(codePoint) || Character.isWhitespace(codePoint)) {
+                sb.append(' ');
+            } else {
+                sb.appendCodePoint(codePoint);
+            }
+            return sb.append(")=").append(count).toString();
+        }
+    }
+}
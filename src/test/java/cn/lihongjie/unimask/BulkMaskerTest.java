@@ -0,0 +1,130 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BulkMasker 单元测试
+ */
+class BulkMaskerTest {
+
+    private final ChineseFPEService service = new ChineseFPEService("test-password-123");
+
+    @Test
+    void testResultsMatchSequentialOrder() {
+        List<String> names = sampleNames(10_000);
+        BulkMasker masker = new BulkMasker(service, 97, 4);
+
+        List<String> encrypted = masker.encrypt(1, 0, "name", names);
+        assertEquals(names.size(), encrypted.size());
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(service.encrypt(1, 0, "name", names.get(i)), encrypted.get(i), "index " + i);
+        }
+        assertEquals(names, masker.decrypt(encrypted, 1, 0, "name"));
+    }
+
+    @Test
+    void testCallerSuppliedExecutor() {
+        List<String> names = sampleNames(5_000);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BulkMasker masker = new BulkMasker(service, 64, 8, executor);
+            Tweak tweak = service.createTweak("address");
+            List<String> encrypted = masker.encrypt(tweak, 1, 1, names);
+            assertEquals(service.encryptBatch(tweak, 1, 1, names), encrypted);
+            assertEquals(names, masker.decrypt(tweak, encrypted, 1, 1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRejectingExecutorFallsBackToCaller() {
+        List<String> names = sampleNames(1_000);
+        BulkMasker masker = new BulkMasker(service, 10, 4, command -> {
+            throw new RejectedExecutionException();
+        });
+        assertEquals(service.encryptBatch(0, 0, "t", names), masker.encrypt(0, 0, "t", names));
+    }
+
+    @Test
+    void testCalledFromCommonPoolTasks() {
+        List<String> names = sampleNames(2_000);
+        BulkMasker masker = new BulkMasker(service, 50, 4);
+        List<String> expected = service.encryptBatch(0, 0, "name", names);
+        // 每个公共池任务内部再向公共池提交块任务并等待，等待期间不能占满所有工作线程
+        List<String> results = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            List<ForkJoinTask<List<String>>> outer = new ArrayList<>();
+            for (int i = 0; i < ForkJoinPool.getCommonPoolParallelism() * 2 + 2; i++) {
+                outer.add(ForkJoinPool.commonPool().submit(() -> masker.encrypt(0, 0, "name", names)));
+            }
+            List<String> last = null;
+            for (ForkJoinTask<List<String>> task : outer) {
+                last = task.join();
+                assertEquals(expected, last);
+            }
+            return last;
+        });
+        assertEquals(expected, results);
+        assertEquals(expected, assertTimeoutPreemptively(Duration.ofSeconds(60), () ->
+            IntStream.range(0, 8).parallel().mapToObj(i -> masker.encrypt(0, 0, "name", names))
+                .reduce((a, b) -> b).get()));
+    }
+
+    @Test
+    void testStalledExecutorDoesNotBlockCaller() {
+        List<String> names = sampleNames(1_000);
+        // 任务被接受但永远不执行：调用线程处理完所有块后不应等待它们
+        List<Runnable> queued = new ArrayList<>();
+        BulkMasker masker = new BulkMasker(service, 10, 4, queued::add);
+        List<String> encrypted = assertTimeoutPreemptively(Duration.ofSeconds(30),
+            () -> masker.encrypt(0, 0, "t", names));
+        assertEquals(service.encryptBatch(0, 0, "t", names), encrypted);
+        assertEquals(3, queued.size());
+        // 迟到的任务发现没有剩余块，直接返回
+        queued.forEach(Runnable::run);
+        assertEquals(service.encryptBatch(0, 0, "t", names), encrypted);
+    }
+
+    @Test
+    void testSmallInputAndValidation() {
+        BulkMasker masker = new BulkMasker(service);
+        assertTrue(masker.encrypt(0, 0, "t", new ArrayList<>()).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> masker.encrypt(0, 0, "t", null));
+        assertThrows(IllegalArgumentException.class,
+            () -> new BulkMasker(service, 4, 4).encrypt(-1, 0, "t", sampleNames(100)));
+        assertThrows(IllegalArgumentException.class, () -> new BulkMasker(service, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BulkMasker(service, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BulkMasker(null));
+    }
+
+    private static List<String> sampleNames(int count) {
+        String surnames = "张王李赵刘陈杨黄周吴";
+        String given = "伟芳娜敏静秀英丽强磊军洋勇艳杰涛明超";
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i % 101 == 0) {
+                names.add(null);
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(surnames.charAt(i % surnames.length()));
+            for (int j = 0; j <= i % 3; j++) {
+                sb.append(given.charAt((i * 7 + j * 13) % given.length()));
+            }
+            names.add(sb.toString());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,160 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CachingFPEService 单元测试
+ */
+class CachingFPEServiceTest {
+
+    private static final ChineseFPEService SERVICE = new ChineseFPEService(new byte[16]);
+
+    @Test
+    void testResultsMatchServiceAndHitBothDirections() {
+        CachingFPEService cached = new CachingFPEService(SERVICE);
+        String[] names = {"张伟", "王芳", "李娜", "张伟", "王芳", "欧阳娜娜", "A", "北京市朝阳区"};
+        for (String name : names) {
+            String encrypted = cached.encrypt(1, 0, "name", name);
+            assertEquals(SERVICE.encrypt(1, 0, "name", name), encrypted);
+            // 反向条目：加密后立即解密命中缓存
+            assertEquals(name, cached.decrypt(encrypted, 1, 0, "name"));
+        }
+        CachingFPEService.Stats stats = cached.getStats();
+        assertEquals(6, stats.getMissCount()); // 6 个不同的值各加密一次
+        assertEquals(10, stats.getHitCount()); // 8 次解密 + 2 次重复加密
+        assertEquals(12, stats.getSize());
+
+        // 解密结果同样作为加密的缓存
+        CachingFPEService other = new CachingFPEService(SERVICE);
+        String encrypted = SERVICE.encrypt(0, 0, "city", "上海");
+        assertEquals("上海", other.decrypt(encrypted, "city"));
+        assertEquals(encrypted, other.encrypt(0, 0, "city", "上海"));
+        assertEquals(1, other.getStats().getHitCount());
+
+        // 不同 tweak、头尾保留互不干扰
+        assertEquals(SERVICE.encrypt(0, 0, "other", "张伟"), cached.encrypt(0, 0, "other", "张伟"));
+        assertEquals(SERVICE.encrypt(0, 1, "name", "张伟"), cached.encrypt(0, 1, "name", "张伟"));
+
+        // 预计算 tweak 与字符串 tweak 共享缓存
+        Tweak tweak = SERVICE.createTweak("name");
+        long hits = cached.getStats().getHitCount();
+        assertEquals(SERVICE.encrypt(1, 0, "name", "李娜"), cached.encrypt(tweak, 1, 0, "李娜"));
+        assertEquals(hits + 1, cached.getStats().getHitCount());
+    }
+
+    @Test
+    void testHitsStillCountUnmappedChars(@TempDir Path dir) throws Exception {
+        ChineseFPEService service = new ChineseFPEService(new byte[16]);
+        UnmappedCharCollector collector = new UnmappedCharCollector();
+        MetricsRecorder recorder = new MetricsRecorder();
+        service.setUnmappedCharCollector(collector);
+        service.setMetrics(recorder);
+
+        try (MappedResultCache shared = MappedResultCache.open(dir.resolve("results.bin"), 64, 256)) {
+            CachingFPEService cached = new CachingFPEService(service,
+                CachingFPEService.DEFAULT_MAX_WEIGHT, CachingFPEService.DEFAULT_MAX_TEXT_LENGTH, shared);
+            String encrypted = cached.encrypt(0, 0, "name", "张\u263A伟\u263A");
+            cached.encrypt(0, 0, "name", "张\u263A伟\u263A");
+            cached.decrypt(encrypted, "name");
+            // 头部保留的字符不计入
+            cached.encrypt(1, 0, "name", "\u263A张伟");
+            cached.encrypt(1, 0, "name", "\u263A张伟");
+
+            // 另一个缓存实例从共享缓存命中
+            CachingFPEService other = new CachingFPEService(service,
+                CachingFPEService.DEFAULT_MAX_WEIGHT, CachingFPEService.DEFAULT_MAX_TEXT_LENGTH, shared);
+            other.encrypt(0, 0, "name", "张\u263A伟\u263A");
+            assertEquals(1, other.getStats().getSharedHitCount());
+        }
+
+        // 一次计算 + 一次堆内命中 + 一次共享缓存命中，与不使用缓存时一致
+        assertEquals(Arrays.asList(new UnmappedCharCollector.Entry(0x263A, 6)), collector.getTopChars("name"));
+        MetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(6, snapshot.getSkippedChars());
+        assertEquals(2, snapshot.getSkippedChars(false));
+        assertEquals(3, snapshot.getCacheHits());
+        assertEquals(1, snapshot.getSharedCacheHits());
+    }
+
+    @Test
+    void testIrreversibleInputsDoNotPoisonReverseEntries() {
+        CachingFPEService cached = new CachingFPEService(SERVICE);
+        // 明文中已含加密区字符：加密时原样保留，解密时会被转换
+        String plaintext = "张\uE000伟";
+        String encrypted = cached.encrypt(0, 0, "t", plaintext);
+        assertEquals(SERVICE.decrypt(encrypted, "t"), cached.decrypt(encrypted, "t"));
+
+        // 密文中夹杂字典字符：解密时原样保留，加密时会被转换
+        String mixed = SERVICE.encrypt(0, 0, "t", "王芳") + "李";
+        String decrypted = cached.decrypt(mixed, "t");
+        assertEquals(SERVICE.encrypt(0, 0, "t", decrypted), cached.encrypt(0, 0, "t", decrypted));
+    }
+
+    @Test
+    void testWeightBoundedEviction() {
+        CachingFPEService cached = new CachingFPEService(SERVICE, 1000, 20);
+        for (int i = 0; i < 500; i++) {
+            String text = "用户" + i;
+            assertEquals(SERVICE.encrypt(0, 0, "t", text), cached.encrypt(0, 0, "t", text));
+        }
+        CachingFPEService.Stats stats = cached.getStats();
+        assertTrue(stats.getWeight() <= 1000);
+        assertTrue(stats.getEvictionCount() > 0);
+
+        // 超长文本不缓存
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            longText.append('张');
+        }
+        int size = cached.size();
+        assertEquals(SERVICE.encrypt(0, 0, "t", longText.toString()), cached.encrypt(0, 0, "t", longText.toString()));
+        assertTrue(cached.size() <= size);
+
+        cached.invalidateAll();
+        assertEquals(0, cached.size());
+        assertEquals(0, cached.getStats().getWeight());
+    }
+
+    @Test
+    void testValidationAndConcurrency() throws Exception {
+        CachingFPEService cached = new CachingFPEService(SERVICE);
+        assertNull(cached.encrypt(0, 0, "t", null));
+        assertEquals("", cached.decrypt("", "t"));
+        assertThrows(IllegalArgumentException.class, () -> cached.encrypt(-1, 0, "t", "张伟"));
+        Tweak foreign = new ChineseFPEService(new byte[32]).createTweak("t");
+        assertThrows(IllegalArgumentException.class, () -> cached.encrypt(foreign, 0, 0, "张伟"));
+        assertThrows(IllegalArgumentException.class, () -> new CachingFPEService(SERVICE, 10, 20));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String text = "名字" + (i % 50);
+                        String encrypted = cached.encrypt(1, 0, "name", text);
+                        assertEquals(SERVICE.encrypt(1, 0, "name", text), encrypted);
+                        assertEquals(text, cached.decrypt(encrypted, 1, 0, "name"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cached.getStats().getHitRate() > 0.9);
+    }
+}
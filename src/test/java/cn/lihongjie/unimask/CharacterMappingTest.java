@@ -6,11 +6,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -203,6 +205,94 @@ public class CharacterMappingTest {
             "总字符数应该在8400-8500之间，实际: " + totalChars);
     }
     
+    @Test
+    void testLookupTableCoversWholeBmp() {
+        // 遍历整个 BMP，验证查找表与区间定义、正向映射一致
+        int dictionaryChars = 0;
+        int encryptedChars = 0;
+        for (int cp = 0; cp <= 0xFFFF; cp++) {
+            char c = (char) cp;
+            boolean inPua = cp >= PUA_START && cp < PUA_START + PUA_CAPACITY;
+            boolean inKorean = cp >= RARE_KOREAN_START && cp < RARE_KOREAN_START + 2100;
+            assertEquals(inPua || inKorean, mapping.isEncryptedChar(c), String.format("U+%04X", cp));
+            
+            int encryptedIndex = mapping.getEncryptedIndex(c);
+            if (mapping.isEncryptedChar(c)) {
+                encryptedChars++;
+                assertEquals(mapping.mapFromEncryptedChar(c), encryptedIndex);
+            } else {
+                assertEquals(-1, encryptedIndex);
+                assertThrows(IllegalArgumentException.class, () -> mapping.mapFromEncryptedChar(c));
+            }
+            
+            int index = mapping.getCharIndex(c);
+            if (mapping.containsChar(c)) {
+                dictionaryChars++;
+                assertEquals(c, mapping.getOriginalChar(index));
+            } else {
+                assertEquals(-1, index);
+            }
+        }
+        assertEquals(mapping.getRadix(), dictionaryChars);
+        assertEquals(PUA_CAPACITY + 2100, encryptedChars);
+    }
+    
+    @Test
+    void testCompiledDictionaryMatchesTextResources() throws IOException {
+        // 构建时生成的 dictionary.bin 必须与文本字表的解析结果完全一致
+        char[] compiled = CharacterMapping.loadCompiledDictionary();
+        assertNotNull(compiled, "dictionary.bin should be generated during the build");
+        char[] parsed = CharacterMapping.parseTextDictionary();
+        assertArrayEquals(parsed, compiled);
+        assertEquals(mapping.getRadix(), compiled.length);
+        for (int i = 0; i < compiled.length; i++) {
+            assertEquals(compiled[i], mapping.getOriginalChar(i));
+        }
+        
+        // 写出再读回的格式一致
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CharacterMapping.writeCompiledDictionary(parsed, out);
+        assertEquals(8 + parsed.length * 2, out.size());
+    }
+    
+    @Test
+    void testDefaultMappingIsShared() {
+        assertSame(CharacterMapping.getDefault(), CharacterMapping.getDefault());
+        assertSame(CharacterMapping.getDefault(), new ChineseFPEService(new byte[16]).getCharacterMapping());
+        assertSame(new ChineseFPEService(new byte[16]).getCharacterMapping(),
+            new ChineseFPEService(new byte[32]).getCharacterMapping());
+        assertEquals(mapping.getRadix(), CharacterMapping.getDefault().getRadix());
+    }
+    
+    @Test
+    void testCustomDictionary() {
+        // 1000 个连续汉字作为自定义字典
+        char[] chars = new char[1000];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (0x4E00 + i);
+        }
+        CharacterMapping custom = new CharacterMapping(chars);
+        assertEquals(1000, custom.getRadix());
+        assertEquals(0, custom.getCharIndex('\u4E00'));
+        assertEquals(-1, custom.getCharIndex('A'));
+        chars[0] = 'A';
+        assertEquals('\u4E00', custom.getOriginalChar(0), "dictionary must be copied");
+        
+        ChineseFPEService service = new ChineseFPEService(new byte[16], custom);
+        String encrypted = service.encrypt(0, 0, "t", "\u4E00\u4E01A\u4E02");
+        assertEquals('A', encrypted.charAt(2));
+        assertEquals("\u4E00\u4E01A\u4E02", service.decrypt(encrypted, 0, 0, "t"));
+        
+        assertThrows(IllegalArgumentException.class, () -> new CharacterMapping(new char[999]));
+        char[] duplicate = Arrays.copyOf(chars, chars.length);
+        duplicate[1] = duplicate[0];
+        assertThrows(IllegalArgumentException.class, () -> new CharacterMapping(duplicate));
+        char[] overlapping = Arrays.copyOf(chars, chars.length);
+        overlapping[0] = '\uE000';
+        assertThrows(IllegalArgumentException.class, () -> new CharacterMapping(overlapping));
+        assertThrows(IllegalArgumentException.class, () -> new ChineseFPEService(new byte[16], null));
+    }
+    
     /**
      * 从资源文件加载字符列表（复制自CharacterMapping）
      */
@@ -1,8 +1,26 @@
 package cn.lihongjie.unimask;
 
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -289,4 +307,374 @@ class ChineseFPEServiceTest {
         assertNotEquals(encrypted128, encrypted256);
         assertNotEquals(encrypted192, encrypted256);
     }
+    
+    @Test
+    void testConcurrentEncryptDecrypt() throws Exception {
+        // 同一实例被多个线程并发调用，结果应与单线程一致
+        String[] plaintexts = {"张伟明", "北京市朝阳区建国路1号", "13812345678", "这是一个并发测试文本", "李四"};
+        String[] expected = new String[plaintexts.length];
+        for (int i = 0; i < plaintexts.length; i++) {
+            expected[i] = service.encrypt(1, 1, "concurrent", plaintexts[i]);
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 200; round++) {
+                        for (int i = 0; i < plaintexts.length; i++) {
+                            String encrypted = service.encrypt(1, 1, "concurrent", plaintexts[i]);
+                            assertEquals(expected[i], encrypted);
+                            assertEquals(plaintexts[i], service.decrypt(encrypted, 1, 1, "concurrent"));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void testPrecomputedTweak() {
+        Tweak nameTweak = service.createTweak("name");
+        assertEquals("name", nameTweak.getValue());
+        
+        // 覆盖单字符、FF1 短输入和超出前缀缓存范围的长输入
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            longText.append("预计算扰码测试");
+        }
+        String[] plaintexts = {"张三", "张伟明", "欧阳娜娜", "北京市朝阳区建国路1号", longText.toString()};
+        for (String plaintext : plaintexts) {
+            String expected = service.encrypt(1, 0, "name", plaintext);
+            assertEquals(expected, service.encrypt(nameTweak, 1, 0, plaintext));
+            // 第二次调用命中已缓存的前缀状态
+            assertEquals(expected, service.encrypt(nameTweak, 1, 0, plaintext));
+            assertEquals(plaintext, service.decrypt(nameTweak, expected, 1, 0));
+        }
+        
+        assertEquals(service.encrypt(0, 0, null, "空扰码"), service.encrypt((Tweak) null, 0, 0, "空扰码"));
+        assertEquals(service.decrypt("\uE001\uE002", "name"), service.decrypt(nameTweak, "\uE001\uE002"));
+    }
+    
+    @Test
+    void testBatchEncryptDecrypt() {
+        List<String> plaintexts = Arrays.asList(
+            "张三", null, "", "张伟明", "A", "北京市朝阳区建国路1号", "张");
+
+        List<String> encrypted = service.encryptBatch(1, 1, "address", plaintexts);
+        assertEquals(plaintexts.size(), encrypted.size());
+        for (int i = 0; i < plaintexts.size(); i++) {
+            assertEquals(service.encrypt(1, 1, "address", plaintexts.get(i)), encrypted.get(i));
+        }
+
+        Tweak tweak = service.createTweak("address");
+        assertEquals(encrypted, service.encryptBatch(tweak, 1, 1, plaintexts));
+        assertEquals(plaintexts, service.decryptBatch(encrypted, 1, 1, "address"));
+        assertEquals(plaintexts, service.decryptBatch(tweak, encrypted, 1, 1));
+
+        assertTrue(service.encryptBatch(0, 0, "name", new ArrayList<>()).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> service.encryptBatch(0, 0, "name", null));
+        assertThrows(IllegalArgumentException.class, () -> service.encryptBatch(-1, 0, "name", plaintexts));
+    }
+
+    @Test
+    void testInterleavedBatchMatchesSingleCalls() {
+        // 跨多个窗口、同长度超过 FF1Engine.MAX_BATCH 的分组、含字典外字符和长文本（多字运算路径）
+        Random random = new Random(7);
+        CharacterMapping mapping = CharacterMapping.getDefault();
+        // é 和代理对 😀 都不在字典中
+        String[] unmapped = {"\u00E9", "\uD83D\uDE00"};
+        for (String u : unmapped) {
+            for (int j = 0; j < u.length(); j++) {
+                assertFalse(mapping.containsChar(u.charAt(j)), u);
+            }
+        }
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            int length = i % 4 == 0 ? 5 : random.nextInt(i % 50 == 0 ? 60 : 12);
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(8) == 0) {
+                    sb.append(unmapped[random.nextInt(unmapped.length)]);
+                } else {
+                    sb.append(mapping.getOriginalChar(random.nextInt(mapping.getRadix())));
+                }
+            }
+            texts.add(i % 97 == 0 ? null : sb.toString());
+        }
+
+        for (AesBackend backend : AesBackend.values()) {
+            ChineseFPEService svc = new ChineseFPEService(new byte[16], mapping, backend);
+            Tweak tweak = svc.createTweak("batch");
+            List<String> encrypted = svc.encryptBatch(tweak, 1, 1, texts);
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                assertEquals(text == null ? null : svc.encrypt(tweak, 1, 1, text), encrypted.get(i), backend.name());
+                if (text == null) {
+                    continue;
+                }
+                // 字典外字符原样留在原位置
+                for (int j = 0; j < text.length(); j++) {
+                    if (!mapping.containsChar(text.charAt(j))) {
+                        assertEquals(text.charAt(j), encrypted.get(i).charAt(j), backend.name());
+                    }
+                }
+            }
+            assertEquals(texts, svc.decryptBatch(tweak, encrypted, 1, 1), backend.name());
+        }
+    }
+
+    @Test
+    void testBufferOverloads() throws Exception {
+        Tweak tweak = service.createTweak("name");
+        String line = "id=7,张伟明,北京市朝阳区";
+        int start = line.indexOf('张');
+        int end = line.indexOf(',', start);
+        String expected = service.encrypt(tweak, 1, 0, "张伟明");
+
+        // char[]：结果长度等于区间长度，写入指定偏移
+        char[] dst = new char[10];
+        assertEquals(3, service.encrypt(tweak, 1, 0, line, start, end, dst, 2));
+        assertEquals(expected, new String(dst, 2, 3));
+        assertEquals(3, service.decrypt(tweak, new String(dst), 2, 5, 1, 0, dst, 0));
+        assertEquals("张伟明", new String(dst, 0, 3));
+
+        // StringBuilder 追加，可作为输入的任意 CharSequence
+        StringBuilder sb = new StringBuilder("prefix:");
+        service.encrypt(tweak, 1, 0, new StringBuilder(line), start, end, sb);
+        assertEquals("prefix:" + expected, sb.toString());
+        sb.setLength(0);
+        service.decrypt(tweak, expected, 0, 3, 1, 0, sb);
+        assertEquals("张伟明", sb.toString());
+
+        // CharBuffer：从当前位置写入，空间不足时不写入
+        CharBuffer buffer = CharBuffer.allocate(4);
+        service.encrypt(tweak, 1, 0, CharBuffer.wrap(line), start, end, buffer);
+        assertEquals(3, buffer.position());
+        buffer.flip();
+        assertEquals(expected, buffer.toString());
+        CharBuffer small = CharBuffer.allocate(2);
+        assertThrows(BufferOverflowException.class, () -> service.encrypt(tweak, 1, 0, line, start, end, small));
+        assertEquals(0, small.position());
+
+        // Appendable：Writer 整段写入，其他实现逐字符追加
+        StringWriter writer = new StringWriter();
+        service.encrypt(tweak, 1, 0, line, start, end, (Appendable) writer);
+        assertEquals(expected, writer.toString());
+        StringBuilder appendable = new StringBuilder();
+        service.decrypt(tweak, expected, 0, 3, 1, 0, (Appendable) appendable);
+        assertEquals("张伟明", appendable.toString());
+
+        // 与 String 版本逐个对比：单字符、无可加密字符、头部超长、长文本（超出工作单元保留的缓冲区）
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            longText.append(i % 3 == 0 ? 'a' : '张');
+        }
+        for (String text : new String[]{"张", "abc!", "?", "张伟", longText.toString()}) {
+            char[] out = new char[text.length()];
+            service.encrypt(tweak, 2, 1, text, 0, text.length(), out, 0);
+            assertEquals(service.encrypt(tweak, 2, 1, text), new String(out));
+            service.decrypt(tweak, new String(out), 0, out.length, 2, 1, out, 0);
+            assertEquals(text, new String(out));
+        }
+
+        // 空区间不写入
+        assertEquals(0, service.encrypt(tweak, 0, 0, line, 3, 3, new char[0], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> service.encrypt(tweak, 0, 0, line, 5, 100, dst, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> service.encrypt(tweak, 0, 0, line, 0, 5, dst, 8));
+        assertThrows(IllegalArgumentException.class, () -> service.encrypt(tweak, -1, 0, line, 0, 5, dst, 0));
+    }
+
+    @Test
+    void testKdfParameters() throws Exception {
+        // 默认参数与密码构造函数一致
+        ChineseFPEService withDefaults = new ChineseFPEService("test-password-123", KdfParameters.DEFAULT);
+        assertArrayEquals(service.getKey(), withDefaults.getKey());
+        
+        byte[] salt = "tenant-salt-0001".getBytes(StandardCharsets.UTF_8);
+        KdfParameters custom = new KdfParameters(salt, 100000, 32);
+        assertArrayEquals(ChineseFPEService.deriveKeyFromPassword("pw", salt, 32), custom.deriveKey("pw"));
+        
+        // 迭代次数影响派生结果
+        KdfParameters cheap = new KdfParameters(1000);
+        assertFalse(Arrays.equals(KdfParameters.DEFAULT.deriveKey("pw"), cheap.deriveKey("pw")));
+        
+        ChineseFPEService async = ChineseFPEService.createAsync("pw", cheap).get(30, TimeUnit.SECONDS);
+        assertArrayEquals(cheap.deriveKey("pw"), async.getKey());
+        
+        CompletableFuture<ChineseFPEService> failed = ChineseFPEService.createAsync("", cheap);
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> failed.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(999));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(new byte[7], 1000, 16));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(salt, 1000, 20));
+    }
+    
+    @Test
+    void testTweakFromOtherServiceRejected() {
+        ChineseFPEService other = new ChineseFPEService(new byte[16]);
+        Tweak foreign = other.createTweak("name");
+        assertThrows(IllegalArgumentException.class, () -> service.encrypt(foreign, 0, 0, "张伟明"));
+        assertThrows(IllegalArgumentException.class, () -> service.decrypt(foreign, "张伟明", 0, 0));
+    }
+    
+    @Test
+    void testCiphertextCompatibility() {
+        // 固定密钥下的已知密文，保证引擎实现调整后密文保持不变
+        byte[] key = new byte[16];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) i;
+        }
+        String[][] vectors = {
+            {"name", "1", "0", "张伟明", "\u5F20\uE033\uEA35"},
+            {"phone", "3", "4", "13812345678", "138\uF7F8\uD405\uE9A9\uF0B95678"},
+            {"address", "3", "0", "北京市朝阳区建国路1号", "\u5317\u4EAC\u5E02\uE34C\uE926\uF744\uEACE\uEAAE\uF40A\uE6FB\uE07A"},
+            {"", "0", "0", "中", "\uED97"},
+            {"t", "0", "0", "Hello世界123！Test测试", "\uE535\uF0D3\uE6CB\uD1AC\uE996\uF6EB\uE726\uF059\uF33C\uEB3B\uF016\uEB2D\uEAFC\uEEBA\uF2FD\uD73B\uF2F7"},
+            {"long", "2", "2", "这是一段很长的测试文本用于验证多字长度的加密结果是否保持兼容，包含标点。还有English words and 数字12345", "\u8FD9\u662F\uEFC7\uD130\uE2B0\uE508\uE974\uEF9C\uD0BB\uED8D\uD6B4\uE6CB\uE52D\uEC05\uE10D\uD724\uF7F5\uEA60\uEEE5\uF405\uEDFD\uD708\uF67D\uE9D5\uD6B4\uE240\uEAA5\uEF43\uEE65\uEBEF\uE6DB\uF28C\uD1B3\uE3FD\uD271\uF6D4\uECBA\uE3F9\uEF34\uF31D\uF895\uD290\uE2AB\uF44E\uF33A\uD55E\uD22D\uF550\uE642\uD083\uECA8\uD398\uED69\uF1E5\uEDD7\uD2EE\uF1E1\uF1DB\uD545\uF73F\uE84F45"},
+        };
+        // 所有 AES 实现都必须得到相同的密文
+        for (AesBackend backend : AesBackend.values()) {
+            ChineseFPEService fixedKeyService = new ChineseFPEService(key, CharacterMapping.getDefault(), backend);
+            for (String[] vector : vectors) {
+                int head = Integer.parseInt(vector[1]);
+                int tail = Integer.parseInt(vector[2]);
+                assertEquals(vector[4], fixedKeyService.encrypt(head, tail, vector[0], vector[3]), backend.name());
+                assertEquals(vector[3], fixedKeyService.decrypt(vector[4], head, tail, vector[0]), backend.name());
+            }
+        }
+    }
+    
+    @Test
+    void testJceCipherReinit() {
+        Random random = new Random(7);
+        byte[] key = new byte[16];
+        byte[] otherKey = new byte[32];
+        random.nextBytes(key);
+        random.nextBytes(otherKey);
+        byte[] plain = new byte[16];
+        random.nextBytes(plain);
+
+        BlockCipher jce = AesBackend.JCE.newCipher(key);
+        BlockCipher bc = AesBackend.BOUNCY_CASTLE.newCipher(key);
+        byte[] expected = new byte[16];
+        byte[] actual = new byte[16];
+        bc.processBlock(plain, 0, expected, 0);
+        jce.processBlock(plain, 0, actual, 0);
+        assertArrayEquals(expected, actual);
+
+        // 重新初始化为解密方向
+        jce.init(false, new KeyParameter(key));
+        byte[] decrypted = new byte[16];
+        jce.processBlock(actual, 0, decrypted, 0);
+        assertArrayEquals(plain, decrypted);
+
+        // 重新初始化为另一个密钥的加密方向
+        jce.init(true, new KeyParameter(otherKey));
+        AESEngine reference = new AESEngine();
+        reference.init(true, new KeyParameter(otherKey));
+        reference.processBlock(plain, 0, expected, 0);
+        jce.processBlock(plain, 0, actual, 0);
+        assertArrayEquals(expected, actual);
+
+        assertThrows(IllegalArgumentException.class, () -> jce.init(true, null));
+        assertThrows(IllegalArgumentException.class, () -> jce.init(true, new KeyParameter(new byte[15])));
+    }
+
+    @Test
+    void testAesBackends() {
+        Random random = new Random(42);
+        CharacterMapping mapping = CharacterMapping.getDefault();
+        for (int keyLength : new int[]{16, 24, 32}) {
+            byte[] key = new byte[keyLength];
+            random.nextBytes(key);
+            ChineseFPEService bc = new ChineseFPEService(key, mapping, AesBackend.BOUNCY_CASTLE);
+            ChineseFPEService jce = new ChineseFPEService(key, mapping, AesBackend.JCE);
+            assertEquals(AesBackend.JCE, jce.getAesBackend());
+            for (int i = 0; i < 200; i++) {
+                char[] chars = new char[1 + random.nextInt(40)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = mapping.getOriginalChar(random.nextInt(mapping.getRadix()));
+                }
+                String text = new String(chars);
+                String encrypted = bc.encrypt(1, 0, "t" + i, text);
+                assertEquals(encrypted, jce.encrypt(1, 0, "t" + i, text));
+                assertEquals(text, jce.decrypt(encrypted, 1, 0, "t" + i));
+            }
+        }
+        
+        assertEquals(AesBackend.JCE, AesBackend.select("jce", false));
+        assertEquals(AesBackend.BOUNCY_CASTLE, AesBackend.select("BC", true));
+        assertEquals(AesBackend.JCE, AesBackend.select(null, true));
+        assertEquals(AesBackend.BOUNCY_CASTLE, AesBackend.select(null, false));
+        assertNotNull(AesBackend.getDefault());
+        assertThrows(IllegalArgumentException.class,
+            () -> new ChineseFPEService(new byte[16], CharacterMapping.getDefault(), null));
+        
+        // 反射读取的结果与直接查询一致；MXBean 不可用时回退为未启用
+        com.sun.management.HotSpotDiagnosticMXBean bean = java.lang.management.ManagementFactory
+            .getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+        boolean expected;
+        try {
+            expected = Boolean.parseBoolean(bean.getVMOption("UseAESIntrinsics").getValue());
+        } catch (IllegalArgumentException e) {
+            expected = Boolean.parseBoolean(bean.getVMOption("UseAES").getValue());
+        }
+        assertEquals(expected, AesBackend.aesIntrinsicsEnabled());
+        assertFalse(AesBackend.aesIntrinsicsEnabled("com.example.MissingDiagnosticMXBean"));
+        assertFalse(AesBackend.aesIntrinsicsEnabled("java.lang.management.RuntimeMXBean"));
+    }
+    
+    @Test
+    void testFf31Algorithm() {
+        byte[] key = new byte[16];
+        CharacterMapping mapping = CharacterMapping.getDefault();
+        assertEquals(FpeAlgorithm.FF1, service.getAlgorithm());
+        assertEquals(14, FpeAlgorithm.FF3_1.getMaxLength(mapping.getRadix()));
+        
+        for (AesBackend backend : AesBackend.values()) {
+            ChineseFPEService ff1 = new ChineseFPEService(key, mapping, backend);
+            ChineseFPEService ff3 = new ChineseFPEService(key, mapping, backend, FpeAlgorithm.FF3_1);
+            assertEquals(FpeAlgorithm.FF3_1, ff3.getAlgorithm());
+            
+            List<String> texts = Arrays.asList("张伟", "张三丰", "欧阳-娜娜", "北京市朝阳区建国路1号院", null, "张");
+            for (String text : texts) {
+                if (text == null) {
+                    continue;
+                }
+                String encrypted = ff3.encrypt(1, 0, "name", text);
+                assertEquals(text.length(), encrypted.length());
+                assertEquals(text.charAt(0), encrypted.charAt(0));
+                assertEquals(text, ff3.decrypt(encrypted, 1, 0, "name"));
+            }
+            // 两种算法的密文互不相同，单字符置换相同
+            assertNotEquals(ff1.encrypt(0, 0, "name", "张三丰"), ff3.encrypt(0, 0, "name", "张三丰"));
+            assertEquals(ff1.encrypt(0, 0, "name", "张"), ff3.encrypt(0, 0, "name", "张"));
+            
+            // 批量（交错）结果与逐条一致
+            Tweak tweak = ff3.createTweak("name");
+            List<String> encrypted = ff3.encryptBatch(tweak, 1, 0, texts);
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                assertEquals(text == null ? null : ff3.encrypt(tweak, 1, 0, text), encrypted.get(i));
+            }
+            assertEquals(texts, ff3.decryptBatch(tweak, encrypted, 1, 0));
+        }
+        
+        // 超出 FF3-1 长度上限（字典外字符不计入）
+        ChineseFPEService ff3 = new ChineseFPEService(key, mapping, AesBackend.getDefault(), FpeAlgorithm.FF3_1);
+        assertEquals(16, ff3.encrypt(0, 0, "t", "张三丰张三丰张三丰张三丰张三\uD83D\uDE00").length());
+        assertThrows(IllegalArgumentException.class, () -> ff3.encrypt(0, 0, "t", "张三丰张三丰张三丰张三丰张三丰"));
+        assertThrows(IllegalArgumentException.class,
+            () -> new ChineseFPEService(key, mapping, AesBackend.getDefault(), null));
+    }
 }
@@ -0,0 +1,146 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ColumnMaskTool 单元测试
+ */
+class ColumnMaskToolTest {
+
+    private static final byte[] KEY = new byte[]{
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testMasksSelectedColumnsAcrossSegments() throws IOException {
+        ChineseFPEService service = new ChineseFPEService(KEY);
+        StringBuilder csv = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        String[] names = {"张伟明", "欧阳娜娜", "李四", "王", ""};
+        String[] cities = {"北京市朝阳区", "上海市浦东新区", "广州", "深圳市南山区科技园"};
+        for (int i = 0; i < 500; i++) {
+            String name = names[i % names.length];
+            String city = cities[i % cities.length];
+            String lineEnd = i % 7 == 0 ? "\r\n" : "\n";
+            csv.append(i).append(',').append(name).append(',').append(city).append(lineEnd);
+            expected.append(i).append(',')
+                .append(service.encrypt(1, 0, "name", name)).append(',')
+                .append(service.encrypt(2, 2, "city", city)).append(lineEnd);
+        }
+        // 末行没有换行
+        csv.append("last,张三,上海");
+        expected.append("last,").append(service.encrypt(1, 0, "name", "张三")).append(',')
+            .append(service.encrypt(2, 2, "city", "上海"));
+
+        Path input = dir.resolve("in.csv");
+        Path encrypted = dir.resolve("enc.csv");
+        Path decrypted = dir.resolve("dec.csv");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        // 很小的段大小，强制切分为大量段并行处理
+        ColumnMaskTool tool = new ColumnMaskTool(service, true, ',', Arrays.asList(
+            new ColumnMaskTool.ColumnSpec(1, 1, 0, "name"),
+            new ColumnMaskTool.ColumnSpec(2, 2, 2, "city")), 4, 256);
+        tool.process(input, encrypted);
+        assertEquals(expected.toString(), new String(Files.readAllBytes(encrypted), StandardCharsets.UTF_8));
+
+        ColumnMaskTool reverse = new ColumnMaskTool(service, false, ',', Arrays.asList(
+            ColumnMaskTool.ColumnSpec.parse("1:1:0:name"),
+            ColumnMaskTool.ColumnSpec.parse("2:2:2:city")), 3, 300);
+        reverse.process(encrypted, decrypted);
+        assertEquals(csv.toString(), new String(Files.readAllBytes(decrypted), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSmallBuffersAndHeader() throws IOException {
+        ChineseFPEService service = new ChineseFPEService(KEY);
+        StringBuilder csv = new StringBuilder("编号,姓名,备注\n");
+        StringBuilder expected = new StringBuilder("编号,姓名,备注\n");
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            longName.append("欧阳");
+        }
+        for (int i = 0; i < 300; i++) {
+            // 长行超过解码块、含字典外字符和代理对，输出远大于输出缓冲区
+            String name = i % 50 == 0 ? longName.toString() : "张\u00E9伟\uD83D\uDE00明" + i;
+            String note = "note" + i;
+            csv.append(i).append(',').append(name).append(',').append(note).append('\n');
+            expected.append(i).append(',').append(service.encrypt(1, 0, "name", name)).append(',')
+                .append(note).append('\n');
+        }
+
+        Path input = dir.resolve("in.csv");
+        Path encrypted = dir.resolve("enc.csv");
+        Path decrypted = dir.resolve("dec.csv");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        // 16 字节输出缓冲区、8 字符解码块：几乎每个字段都要刷出或暂存
+        ColumnMaskTool tool = new ColumnMaskTool(service, true, ',', Arrays.asList(
+            new ColumnMaskTool.ColumnSpec(1, 1, 0, "name")), 4, 200, true, 16, 8);
+        tool.process(input, encrypted);
+        assertEquals(expected.toString(), new String(Files.readAllBytes(encrypted), StandardCharsets.UTF_8));
+
+        ColumnMaskTool reverse = new ColumnMaskTool(service, false, ',', Arrays.asList(
+            new ColumnMaskTool.ColumnSpec(1, 1, 0, "name")), 3, 1000, true, 32, 5);
+        reverse.process(encrypted, decrypted);
+        assertEquals(csv.toString(), new String(Files.readAllBytes(decrypted), StandardCharsets.UTF_8));
+
+        // 未声明表头时第一行按数据处理
+        new ColumnMaskTool(service, true, ',', Arrays.asList(
+            new ColumnMaskTool.ColumnSpec(1, 0, 0, "name")), 2, 200).process(input, encrypted);
+        String firstLine = new String(Files.readAllBytes(encrypted), StandardCharsets.UTF_8).split("\n", 2)[0];
+        assertEquals("编号," + service.encrypt(0, 0, "name", "姓名") + ",备注", firstLine);
+
+        // 中间段解码失败时其他等待写出的段随之终止，不会挂起
+        byte[] bytes = Files.readAllBytes(input);
+        bytes[bytes.length / 2] = (byte) 0xFF;
+        Files.write(input, bytes);
+        assertThrows(IOException.class, () -> tool.process(input, encrypted));
+    }
+
+    @Test
+    void testCommandLine() throws IOException {
+        Path input = dir.resolve("in.tsv");
+        Path output = dir.resolve("out.tsv");
+        Files.write(input, "id\t张伟明\n2\t李四\n".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int code = ColumnMaskTool.run(new String[]{
+            "--key", "000102030405060708090a0b0c0d0e0f", "--delimiter", "tab",
+            "--column", "1:1:0:name", input.toString(), output.toString()
+        }, new PrintStream(out), new PrintStream(err));
+        assertEquals(0, code, err.toString());
+
+        ChineseFPEService service = new ChineseFPEService(KEY);
+        String expected = "id\t" + service.encrypt(1, 0, "name", "张伟明") + "\n2\t"
+            + service.encrypt(1, 0, "name", "李四") + "\n";
+        assertEquals(expected, new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+
+        assertEquals(0, ColumnMaskTool.run(new String[]{
+            "--key", "000102030405060708090a0b0c0d0e0f", "--delimiter", "tab", "--header",
+            "--column", "1:1:0:name", input.toString(), output.toString()
+        }, new PrintStream(out), new PrintStream(err)), err.toString());
+        assertEquals("id\t张伟明\n2\t" + service.encrypt(1, 0, "name", "李四") + "\n",
+            new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+
+        assertEquals(2, ColumnMaskTool.run(new String[]{input.toString()},
+            new PrintStream(out), new PrintStream(err)));
+        assertEquals(2, ColumnMaskTool.run(new String[]{"--key", "zz", "--column", "0:0:0:t",
+            input.toString(), output.toString()}, new PrintStream(out), new PrintStream(err)));
+    }
+}
@@ -0,0 +1,93 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DerivedKeyStore 单元测试
+ */
+class DerivedKeyStoreTest {
+
+    private static final KdfParameters KDF = new KdfParameters(1000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testSaveAndReload() throws IOException {
+        Path file = dir.resolve("keys.bin");
+        DerivedKeyStore store = DerivedKeyStore.open(file, "store-secret");
+        assertEquals(0, store.size());
+        assertFalse(Files.exists(file));
+
+        KdfParameters aes256 = new KdfParameters("tenant-salt".getBytes(), 1000, 32);
+        byte[] key = store.deriveKey("password-1", KDF);
+        assertArrayEquals(KDF.deriveKey("password-1"), key);
+        store.deriveKey("password-1", aes256);
+        store.deriveKey("password-2", KDF);
+        assertEquals(3, store.size());
+        assertNull(store.get("password-3", KDF));
+        store.save();
+
+        DerivedKeyStore reloaded = DerivedKeyStore.open(file, "store-secret");
+        assertEquals(3, reloaded.size());
+        assertArrayEquals(key, reloaded.get("password-1", KDF));
+        assertArrayEquals(aes256.deriveKey("password-1"), reloaded.get("password-1", aes256));
+        // 迭代次数不同视为不同条目
+        assertNull(reloaded.get("password-1", new KdfParameters(2000)));
+
+        // 覆盖保存
+        reloaded.clear();
+        reloaded.put("password-3", KDF, new byte[16]);
+        reloaded.save();
+        DerivedKeyStore third = DerivedKeyStore.open(file, "store-secret");
+        assertEquals(1, third.size());
+        assertArrayEquals(new byte[16], third.get("password-3", KDF));
+    }
+
+    @Test
+    void testWrongPasswordAndCorruption() throws IOException {
+        Path file = dir.resolve("keys.bin");
+        DerivedKeyStore store = DerivedKeyStore.open(file, "store-secret");
+        store.deriveKey("password-1", KDF);
+        store.save();
+
+        assertThrows(IOException.class, () -> DerivedKeyStore.open(file, "wrong-secret"));
+
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 1] ^= 1;
+        Files.write(file, content);
+        assertThrows(IOException.class, () -> DerivedKeyStore.open(file, "store-secret"));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> DerivedKeyStore.open(file, "store-secret"));
+
+        assertThrows(IllegalArgumentException.class, () -> DerivedKeyStore.open(file, ""));
+        assertThrows(IllegalArgumentException.class, () -> store.put("password-1", KDF, new byte[24]));
+    }
+
+    @Test
+    void testRegistryUsesStore() throws IOException {
+        Path file = dir.resolve("keys.bin");
+        DerivedKeyStore store = DerivedKeyStore.open(file, "store-secret");
+        ServiceRegistry registry = new ServiceRegistry(100, 60_000, store);
+        ChineseFPEService service = registry.getService("tenant-a", "password-1", KDF);
+        ChineseFPEService async = registry.getServiceAsync("tenant-b", "password-2", KDF).join();
+        assertEquals(2, store.size());
+        store.save();
+
+        // 模拟重启：新的注册表从存储中读取密钥
+        DerivedKeyStore reloaded = DerivedKeyStore.open(file, "store-secret");
+        ServiceRegistry restarted = new ServiceRegistry(100, 60_000, reloaded);
+        assertArrayEquals(service.getKey(), restarted.getService("tenant-a", "password-1", KDF).getKey());
+        assertArrayEquals(async.getKey(),
+            restarted.getServiceAsync("tenant-b", "password-2", KDF).join().getKey());
+        assertEquals(2, reloaded.size());
+    }
+}
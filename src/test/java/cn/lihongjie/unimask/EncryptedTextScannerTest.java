@@ -0,0 +1,113 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EncryptedTextScanner 单元测试
+ */
+class EncryptedTextScannerTest {
+
+    @Test
+    void testClassificationMatchesCharacterMapping() {
+        CharacterMapping mapping = CharacterMapping.getDefault();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertEquals(mapping.isEncryptedChar((char) c), EncryptedTextScanner.isEncryptedChar((char) c),
+                "U+" + Integer.toHexString(c));
+        }
+    }
+
+    @Test
+    void testMatchesNaiveScan() {
+        Random random = new Random(11);
+        ChineseFPEService service = new ChineseFPEService(new byte[16]);
+        String[] plain = {"订单号 12345，收件人 ", "北京市朝阳区", "log line: ok\n", "가나다", "😀"};
+        for (int round = 0; round < 50; round++) {
+            StringBuilder sb = new StringBuilder();
+            int parts = random.nextInt(200);
+            for (int i = 0; i < parts; i++) {
+                sb.append(random.nextInt(3) == 0
+                    ? service.encrypt(0, 0, "name", "张伟明".substring(random.nextInt(3)))
+                    : plain[random.nextInt(plain.length)]);
+            }
+            String text = sb.toString();
+            List<EncryptedTextScanner.Run> expected = naiveRuns(text);
+            int expectedCount = 0;
+            for (EncryptedTextScanner.Run run : expected) {
+                expectedCount += run.length();
+            }
+            int expectedIndex = expected.isEmpty() ? -1 : expected.get(0).getStart();
+
+            // 带偏移的 CharBuffer 视图：下标相对于 position
+            char[] padded = ("##" + text).toCharArray();
+            CharBuffer arrayBuffer = CharBuffer.wrap(padded);
+            arrayBuffer.position(2);
+            for (CharSequence seq : new CharSequence[]{text, new StringBuilder(text), CharBuffer.wrap(text),
+                arrayBuffer.slice()}) {
+                String type = seq.getClass().getSimpleName();
+                assertEquals(expectedIndex, EncryptedTextScanner.indexOf(seq), type);
+                assertEquals(expectedCount, EncryptedTextScanner.count(seq), type);
+                assertEquals(expected.size(), EncryptedTextScanner.countRuns(seq), type);
+                assertEquals(expected, EncryptedTextScanner.findRuns(seq), type);
+            }
+            char[] chars = text.toCharArray();
+            assertEquals(expectedIndex, EncryptedTextScanner.indexOf(chars, 0, chars.length));
+            assertEquals(expectedCount, EncryptedTextScanner.count(chars, 0, chars.length));
+            assertEquals(expected.size(), EncryptedTextScanner.countRuns(chars, 0, chars.length));
+            assertEquals(expected, EncryptedTextScanner.findRuns(chars, 0, chars.length));
+
+            // 子区间会截断片段
+            if (text.length() > 10) {
+                int start = random.nextInt(text.length() / 2);
+                int end = start + random.nextInt(text.length() - start);
+                assertEquals(naiveRuns(text.substring(start, end)).size(),
+                    EncryptedTextScanner.countRuns(text, start, end));
+                assertEquals(EncryptedTextScanner.count(text.substring(start, end)),
+                    EncryptedTextScanner.count(chars, start, end));
+            }
+        }
+    }
+
+    @Test
+    void testRunsAndValidation() {
+        String text = "a\uE000\uE001b\uCF70c\uD7A3\uF8FF";
+        assertEquals(Arrays.asList(run(1, 3), run(4, 5), run(6, 8)), EncryptedTextScanner.findRuns(text));
+        assertEquals(1, EncryptedTextScanner.indexOf(text));
+        assertEquals(-1, EncryptedTextScanner.indexOf("普通文本 plain text"));
+        assertEquals(0, EncryptedTextScanner.count(""));
+        assertEquals("[1, 3)", run(1, 3).toString());
+
+        assertThrows(IllegalArgumentException.class, () -> EncryptedTextScanner.indexOf((CharSequence) null));
+        assertThrows(IndexOutOfBoundsException.class, () -> EncryptedTextScanner.count(text, 3, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> EncryptedTextScanner.countRuns(new char[2], 0, 3));
+    }
+
+    private static EncryptedTextScanner.Run run(int start, int end) {
+        return new EncryptedTextScanner.Run(start, end);
+    }
+
+    private static List<EncryptedTextScanner.Run> naiveRuns(String text) {
+        CharacterMapping mapping = CharacterMapping.getDefault();
+        List<EncryptedTextScanner.Run> runs = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            if (mapping.isEncryptedChar(text.charAt(i))) {
+                int start = i;
+                while (i < text.length() && mapping.isEncryptedChar(text.charAt(i))) {
+                    i++;
+                }
+                runs.add(new EncryptedTextScanner.Run(start, i));
+            } else {
+                i++;
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,169 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.fpe.FPEEngine;
+import org.bouncycastle.crypto.fpe.FPEFF1Engine;
+import org.bouncycastle.crypto.params.FPEParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FF1Engine 单元测试
+ * 使用 NIST SP 800-38G 示例向量，并与 Bouncy Castle 的 FPEFF1Engine 逐字节比对
+ */
+class FF1EngineTest {
+
+    private static final byte[] NIST_KEY = Hex.decode("2B7E151628AED2A6ABF7158809CF4F3C");
+
+    @Test
+    void testNistSample1() {
+        assertNistSample(10, "", "0123456789", "2433477484");
+    }
+
+    @Test
+    void testNistSample2() {
+        assertNistSample(10, "39383736353433323130", "0123456789", "6124200773");
+    }
+
+    @Test
+    void testNistSample3() {
+        assertNistSample(36, "3737373770717273373737", "0123456789abcdefghi", "a9tv40mll9kdu509eum");
+    }
+
+    @Test
+    void testMatchesBouncyCastleForProjectRadix() {
+        // 覆盖 long 快速路径（每半不超过 4 位）和多字运算路径
+        Random random = new Random(20260101L);
+        byte[] key = randomBytes(random, 16);
+        int radix = new CharacterMapping().getRadix();
+        for (int len = 2; len <= 80; len++) {
+            assertMatchesBouncyCastle(random, key, radix, len);
+        }
+        for (int len : new int[]{128, 255, 256, 511, 512, 600}) {
+            assertMatchesBouncyCastle(random, key, radix, len);
+        }
+    }
+
+    @Test
+    void testMatchesBouncyCastleForOtherRadixes() {
+        Random random = new Random(42L);
+        for (int keyLength : new int[]{16, 24, 32}) {
+            byte[] key = randomBytes(random, keyLength);
+            for (int radix : new int[]{10, 36, 256, 257, 1000, 65535}) {
+                for (int len = 2; len <= 40; len++) {
+                    if (Math.pow(radix, len) >= 1000000) {
+                        assertMatchesBouncyCastle(random, key, radix, len);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testInputValidation() {
+        FF1Engine engine = newEngine(NIST_KEY, 10);
+        assertThrows(IllegalArgumentException.class,
+            () -> engine.encrypt(new byte[0], new int[]{1, 2, 3}, 0, 3));
+        assertThrows(IllegalArgumentException.class,
+            () -> engine.encrypt(new byte[0], new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 0, 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> new FF1Engine(initAes(NIST_KEY), 1));
+    }
+
+    private void assertNistSample(int radix, String tweakHex, String plaintext, String ciphertext) {
+        FF1Engine engine = newEngine(NIST_KEY, radix);
+        byte[] tweak = Hex.decode(tweakHex);
+
+        int[] x = toDigits(plaintext, radix);
+        engine.encrypt(tweak, x, 0, x.length);
+        assertEquals(ciphertext, fromDigits(x, radix));
+
+        engine.decrypt(tweak, x, 0, x.length);
+        assertEquals(plaintext, fromDigits(x, radix));
+    }
+
+    private void assertMatchesBouncyCastle(Random random, byte[] key, int radix, int len) {
+        byte[] tweak = randomBytes(random, random.nextInt(40));
+        int[] digits = new int[len];
+        for (int i = 0; i < len; i++) {
+            digits[i] = random.nextInt(radix);
+        }
+
+        // 在数组中间偏移处加密，顺便验证 off 参数
+        int[] x = new int[len + 3];
+        System.arraycopy(digits, 0, x, 2, len);
+        FF1Engine engine = newEngine(key, radix);
+        engine.encrypt(tweak, x, 2, len);
+
+        int[] expected = bouncyCastle(true, key, radix, tweak, digits);
+        for (int i = 0; i < len; i++) {
+            assertEquals(expected[i], x[i + 2], "radix=" + radix + ", len=" + len + ", pos=" + i);
+        }
+
+        engine.decrypt(tweak, x, 2, len);
+        for (int i = 0; i < len; i++) {
+            assertEquals(digits[i], x[i + 2]);
+        }
+        assertArrayEquals(digits, bouncyCastle(false, key, radix, tweak, expected));
+    }
+
+    private static int[] bouncyCastle(boolean forEncryption, byte[] key, int radix, byte[] tweak, int[] digits) {
+        FPEEngine engine = new FPEFF1Engine(new AESEngine());
+        engine.init(forEncryption, new FPEParameters(new KeyParameter(key), radix, tweak));
+        boolean wide = radix > 256;
+        int width = wide ? 2 : 1;
+        byte[] in = new byte[digits.length * width];
+        for (int i = 0; i < digits.length; i++) {
+            if (wide) {
+                in[i * 2] = (byte) (digits[i] >>> 8);
+                in[i * 2 + 1] = (byte) digits[i];
+            } else {
+                in[i] = (byte) digits[i];
+            }
+        }
+        byte[] out = new byte[in.length];
+        engine.processBlock(in, 0, in.length, out, 0);
+        int[] result = new int[digits.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = wide ? ((out[i * 2] & 0xFF) << 8) | (out[i * 2 + 1] & 0xFF) : out[i] & 0xFF;
+        }
+        return result;
+    }
+
+    private static FF1Engine newEngine(byte[] key, int radix) {
+        return new FF1Engine(initAes(key), radix);
+    }
+
+    private static AESEngine initAes(byte[] key) {
+        AESEngine aes = new AESEngine();
+        aes.init(true, new KeyParameter(key));
+        return aes;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static int[] toDigits(String s, int radix) {
+        int[] digits = new int[s.length()];
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = Character.digit(s.charAt(i), radix);
+        }
+        return digits;
+    }
+
+    private static String fromDigits(int[] digits, int radix) {
+        StringBuilder sb = new StringBuilder(digits.length);
+        for (int d : digits) {
+            sb.append(Character.forDigit(d, radix));
+        }
+        return sb.toString();
+    }
+}
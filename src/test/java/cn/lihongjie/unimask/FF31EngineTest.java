@@ -0,0 +1,141 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.fpe.FPEEngine;
+import org.bouncycastle.crypto.fpe.FPEFF3_1Engine;
+import org.bouncycastle.crypto.params.FPEParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FF31Engine 单元测试
+ * 与 Bouncy Castle 的 FPEFF3_1Engine 逐字节比对
+ */
+class FF31EngineTest {
+
+    @Test
+    void testMaxLength() {
+        assertEquals(14, FF31Engine.maxLength(new CharacterMapping().getRadix()));
+        assertEquals(56, FF31Engine.maxLength(10));
+        assertEquals(192, FF31Engine.maxLength(2));
+        assertEquals(12, FF31Engine.maxLength(65536));
+    }
+
+    @Test
+    void testMatchesBouncyCastle() {
+        Random random = new Random(20260301L);
+        for (int keyLength : new int[]{16, 24, 32}) {
+            byte[] key = randomBytes(random, keyLength);
+            for (int radix : new int[]{10, 36, 256, 1000, new CharacterMapping().getRadix(), 65535}) {
+                FF31Engine engine = newEngine(key, radix);
+                for (int len = 2; len <= engine.getMaxLength(); len++) {
+                    if (Math.pow(radix, len) >= 1000000) {
+                        assertMatchesBouncyCastle(random, engine, key, radix, len);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBatchMatchesSingleCalls() {
+        Random random = new Random(3);
+        byte[] key = randomBytes(random, 16);
+        byte[] tweak = randomBytes(random, FF31Engine.TWEAK_LENGTH);
+        int radix = new CharacterMapping().getRadix();
+        FF31Engine engine = newEngine(key, radix);
+        int n = 9;
+        int count = FF1Engine.MAX_BATCH;
+        int[] x = new int[count * n];
+        int[] offsets = new int[count];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = random.nextInt(radix);
+        }
+        for (int r = 0; r < count; r++) {
+            offsets[r] = r * n;
+        }
+        int[] expected = x.clone();
+        for (int r = 0; r < count; r++) {
+            engine.encrypt(tweak, expected, r * n, n);
+        }
+        int[] plain = x.clone();
+        engine.encryptBatch(tweak, x, offsets, 0, count, n);
+        assertArrayEquals(expected, x);
+        engine.decryptBatch(tweak, x, offsets, 0, count, n);
+        assertArrayEquals(plain, x);
+    }
+
+    @Test
+    void testInputValidation() {
+        int radix = new CharacterMapping().getRadix();
+        FF31Engine engine = newEngine(new byte[16], radix);
+        byte[] tweak = new byte[FF31Engine.TWEAK_LENGTH];
+        assertThrows(IllegalArgumentException.class, () -> engine.encrypt(new byte[8], new int[]{1, 2}, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> engine.encrypt(tweak, new int[15], 0, 15));
+        assertThrows(IllegalArgumentException.class, () -> engine.encrypt(tweak, new int[]{1}, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> engine.encrypt(tweak, new int[]{1, radix}, 0, 2));
+    }
+
+    private void assertMatchesBouncyCastle(Random random, FF31Engine engine, byte[] key, int radix, int len) {
+        byte[] tweak = randomBytes(random, FF31Engine.TWEAK_LENGTH);
+        int[] digits = new int[len];
+        for (int i = 0; i < len; i++) {
+            digits[i] = random.nextInt(radix);
+        }
+
+        int[] x = new int[len + 3];
+        System.arraycopy(digits, 0, x, 2, len);
+        engine.encrypt(tweak, x, 2, len);
+
+        int[] expected = bouncyCastle(true, key, radix, tweak, digits);
+        for (int i = 0; i < len; i++) {
+            assertEquals(expected[i], x[i + 2], "radix=" + radix + ", len=" + len + ", pos=" + i);
+        }
+
+        engine.decrypt(tweak, x, 2, len);
+        for (int i = 0; i < len; i++) {
+            assertEquals(digits[i], x[i + 2]);
+        }
+        assertArrayEquals(digits, bouncyCastle(false, key, radix, tweak, expected));
+    }
+
+    private static int[] bouncyCastle(boolean forEncryption, byte[] key, int radix, byte[] tweak, int[] digits) {
+        FPEEngine engine = new FPEFF3_1Engine(new AESEngine());
+        engine.init(forEncryption, new FPEParameters(new KeyParameter(key), radix, tweak));
+        boolean wide = radix > 256;
+        int width = wide ? 2 : 1;
+        byte[] in = new byte[digits.length * width];
+        for (int i = 0; i < digits.length; i++) {
+            if (wide) {
+                in[i * 2] = (byte) (digits[i] >>> 8);
+                in[i * 2 + 1] = (byte) digits[i];
+            } else {
+                in[i] = (byte) digits[i];
+            }
+        }
+        byte[] out = new byte[in.length];
+        engine.processBlock(in, 0, in.length, out, 0);
+        int[] result = new int[digits.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = wide ? ((out[i * 2] & 0xFF) << 8) | (out[i * 2 + 1] & 0xFF) : out[i] & 0xFF;
+        }
+        return result;
+    }
+
+    private static FF31Engine newEngine(byte[] key, int radix) {
+        AESEngine aes = new AESEngine();
+        aes.init(true, new KeyParameter(Arrays.reverse(key)));
+        return new FF31Engine(aes, radix);
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,141 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MappedResultCache 单元测试
+ */
+class MappedResultCacheTest {
+
+    private static final ChineseFPEService SERVICE = new ChineseFPEService(new byte[16]);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testEntriesSurviveReopen() throws IOException {
+        Path file = dir.resolve("results.cache");
+        String encrypted;
+        try (MappedResultCache shared = MappedResultCache.open(file, 1024, 256)) {
+            CachingFPEService cached = new CachingFPEService(SERVICE, 1 << 16, 64, shared);
+            encrypted = cached.encrypt(1, 0, "name", "张伟明");
+            assertEquals(SERVICE.encrypt(1, 0, "name", "张伟明"), encrypted);
+            assertEquals(2, shared.count()); // 正向 + 反向
+        }
+
+        // 模拟另一个进程或重启：新的堆内缓存从共享文件命中
+        try (MappedResultCache shared = MappedResultCache.open(file, 1024, 256)) {
+            CachingFPEService cached = new CachingFPEService(SERVICE, 1 << 16, 64, shared);
+            assertEquals(encrypted, cached.encrypt(1, 0, "name", "张伟明"));
+            assertEquals("张伟明", cached.decrypt(encrypted, 1, 0, "name"));
+            CachingFPEService.Stats stats = cached.getStats();
+            assertEquals(2, stats.getSharedHitCount());
+            assertEquals(0, stats.getMissCount());
+            // 第二次从堆内命中
+            cached.encrypt(1, 0, "name", "张伟明");
+            assertEquals(1, cached.getStats().getHitCount());
+
+            // 不同密钥的服务不会读到该条目
+            ChineseFPEService other = new ChineseFPEService(new byte[32]);
+            CachingFPEService otherCached = new CachingFPEService(other, 1 << 16, 64, shared);
+            assertEquals(other.encrypt(1, 0, "name", "张伟明"), otherCached.encrypt(1, 0, "name", "张伟明"));
+            assertEquals(0, otherCached.getStats().getSharedHitCount());
+
+            shared.clear();
+            assertEquals(0, shared.count());
+        }
+
+        assertThrows(IOException.class, () -> MappedResultCache.open(file, 2048, 256));
+    }
+
+    @Test
+    void testDifferentMappingsDoNotShareEntries() throws IOException {
+        Path file = dir.resolve("results.cache");
+        // 同一密钥，字典顺序相反的自定义字典
+        CharacterMapping defaultMapping = CharacterMapping.getDefault();
+        char[] reversed = new char[defaultMapping.getRadix()];
+        for (int i = 0; i < reversed.length; i++) {
+            reversed[i] = defaultMapping.getOriginalChar(reversed.length - 1 - i);
+        }
+        ChineseFPEService custom = new ChineseFPEService(new byte[16], new CharacterMapping(reversed));
+        assertNotEquals(MappedResultCache.keyFingerprint(SERVICE.getKey()),
+            MappedResultCache.keyFingerprint(custom.getKey(), custom.getCharacterMapping(), custom.getAlgorithm()));
+
+        String encrypted;
+        try (MappedResultCache shared = MappedResultCache.open(file, 1024, 256)) {
+            encrypted = new CachingFPEService(SERVICE, 1 << 16, 64, shared).encrypt(0, 0, "name", "张伟明");
+        }
+        try (MappedResultCache shared = MappedResultCache.open(file, 1024, 256)) {
+            CachingFPEService cached = new CachingFPEService(custom, 1 << 16, 64, shared);
+            String customEncrypted = cached.encrypt(0, 0, "name", "张伟明");
+            assertEquals(custom.encrypt(0, 0, "name", "张伟明"), customEncrypted);
+            assertNotEquals(encrypted, customEncrypted);
+            assertEquals(custom.decrypt(encrypted, "name"), cached.decrypt(encrypted, "name"));
+            assertEquals(0, cached.getStats().getSharedHitCount());
+        }
+    }
+
+    @Test
+    void testOldVersionIsRejected() throws IOException {
+        Path file = dir.resolve("results.cache");
+        try (MappedResultCache ignored = MappedResultCache.open(file, 16, 128)) {
+            // 创建文件
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(4);
+            raf.writeInt(1);
+        }
+        assertThrows(IOException.class, () -> MappedResultCache.open(file, 16, 128));
+    }
+
+    @Test
+    void testCorruptedSlotsAreMisses() throws IOException {
+        Path file = dir.resolve("results.cache");
+        long key = MappedResultCache.keyFingerprint(SERVICE.getKey());
+        try (MappedResultCache shared = MappedResultCache.open(file, 16, 128)) {
+            shared.put(key, true, "t", 0, 0, "张伟", "AB");
+            assertEquals("AB", shared.get(key, true, "t", 0, 0, "张伟"));
+            assertNull(shared.get(key, false, "t", 0, 0, "张伟"));
+            assertNull(shared.get(key, true, "t", 1, 0, "张伟"));
+            assertNull(shared.get(key, true, "u", 0, 0, "张伟"));
+        }
+
+        // 翻转所有槽位中的一个字节，模拟撕裂写入
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            for (int slot = 0; slot < 16; slot++) {
+                long pos = 64 + slot * 128L + 20;
+                raf.seek(pos);
+                int b = raf.read();
+                raf.seek(pos);
+                raf.write(b ^ 0x55);
+            }
+        }
+        try (MappedResultCache shared = MappedResultCache.open(file, 16, 128)) {
+            assertNull(shared.get(key, true, "t", 0, 0, "张伟"));
+            assertEquals(0, shared.count());
+
+            // 超过槽位大小的记录不写入
+            StringBuilder longText = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                longText.append('张');
+            }
+            shared.put(key, true, "t", 0, 0, longText.toString(), longText.toString());
+            assertNull(shared.get(key, true, "t", 0, 0, longText.toString()));
+
+            // 探测窗口写满后覆盖旧条目，仍能读到最新写入的值
+            for (int i = 0; i < 100; i++) {
+                String text = "用户" + i;
+                shared.put(key, true, "t", 0, 0, text, SERVICE.encrypt(0, 0, "t", text));
+                assertEquals(SERVICE.encrypt(0, 0, "t", text), shared.get(key, true, "t", 0, 0, text));
+            }
+            assertTrue(shared.count() <= 16);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MaskingWriter / MaskingReader 单元测试
+ */
+class MaskingStreamTest {
+
+    private final ChineseFPEService service = new ChineseFPEService("test-password-123");
+
+    private static final String CSV = "张三,李四,,王五\n欧阳娜娜\t北京市朝阳区\r\nA,张\n末行无换行";
+
+    @Test
+    void testWriterMasksEachField() throws IOException {
+        FieldMasker masker = new FieldMasker(service, true, "export", 1, 0);
+        StringWriter target = new StringWriter();
+        try (Writer out = new MaskingWriter(target, masker)) {
+            // 逐字符写入，验证跨 write 调用的字段拼接
+            for (int i = 0; i < CSV.length(); i++) {
+                out.write(CSV.charAt(i));
+            }
+        }
+        assertEquals(expectedEncryption(), target.toString());
+
+        // 字符串切片：偏移不为 0、字段跨越多次调用
+        StringWriter sliced = new StringWriter();
+        String padded = "##" + CSV + "##";
+        try (Writer out = new MaskingWriter(sliced, masker)) {
+            for (int i = 2; i < padded.length() - 2; i += 5) {
+                out.write(padded, i, Math.min(5, padded.length() - 2 - i));
+            }
+        }
+        assertEquals(expectedEncryption(), sliced.toString());
+    }
+
+    @Test
+    void testReaderRoundTrip() throws IOException {
+        StringWriter target = new StringWriter();
+        try (Writer out = new MaskingWriter(target, new FieldMasker(service, true, "export", 1, 0))) {
+            out.write(CSV);
+        }
+
+        FieldMasker unmasker = new FieldMasker(service, false, "export", 1, 0);
+        Reader in = new MaskingReader(new StringReader(target.toString()), unmasker);
+        StringBuilder restored = new StringBuilder();
+        char[] buf = new char[3];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            restored.append(buf, 0, n);
+        }
+        in.close();
+        assertEquals(CSV, restored.toString());
+
+        // Reader 也可以直接用于加密
+        Reader encryptingReader = new MaskingReader(new StringReader(CSV), new FieldMasker(service, true, "export", 1, 0));
+        StringBuilder encrypted = new StringBuilder();
+        int c;
+        while ((c = encryptingReader.read()) != -1) {
+            encrypted.append((char) c);
+        }
+        assertEquals(target.toString(), encrypted.toString());
+    }
+
+    @Test
+    void testFieldLengthIsBounded() {
+        FieldMasker masker = new FieldMasker(service, true, "t", 0, 0, ",", 4);
+        assertThrows(IOException.class, () -> {
+            try (Writer out = new MaskingWriter(new StringWriter(), masker)) {
+                out.write("张三,张三李四王五");
+            }
+        });
+        assertThrows(IOException.class, () -> {
+            try (Writer out = new MaskingWriter(new StringWriter(), masker)) {
+                for (char c : "张三李四王五".toCharArray()) {
+                    out.write(c);
+                }
+            }
+        });
+        assertThrows(IOException.class, () -> {
+            Reader in = new MaskingReader(new StringReader("张三,张三李四王五"), masker);
+            while (in.read() != -1) {
+                // 读到超长字段时抛出异常
+            }
+        });
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new FieldMasker(null, true, "t", 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FieldMasker(service, true, "t", -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FieldMasker(service, true, "t", 0, 0, "", 10));
+        assertThrows(IllegalArgumentException.class, () -> new FieldMasker(service, true, "t", 0, 0, ",", 0));
+        Tweak foreign = new ChineseFPEService(new byte[16]).createTweak("t");
+        assertThrows(IllegalArgumentException.class,
+            () -> new FieldMasker(service, true, foreign, 0, 0, ",", 10));
+    }
+
+    private String expectedEncryption() {
+        StringBuilder expected = new StringBuilder();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < CSV.length(); i++) {
+            char c = CSV.charAt(i);
+            if (FieldMasker.DEFAULT_DELIMITERS.indexOf(c) >= 0) {
+                expected.append(service.encrypt(1, 0, "export", field.toString())).append(c);
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        return expected.append(service.encrypt(1, 0, "export", field.toString())).toString();
+    }
+}
@@ -0,0 +1,78 @@
+package cn.lihongjie.unimask;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MasterKey 单元测试
+ */
+class MasterKeyTest {
+
+    @Test
+    void testRfc5869TestCase1() {
+        // RFC 5869 A.1：验证 Extract 与 Expand 的组合
+        byte[] ikm = Hex.decode("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] salt = Hex.decode("000102030405060708090a0b0c");
+        byte[] info = Hex.decode("f0f1f2f3f4f5f6f7f8f9");
+        byte[] prk = MasterKey.extract(salt, ikm);
+        assertArrayEquals(Hex.decode("077709362c2e32df0ddc3f0dc47bba6390b6c73bb50f9c3122ec844ad7c2b3e5"), prk);
+
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(HKDFParameters.skipExtractParameters(prk, info));
+        byte[] okm = new byte[42];
+        hkdf.generateBytes(okm, 0, okm.length);
+        assertArrayEquals(Hex.decode(
+            "3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865"), okm);
+    }
+
+    @Test
+    void testSubkeysAreDeterministicAndIndependent() {
+        byte[] raw = new byte[32];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) i;
+        }
+        MasterKey master = new MasterKey(raw);
+        assertArrayEquals(master.deriveSubkey(16, "tenant-1"), new MasterKey(raw).deriveSubkey(16, "tenant-1"));
+
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(seen.add(Hex.toHexString(master.deriveSubkey(16, "tenant-" + i))));
+        }
+        // 标签按长度前缀编码，拼接方式不同的标签不会冲突
+        assertFalse(seen.contains(Hex.toHexString(master.deriveSubkey(16, "tenant-", "1"))));
+        assertNotEquals(Hex.toHexString(master.deriveSubkey(16, "a:b", "c")),
+            Hex.toHexString(master.deriveSubkey(16, "a", "b:c")));
+        // 不同长度的子密钥不是彼此的前缀
+        assertNotEquals(Hex.toHexString(master.deriveSubkey(16, "t")),
+            Hex.toHexString(master.deriveSubkey(32, "t")).substring(0, 32));
+        // 不同的盐值得到不同的子密钥
+        assertNotEquals(Hex.toHexString(master.deriveSubkey(16, "t")),
+            Hex.toHexString(new MasterKey(raw, new byte[0]).deriveSubkey(16, "t")));
+
+        ChineseFPEService service = master.createService("tenant-1", "name");
+        assertArrayEquals(master.deriveSubkey(16, "tenant-1", "name"), service.getKey());
+        assertEquals(32, master.createService(32, "tenant-1").getKey().length);
+        String encrypted = service.encrypt(1, 0, "name", "张伟明");
+        assertEquals("张伟明", master.createService("tenant-1", "name").decrypt(encrypted, 1, 0, "name"));
+    }
+
+    @Test
+    void testFromPasswordAndValidation() {
+        MasterKey fromPassword = MasterKey.fromPassword("master-password", new KdfParameters(1000));
+        MasterKey same = new MasterKey(new KdfParameters(1000).deriveKey("master-password"));
+        assertArrayEquals(same.deriveSubkey(16, "t"), fromPassword.deriveSubkey(16, "t"));
+
+        assertThrows(IllegalArgumentException.class, () -> new MasterKey(new byte[15]));
+        assertThrows(IllegalArgumentException.class, () -> fromPassword.deriveSubkey(20, "t"));
+        assertThrows(IllegalArgumentException.class, () -> fromPassword.deriveSubkey(16));
+        assertThrows(IllegalArgumentException.class, () -> fromPassword.deriveSubkey(16, (String) null));
+    }
+}
@@ -0,0 +1,158 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FPEMetrics / MetricsRecorder 单元测试
+ */
+class MetricsRecorderTest {
+
+    @Test
+    void testServicePathCounts() {
+        ChineseFPEService service = new ChineseFPEService(new byte[16]);
+        assertSame(FPEMetrics.NOOP, service.getMetrics());
+        MetricsRecorder recorder = new MetricsRecorder();
+        service.setMetrics(recorder);
+
+        String encrypted = service.encrypt(0, 0, "name", "张伟明\u263A\u263A\u263A");
+        service.encrypt(0, 0, "name", "张");
+        service.encrypt(0, 0, "name", "\u263A\u263A\u263A");
+        service.encrypt(5, 0, "name", "张伟明");
+        service.decrypt(encrypted, "name");
+
+        MetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(1, snapshot.getCalls(true, FPEMetrics.Path.FPE));
+        assertEquals(1, snapshot.getCalls(true, FPEMetrics.Path.SINGLE_CHAR));
+        assertEquals(2, snapshot.getCalls(true, FPEMetrics.Path.PASSTHROUGH));
+        assertEquals(1, snapshot.getCalls(false, FPEMetrics.Path.FPE));
+        assertEquals(5, snapshot.getTotalCalls());
+        // 3 个字典外符号在 FPE 加密和单独加密时各被跳过一次；解密时保留的字符单独统计
+        assertEquals(6, snapshot.getSkippedChars());
+        assertEquals(6, snapshot.getSkippedChars(true));
+        assertEquals(3, snapshot.getSkippedChars(false));
+
+        long[] lengths = snapshot.getMiddleLengthHistogram();
+        assertEquals(1, lengths[0]);                        // 头部保留覆盖全文
+        assertEquals(1, lengths[MetricsRecorder.bucket(1, lengths.length)]);
+        assertEquals(1, lengths[MetricsRecorder.bucket(3, lengths.length)]);
+        assertEquals(2, lengths[MetricsRecorder.bucket(6, lengths.length)]);
+        assertEquals(5, Arrays.stream(snapshot.getLatencyHistogram()).sum());
+
+        service.setMetrics(FPEMetrics.NOOP);
+        service.encrypt(0, 0, "name", "张伟明");
+        assertEquals(5, recorder.snapshot().getTotalCalls());
+        assertThrows(IllegalArgumentException.class, () -> service.setMetrics(null));
+    }
+
+    @Test
+    void testBatchRecordsEachText() {
+        ChineseFPEService service = new ChineseFPEService(new byte[16]);
+        MetricsRecorder recorder = new MetricsRecorder();
+        service.setMetrics(recorder);
+
+        List<String> input = Arrays.asList("张伟明", "李", "\u263A\u263A\u263A", "", null, "王小二\u263A\u263A\u263A");
+        List<String> encrypted = service.encryptBatch(0, 0, "name", input);
+        service.decryptBatch(encrypted, 0, 0, "name");
+
+        MetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        for (boolean forEncryption : new boolean[]{true, false}) {
+            assertEquals(2, snapshot.getCalls(forEncryption, FPEMetrics.Path.FPE));
+            assertEquals(1, snapshot.getCalls(forEncryption, FPEMetrics.Path.SINGLE_CHAR));
+            assertEquals(1, snapshot.getCalls(forEncryption, FPEMetrics.Path.PASSTHROUGH));
+        }
+        assertEquals(6, snapshot.getSkippedChars());
+        assertEquals(6, snapshot.getSkippedChars(false));
+    }
+
+    @Test
+    void testCacheAndKeyDerivation() {
+        ChineseFPEService service = new ChineseFPEService(new byte[16]);
+        MetricsRecorder recorder = new MetricsRecorder();
+        service.setMetrics(recorder);
+        CachingFPEService cached = new CachingFPEService(service);
+
+        String encrypted = cached.encrypt(0, 0, "name", "张伟明");
+        cached.encrypt(0, 0, "name", "张伟明");
+        cached.decrypt(encrypted, "name");
+        cached.decrypt(encrypted, "name");
+        cached.encrypt(0, 0, "name", "李四");
+
+        MetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(3, snapshot.getCacheHits());
+        assertEquals(0, snapshot.getSharedCacheHits());
+        assertEquals(2, snapshot.getCacheMisses());
+        assertEquals(2, snapshot.getCalls(FPEMetrics.Path.FPE));
+
+        KdfParameters kdf = new KdfParameters(1000);
+        kdf.deriveKey("password", recorder);
+        snapshot = recorder.snapshot();
+        assertEquals(1, snapshot.getKeyDerivations());
+        assertTrue(snapshot.getKeyDerivationNanos() > 0);
+
+        // 派生时传入的回调同时安装到新实例上，其他实例不受影响
+        ChineseFPEService fromPassword = new ChineseFPEService("password", kdf, recorder);
+        assertSame(recorder, fromPassword.getMetrics());
+        assertEquals(2, recorder.snapshot().getKeyDerivations());
+        new ChineseFPEService("password", kdf);
+        kdf.deriveKey("password");
+        assertEquals(2, recorder.snapshot().getKeyDerivations());
+        assertThrows(IllegalArgumentException.class, () -> kdf.deriveKey("password", null));
+    }
+
+    @Test
+    void testRegistryInstallsMetrics(@TempDir Path dir) throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder();
+        MetricsRecorder other = new MetricsRecorder();
+        KdfParameters kdf = new KdfParameters(1000);
+        ServiceRegistry registry = new ServiceRegistry(16, 60_000, null, recorder);
+        ServiceRegistry withStore = new ServiceRegistry(16, 60_000, DerivedKeyStore.open(dir.resolve("keys.bin"), "store-secret"), other);
+
+        ChineseFPEService service = registry.getService("a", "password", kdf);
+        assertSame(recorder, service.getMetrics());
+        assertSame(recorder, registry.getService("b", new byte[16]).getMetrics());
+        assertSame(recorder, registry.getServiceAsync("c", "password2", kdf).join().getMetrics());
+        assertSame(other, withStore.getService("a", "password", kdf).getMetrics());
+
+        service.encrypt(0, 0, "name", "张伟明");
+        assertEquals(2, recorder.snapshot().getKeyDerivations());
+        assertEquals(1, recorder.snapshot().getCalls(FPEMetrics.Path.FPE));
+        assertEquals(1, other.snapshot().getKeyDerivations());
+        assertEquals(0, other.snapshot().getTotalCalls());
+        assertSame(FPEMetrics.NOOP, new ServiceRegistry().getService("a", new byte[16]).getMetrics());
+        assertThrows(IllegalArgumentException.class, () -> new ServiceRegistry(16, 60_000, null, (FPEMetrics) null));
+    }
+
+    @Test
+    void testHistogramAndPercentile() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        for (int i = 0; i < 98; i++) {
+            recorder.recordTransform(true, FPEMetrics.Path.FPE, 4, 0, 1000);
+        }
+        recorder.recordTransform(true, FPEMetrics.Path.FPE, 4, 0, 5000);
+        recorder.recordTransform(true, FPEMetrics.Path.FPE, 4, 0, 1000000);
+
+        MetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(1023, snapshot.getLatencyPercentile(0.5));
+        assertEquals(8191, snapshot.getLatencyPercentile(0.99));
+        assertEquals((1L << 20) - 1, snapshot.getLatencyPercentile(1.0));
+        assertEquals((98 * 1000 + 5000 + 1000000) / 100.0, snapshot.getMeanLatencyNanos(), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getLatencyPercentile(1.5));
+        assertEquals(0, new MetricsRecorder().snapshot().getLatencyPercentile(0.99));
+
+        assertEquals(0, MetricsRecorder.bucket(0, 17));
+        assertEquals(1, MetricsRecorder.bucket(1, 17));
+        assertEquals(3, MetricsRecorder.bucket(4, 17));
+        assertEquals(16, MetricsRecorder.bucket(Integer.MAX_VALUE, 17));
+        for (int i = 1; i < 17; i++) {
+            assertEquals(i, MetricsRecorder.bucket(MetricsRecorder.bucketLowerBound(i), 64));
+            assertEquals(i - 1, MetricsRecorder.bucket(MetricsRecorder.bucketLowerBound(i) - 1, 64));
+        }
+    }
+}
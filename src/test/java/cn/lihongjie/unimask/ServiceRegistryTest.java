@@ -0,0 +1,165 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ServiceRegistry 单元测试
+ */
+class ServiceRegistryTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testIdenticalKeysShareOneService() {
+        ServiceRegistry registry = new ServiceRegistry(100, 60_000, now::get);
+        ChineseFPEService a = registry.getService("tenant-a", new byte[16]);
+        ChineseFPEService b = registry.getService("tenant-b", new byte[16]);
+        ChineseFPEService c = registry.getService("tenant-c", new byte[32]);
+        assertSame(a, b);
+        assertNotSame(a, c);
+        assertSame(a, registry.getService("tenant-a"));
+        assertNull(registry.getService("unknown"));
+        assertEquals(2, registry.size());
+
+        ServiceRegistry.Stats stats = registry.getStats();
+        assertEquals(3, stats.getMissCount()); // 两次首次加载 + unknown
+        assertEquals(2, stats.getHitCount());
+
+        // 密码派生的服务与直接构造的结果一致
+        ChineseFPEService fromPassword = registry.getService("tenant-d", "test-password-123");
+        assertSame(fromPassword, registry.getService("tenant-e", "test-password-123"));
+        assertEquals(new ChineseFPEService("test-password-123").encrypt(1, 0, "name", "张伟明"),
+            fromPassword.encrypt(1, 0, "name", "张伟明"));
+    }
+
+    @Test
+    void testPasswordOverloadsShareOneService() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        ServiceRegistry registry = new ServiceRegistry(100, 60_000, null, recorder);
+        byte[] salt = "tenant-salt-0001".getBytes(StandardCharsets.UTF_8);
+
+        ChineseFPEService byDefault = registry.getService("tenant-a", "test-password-123");
+        assertSame(byDefault, registry.getService("tenant-b", "test-password-123", KdfParameters.DEFAULT));
+        ChineseFPEService bySalt = registry.getService("tenant-c", "test-password-123", salt, 32);
+        assertSame(bySalt, registry.getService("tenant-d", "test-password-123",
+            new KdfParameters(salt, KdfParameters.DEFAULT_ITERATIONS, 32)));
+        assertSame(bySalt, registry.getServiceAsync("tenant-e", "test-password-123",
+            new KdfParameters(salt, KdfParameters.DEFAULT_ITERATIONS, 32)).join());
+        assertNotSame(byDefault, bySalt);
+
+        // 每组参数只派生一次
+        assertEquals(2, registry.size());
+        assertEquals(2, recorder.snapshot().getKeyDerivations());
+    }
+
+    @Test
+    void testConcurrentFirstRequestsDeriveOnce() throws Exception {
+        ServiceRegistry registry = new ServiceRegistry();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<ChineseFPEService>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String tenant = "tenant-" + i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return registry.getService(tenant, "shared-password");
+                }));
+            }
+            start.countDown();
+            ChineseFPEService first = futures.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<ChineseFPEService> future : futures) {
+                assertSame(first, future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, registry.getStats().getMissCount());
+        assertEquals(threads - 1, registry.getStats().getHitCount());
+    }
+
+    @Test
+    void testSizeBasedEviction() {
+        ServiceRegistry registry = new ServiceRegistry(10, 60_000, now::get);
+        for (int i = 0; i < 10; i++) {
+            now.addAndGet(1_000);
+            registry.getService("tenant-" + i, key(i));
+        }
+        // 访问 tenant-0，使其成为最近使用
+        now.addAndGet(1_000);
+        ChineseFPEService tenant0 = registry.getService("tenant-0", key(0));
+
+        now.addAndGet(1_000);
+        registry.getService("tenant-10", key(10));
+        assertEquals(9, registry.size());
+        assertSame(tenant0, registry.getService("tenant-0"));
+        assertNull(registry.getService("tenant-1"));
+        assertEquals(2, registry.getStats().getEvictionCount());
+    }
+
+    @Test
+    void testIdleEviction() {
+        ServiceRegistry registry = new ServiceRegistry(100, 1_000, now::get);
+        registry.getService("idle", key(1));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        ChineseFPEService active = registry.getService("active", key(2));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(700));
+        registry.cleanUp();
+        assertNull(registry.getService("idle"));
+        assertSame(active, registry.getService("active"));
+        assertEquals(1, registry.size());
+        assertEquals(1, registry.getStats().getEvictionCount());
+    }
+
+    @Test
+    void testAsyncLookupSharesDerivation() throws Exception {
+        ServiceRegistry registry = new ServiceRegistry();
+        KdfParameters kdf = new KdfParameters(1000);
+        CompletableFuture<ChineseFPEService> first = registry.getServiceAsync("tenant-a", "pw", kdf);
+        CompletableFuture<ChineseFPEService> second = registry.getServiceAsync("tenant-b", "pw", kdf);
+        ChineseFPEService service = first.get(30, TimeUnit.SECONDS);
+        assertSame(service, second.get(30, TimeUnit.SECONDS));
+        assertSame(service, registry.getService("tenant-a", "pw", kdf));
+        assertArrayEquals(kdf.deriveKey("pw"), service.getKey());
+        assertEquals(1, registry.getStats().getMissCount());
+
+        // 不同的迭代次数是不同的密钥
+        assertNotSame(service, registry.getService("tenant-c", "pw", new KdfParameters(2000)));
+
+        // 参数错误同步抛出
+        assertThrows(IllegalArgumentException.class, () -> registry.getServiceAsync("bad", "", kdf));
+        assertThrows(IllegalArgumentException.class, () -> registry.getServiceAsync("bad", "pw", null));
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        ServiceRegistry registry = new ServiceRegistry();
+        assertThrows(IllegalArgumentException.class, () -> registry.getService("bad", new byte[15]));
+        assertEquals(0, registry.size());
+        assertEquals(1, registry.getStats().getLoadFailureCount());
+        assertThrows(IllegalArgumentException.class, () -> registry.getService("bad", new byte[15]));
+        assertThrows(IllegalArgumentException.class, () -> registry.getService(null, new byte[16]));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceRegistry(0, 1000));
+    }
+
+    private static byte[] key(int i) {
+        byte[] key = new byte[16];
+        key[0] = (byte) i;
+        return key;
+    }
+}
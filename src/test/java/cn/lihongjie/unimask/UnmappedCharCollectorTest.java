@@ -0,0 +1,137 @@
+package cn.lihongjie.unimask;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * UnmappedCharCollector 单元测试
+ */
+class UnmappedCharCollectorTest {
+
+    @Test
+    void testServiceCollectsUnmappedChars() {
+        ChineseFPEService service = new ChineseFPEService(new byte[16]);
+        assertNull(service.getUnmappedCharCollector());
+        UnmappedCharCollector collector = new UnmappedCharCollector();
+        service.setUnmappedCharCollector(collector);
+
+        // ☺ 不在字典中；😀 为代理对，按一个码点统计
+        String encrypted = service.encrypt(0, 0, "name", "张☺伟☺😀");
+        service.encrypt(0, 0, "name", "☺");
+        service.encryptBatch(0, 0, "address", Arrays.asList("北京①", "①", "上海"));
+        // 解密和头尾保留部分不统计
+        service.decrypt(encrypted, "name");
+        service.encrypt(1, 1, "name", "①张伟①");
+
+        assertEquals(Arrays.asList(
+            new UnmappedCharCollector.Entry(0x263A, 3),
+            new UnmappedCharCollector.Entry(0x1F600, 1)), collector.getTopChars("name"));
+        assertEquals(Arrays.asList(new UnmappedCharCollector.Entry(0x2460, 2)), collector.getTopChars("address"));
+        assertEquals("😀", collector.getTopChars("name").get(1).getCharacter());
+        assertTrue(collector.getTopChars("phone").isEmpty());
+
+        Map<String, List<UnmappedCharCollector.Entry>> snapshot = collector.snapshot();
+        assertEquals(Arrays.asList("address", "name"), Arrays.asList(snapshot.keySet().toArray()));
+        assertEquals("address: [U+2460(①)=2]\nname: [U+263A(☺)=3, U+1F600(😀)=1]\n",
+            collector.dump());
+
+        service.setUnmappedCharCollector(null);
+        service.encrypt(0, 0, "name", "☺");
+        assertEquals(3, collector.getTopChars("name").get(0).getCount());
+
+        collector.reset();
+        assertTrue(collector.snapshot().isEmpty());
+        assertEquals("", collector.dump());
+    }
+
+    @Test
+    void testBoundedTopNKeepsHeavyHitters() {
+        UnmappedCharCollector collector = new UnmappedCharCollector(4, 16, 1);
+        // 少量高频字符夹在大量只出现一次的字符之间；16 个槽位下频次超过总数 1/16 的字符一定保留
+        for (int i = 0; i < 10000; i++) {
+            collector.record("t", 0x2000 + i);
+            if (i % 4 == 0) {
+                collector.record("t", '·');
+            }
+            if (i % 8 == 0) {
+                collector.record("t", '①');
+            }
+        }
+        List<UnmappedCharCollector.Entry> top = collector.getTopChars("t");
+        assertEquals(4, top.size());
+        assertEquals(0x00B7, top.get(0).getCodePoint());
+        assertEquals(0x2460, top.get(1).getCodePoint());
+        // Space-Saving 只会高估
+        assertTrue(top.get(0).getCount() >= 2500);
+        assertTrue(top.get(1).getCount() >= 1250);
+        assertEquals(0, collector.getDroppedCount());
+    }
+
+    @Test
+    void testTweakLimitAndSampling() {
+        UnmappedCharCollector collector = new UnmappedCharCollector(8, 2, 1);
+        collector.record("a", 'x');
+        collector.record("b", 'y');
+        collector.record("c", 'z');
+        collector.record("d", 'z');
+        assertEquals(2, collector.snapshot().size());
+        assertEquals(Arrays.asList(new UnmappedCharCollector.Entry('z', 2)), collector.getOverflowTopChars());
+        assertTrue(collector.dump().endsWith("(overflow): [U+007A(z)=2]\n"));
+
+        UnmappedCharCollector sampled = new UnmappedCharCollector(8, 16, 10);
+        for (int i = 0; i < 100000; i++) {
+            sampled.record("t", 'x');
+        }
+        long estimate = sampled.getTopChars("t").get(0).getCount();
+        assertEquals(0, estimate % 10);
+        assertTrue(estimate > 90000 && estimate < 110000, String.valueOf(estimate));
+
+        assertThrows(IllegalArgumentException.class, () -> new UnmappedCharCollector(0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new UnmappedCharCollector(1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new UnmappedCharCollector(1, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> collector.record("a", -1));
+    }
+
+    @Test
+    void testConcurrentCountsAreExact() throws Exception {
+        UnmappedCharCollector collector = new UnmappedCharCollector(16, 16, 1);
+        int threads = 4;
+        int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    collector.record(i % 2 == 0 ? "name" : "phone", 'a' + i % 8);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (String tweak : new String[]{"name", "phone"}) {
+            List<UnmappedCharCollector.Entry> top = collector.getTopChars(tweak);
+            assertEquals(4, top.size());
+            for (UnmappedCharCollector.Entry entry : top) {
+                assertEquals(threads * perThread / 8, entry.getCount(), entry.toString());
+            }
+        }
+        assertEquals(0, collector.getDroppedCount());
+    }
+}